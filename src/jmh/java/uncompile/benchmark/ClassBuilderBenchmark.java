@@ -0,0 +1,33 @@
+package uncompile.benchmark;
+
+import org.objectweb.asm.ClassReader;
+import org.openjdk.jmh.annotations.*;
+import uncompile.ast.Class;
+import uncompile.astbuilder.ClassBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the AST of a class from its bytecode, before any transformations.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ClassBuilderBenchmark {
+    /**
+     * The class declaration, fields and method signatures, without method bodies.
+     */
+    @Benchmark
+    public Class parseDeclarations(CorpusState state) {
+        ClassBuilder classBuilder = new ClassBuilder(state.classPath, state.descriptionProvider);
+        new ClassReader(state.bytes).accept(classBuilder, ClassReader.SKIP_CODE);
+        return classBuilder.getResult();
+    }
+
+    /**
+     * Everything, including all phases of {@link MethodBuilderBenchmark}.
+     */
+    @Benchmark
+    public Class buildClass(CorpusState state) {
+        return state.buildClass();
+    }
+}
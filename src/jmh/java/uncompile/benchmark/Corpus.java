@@ -0,0 +1,139 @@
+package uncompile.benchmark;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import uncompile.ClassProvider;
+import uncompile.classpath.ClassPath;
+import uncompile.classpath.ClassSources;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+
+/**
+ * The classes the benchmarks decompile. Small, Nested and Switches are compiled
+ * from the sources in the corpus package, HugeMethod is generated since javac
+ * output of that size would be unwieldy as source.
+ */
+public final class Corpus implements ClassProvider {
+    public static final String PACKAGE = "uncompile/benchmark/corpus/";
+    public static final String HUGE_METHOD = PACKAGE + "HugeMethod";
+
+    /**
+     * The number of if-else statements in the generated method. Each one adds
+     * three blocks.
+     */
+    public static final int HUGE_METHOD_BRANCHES = 1000;
+
+    private static final byte[] HUGE_METHOD_BYTES = generateHugeMethod();
+
+    private Corpus() {}
+
+    /**
+     * @param corpusClass the simple name of a corpus class
+     * @return the internal name of the class
+     */
+    public static String getClassName(String corpusClass) {
+        return PACKAGE + corpusClass;
+    }
+
+    /**
+     * Creates a class path of the corpus followed by the JDK.
+     */
+    public static ClassPath createClassPath() throws IOException {
+        return new ClassPath()
+                .add(new Corpus())
+                .add(ClassSources.openRuntime());
+    }
+
+    @Override
+    public byte[] getClass(String name) {
+        if (name.equals(HUGE_METHOD)) {
+            return HUGE_METHOD_BYTES;
+        }
+
+        if (!name.startsWith(PACKAGE)) {
+            return null;
+        }
+
+        try (InputStream in = Corpus.class.getClassLoader().getResourceAsStream(name + ".class")) {
+            if (in == null) {
+                return null;
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Replaces standard output with a stream that discards everything, so that
+     * debug output of the decompiler doesn't end up in the benchmark results.
+     *
+     * @return the previous standard output
+     */
+    public static PrintStream discardOutput() {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {}
+
+            @Override
+            public void write(byte[] b, int off, int len) {}
+        }));
+        return out;
+    }
+
+    private static byte[] generateHugeMethod() {
+        // No frames are needed for version 50 classes, so no class hierarchy
+        // is needed to write the class
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        classWriter.visit(Opcodes.V1_6, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, HUGE_METHOD, null, "java/lang/Object", null);
+
+        MethodVisitor constructor = classWriter.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        constructor.visitInsn(Opcodes.RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+
+        // int run(int x) { if (x > 0) { x += 0; } else { x -= 0; } if (x > 1) ... return x; }
+        MethodVisitor method = classWriter.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "run", "(I)I", null, null);
+        method.visitCode();
+        for (int i = 0; i < HUGE_METHOD_BRANCHES; i++) {
+            Label elseLabel = new Label();
+            Label endLabel = new Label();
+
+            method.visitVarInsn(Opcodes.ILOAD, 0);
+            method.visitIntInsn(Opcodes.SIPUSH, i);
+            method.visitJumpInsn(Opcodes.IF_ICMPLE, elseLabel);
+            method.visitIincInsn(0, i % Byte.MAX_VALUE);
+            method.visitJumpInsn(Opcodes.GOTO, endLabel);
+            method.visitLabel(elseLabel);
+            method.visitVarInsn(Opcodes.ILOAD, 0);
+            method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Integer", "reverse", "(I)I", false);
+            method.visitVarInsn(Opcodes.ISTORE, 0);
+            method.visitLabel(endLabel);
+        }
+        method.visitVarInsn(Opcodes.ILOAD, 0);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+
+        classWriter.visitEnd();
+        return classWriter.toByteArray();
+    }
+}
@@ -0,0 +1,108 @@
+package uncompile.benchmark;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.openjdk.jmh.annotations.*;
+import uncompile.ast.Class;
+import uncompile.astbuilder.BytecodeDescriptionProvider;
+import uncompile.astbuilder.ClassBuilder;
+import uncompile.astbuilder.DescriptionProvider;
+import uncompile.astbuilder.MethodBuilder;
+import uncompile.classpath.ClassPath;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class of the corpus and the providers needed to decompile it. The description
+ * provider is shared by all invocations, so the descriptions of library classes
+ * are only read once, like when decompiling many classes.
+ */
+@State(Scope.Thread)
+public class CorpusState {
+    @Param({"Small", "HugeMethod", "Nested", "Switches"})
+    public String corpusClass;
+
+    public ClassPath classPath;
+    public DescriptionProvider descriptionProvider;
+    public byte[] bytes;
+    private ClassNode classNode;
+    private PrintStream out;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException {
+        out = Corpus.discardOutput();
+        classPath = Corpus.createClassPath();
+        descriptionProvider = new BytecodeDescriptionProvider(classPath);
+        bytes = classPath.getClass(Corpus.getClassName(corpusClass));
+
+        classNode = new ClassNode();
+        new ClassReader(bytes).accept(classNode, ClassReader.EXPAND_FRAMES);
+
+        // Warm up the description provider
+        buildClass();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws IOException {
+        classPath.close();
+        System.setOut(out);
+    }
+
+    public Class buildClass() {
+        ClassBuilder classBuilder = new ClassBuilder(classPath, descriptionProvider);
+        new ClassReader(bytes).accept(classBuilder, ClassReader.EXPAND_FRAMES);
+        return classBuilder.getResult();
+    }
+
+    /**
+     * Creates a method builder for each method with code and runs the first
+     * phases of {@link MethodBuilder#visitEnd} on it.
+     *
+     * @param phases the number of phases to run
+     */
+    public List<MethodBuilder> createMethodBuilders(int phases) {
+        ClassBuilder classBuilder = new ClassBuilder(classPath, descriptionProvider);
+        classBuilder.visit(classNode.version, classNode.access, classNode.name, classNode.signature, classNode.superName,
+                           classNode.interfaces.toArray(new String[0]));
+
+        List<MethodBuilder> builders = new ArrayList<>();
+        for (MethodNode methodNode : classNode.methods) {
+            if (methodNode.instructions.size() == 0) {
+                continue;
+            }
+
+            MethodBuilder builder = (MethodBuilder) classBuilder.visitMethod(
+                    methodNode.access,
+                    methodNode.name,
+                    methodNode.desc,
+                    methodNode.signature,
+                    methodNode.exceptions.toArray(new String[0]));
+
+            // Everything but visitEnd, which runs the phases
+            methodNode.accept(new MethodVisitor(Opcodes.ASM7, builder) {
+                @Override
+                public void visitEnd() {}
+            });
+
+            if (phases > 0) {
+                builder.splitBlocks();
+            }
+            if (phases > 1) {
+                builder.assignFrames();
+            }
+            if (phases > 2) {
+                builder.buildBlocks();
+            }
+
+            builders.add(builder);
+        }
+
+        return builders;
+    }
+}
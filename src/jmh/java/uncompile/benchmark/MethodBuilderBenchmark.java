@@ -0,0 +1,103 @@
+package uncompile.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import uncompile.astbuilder.MethodBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each phase of {@link MethodBuilder#visitEnd} for all methods of a class.
+ * The method builders are prepared for each invocation, so these are only
+ * meaningful for classes that take much longer than the JMH timing overhead.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MethodBuilderBenchmark {
+    @State(Scope.Thread)
+    public static class NewBuilders extends CorpusState {
+        public List<MethodBuilder> builders;
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            builders = createMethodBuilders(0);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SplitBuilders extends CorpusState {
+        public List<MethodBuilder> builders;
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            builders = createMethodBuilders(1);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class FramedBuilders extends CorpusState {
+        public List<MethodBuilder> builders;
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            builders = createMethodBuilders(2);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class BuiltBuilders extends CorpusState {
+        public List<MethodBuilder> builders;
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            builders = createMethodBuilders(3);
+        }
+    }
+
+    @Benchmark
+    public List<MethodBuilder> splitBlocks(NewBuilders state) {
+        for (MethodBuilder builder : state.builders) {
+            builder.splitBlocks();
+        }
+        return state.builders;
+    }
+
+    @Benchmark
+    public List<MethodBuilder> assignFrames(SplitBuilders state) {
+        for (MethodBuilder builder : state.builders) {
+            builder.assignFrames();
+        }
+        return state.builders;
+    }
+
+    /**
+     * Expression building by {@link uncompile.astbuilder.BlockBuilder}.
+     */
+    @Benchmark
+    public List<MethodBuilder> buildBlocks(FramedBuilders state) {
+        for (MethodBuilder builder : state.builders) {
+            builder.buildBlocks();
+        }
+        return state.builders;
+    }
+
+    @Benchmark
+    public List<MethodBuilder> calculateDominance(BuiltBuilders state) {
+        for (MethodBuilder builder : state.builders) {
+            builder.getGraph().calculateDominance();
+        }
+        return state.builders;
+    }
+
+    /**
+     * {@link uncompile.controlflow.ControlFlowGenerator}, including its transformations
+     * and dominance calculation.
+     */
+    @Benchmark
+    public List<MethodBuilder> generateCode(BuiltBuilders state) {
+        for (MethodBuilder builder : state.builders) {
+            builder.generateCode();
+        }
+        return state.builders;
+    }
+}
@@ -0,0 +1,54 @@
+package uncompile.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import uncompile.ast.Class;
+import uncompile.transformation.AstTransformations;
+import uncompile.util.IndentingPrintWriter;
+
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures printing a decompiled class.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PrintingBenchmark {
+    @State(Scope.Thread)
+    public static class DecompiledState extends CorpusState {
+        public Class decompiled;
+        public IndentingPrintWriter writer;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            decompiled = buildClass();
+            AstTransformations.run(decompiled);
+
+            writer = new IndentingPrintWriter(new Writer() {
+                @Override
+                public void write(char[] buffer, int offset, int length) {}
+
+                @Override
+                public void flush() {}
+
+                @Override
+                public void close() {}
+            });
+        }
+    }
+
+    /**
+     * Printing to a writer that discards the output, which leaves only the
+     * cost of walking the AST and formatting.
+     */
+    @Benchmark
+    public IndentingPrintWriter append(DecompiledState state) {
+        state.decompiled.append(state.writer);
+        return state.writer;
+    }
+
+    @Benchmark
+    public String printToString(DecompiledState state) {
+        return state.decompiled.toString();
+    }
+}
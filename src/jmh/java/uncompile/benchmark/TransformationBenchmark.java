@@ -0,0 +1,110 @@
+package uncompile.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import uncompile.ast.Class;
+import uncompile.astbuilder.MethodBuilder;
+import uncompile.controlflow.ControlFlowGenerator;
+import uncompile.controlflow.ControlFlowNode;
+import uncompile.transformation.AstTransformations;
+import uncompile.transformation.Transformation;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each transformation on the AST that the transformations before
+ * it produced.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TransformationBenchmark {
+    @State(Scope.Thread)
+    public static class AstTransformationState extends CorpusState {
+        @Param({
+                "RemoveUnusedLabelsTransformation",
+                "FixInnerClassesTransformation",
+                "InlineSingleUseVariablesTransformation",
+                "RemoveUnusedAssignmentsTransformation",
+                "BringVariableDeclarationsCloserTransformation",
+                "FlipIfElseTransformation",
+                "MergeNestedIfsTransformation",
+                "AddImportsTransformation"
+        })
+        public String transformationName;
+
+        public Transformation transformation;
+        public Class decompiled;
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            List<Transformation> transformations = AstTransformations.getTransformations();
+            int index = indexOf(transformations, transformationName);
+            transformation = transformations.get(index);
+
+            decompiled = buildClass();
+            for (int i = 0; i < index; i++) {
+                transformations.get(i).run(decompiled);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ControlFlowTransformationState extends CorpusState {
+        @Param({
+                "RemoveSelfAssignmentsTransformation",
+                "GenerateConstructorCallsTransform"
+        })
+        public String transformationName;
+
+        public Transformation transformation;
+        public List<MethodBuilder> builders;
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            List<Transformation> transformations = ControlFlowGenerator.getTransformations();
+            int index = indexOf(transformations, transformationName);
+            transformation = transformations.get(index);
+
+            builders = createMethodBuilders(3);
+            for (MethodBuilder builder : builders) {
+                for (ControlFlowNode node : builder.getGraph().getNodes()) {
+                    for (int i = 0; i < index; i++) {
+                        transformations.get(i).run(node.block);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A transformation of {@link AstTransformations}, run on the whole class.
+     */
+    @Benchmark
+    public Class astTransformation(AstTransformationState state) {
+        state.transformation.run(state.decompiled);
+        return state.decompiled;
+    }
+
+    /**
+     * A transformation of {@link ControlFlowGenerator}, run on the block of each node.
+     */
+    @Benchmark
+    public List<MethodBuilder> controlFlowTransformation(ControlFlowTransformationState state) {
+        for (MethodBuilder builder : state.builders) {
+            for (ControlFlowNode node : builder.getGraph().getNodes()) {
+                state.transformation.run(node.block);
+            }
+        }
+        return state.builders;
+    }
+
+    private static int indexOf(List<Transformation> transformations, String name) {
+        for (int i = 0; i < transformations.size(); i++) {
+            if (transformations.get(i).getClass().getSimpleName().equals(name)) {
+                return i;
+            }
+        }
+
+        throw new IllegalArgumentException("no transformation named " + name);
+    }
+}
@@ -0,0 +1,79 @@
+package uncompile.benchmark.corpus;
+
+/**
+ * Deeply nested loops and conditions, which produce control flow graphs with
+ * long dominator chains and many loop levels.
+ */
+public class Nested {
+    public static int nestedLoops(int[][][] cube, int limit) {
+        int result = 0;
+        for (int i = 0; i < cube.length; i++) {
+            for (int j = 0; j < cube[i].length; j++) {
+                for (int k = 0; k < cube[i][j].length; k++) {
+                    int value = cube[i][j][k];
+                    while (value > limit) {
+                        if (value % 2 == 0) {
+                            value /= 2;
+                        } else {
+                            value = value * 3 + 1;
+                        }
+                        if (value == 1) {
+                            break;
+                        }
+                    }
+                    result += value;
+                }
+            }
+        }
+        return result;
+    }
+
+    public static int nestedConditions(int a, int b, int c, int d) {
+        int result = 0;
+        if (a > 0) {
+            if (b > 0) {
+                if (c > 0) {
+                    if (d > 0) {
+                        result = a + b + c + d;
+                    } else {
+                        result = a + b + c;
+                    }
+                } else if (d > 0) {
+                    result = a + b + d;
+                } else {
+                    result = a + b;
+                }
+            } else if (c > 0) {
+                if (d > 0) {
+                    result = a + c + d;
+                } else {
+                    result = a + c;
+                }
+            } else {
+                result = a;
+            }
+        } else if (b > 0 && c > 0 || d > 0) {
+            result = b - c + d;
+        }
+        return result;
+    }
+
+    public static int labeledLoops(int[][] matrix, int target) {
+        int found = -1;
+        outer:
+        for (int i = 0; i < matrix.length; i++) {
+            int j = 0;
+            do {
+                if (matrix[i][j] == target) {
+                    found = i * matrix[i].length + j;
+                    break outer;
+                }
+                if (matrix[i][j] > target) {
+                    continue outer;
+                }
+                j++;
+            } while (j < matrix[i].length);
+        }
+        return found;
+    }
+}
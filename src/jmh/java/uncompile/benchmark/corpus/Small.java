@@ -0,0 +1,49 @@
+package uncompile.benchmark.corpus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A typical small class: a few fields, accessors and short methods.
+ */
+public class Small {
+    private final String name;
+    private int count;
+    private final List<String> values = new ArrayList<>();
+
+    public Small(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void add(String value) {
+        if (value != null && !value.isEmpty()) {
+            values.add(value);
+            count++;
+        }
+    }
+
+    public int sum(int[] numbers) {
+        int sum = 0;
+        for (int i = 0; i < numbers.length; i++) {
+            sum += numbers[i];
+        }
+        return sum;
+    }
+
+    public static int max(int a, int b) {
+        return a > b ? a : b;
+    }
+
+    @Override
+    public String toString() {
+        return name + "(" + count + ")";
+    }
+}
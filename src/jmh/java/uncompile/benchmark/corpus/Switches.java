@@ -0,0 +1,90 @@
+package uncompile.benchmark.corpus;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dense, sparse, nested and string switches. The enum switch makes javac
+ * generate a synthetic inner class holding the switch map.
+ */
+public class Switches {
+    public static int dense(int value) {
+        switch (value) {
+            case 0: return 10;
+            case 1: return 11;
+            case 2: return 12;
+            case 3: return 13;
+            case 4: return 14;
+            case 5: return 15;
+            case 6: return 16;
+            case 7: return 17;
+            case 8: return 18;
+            case 9: return 19;
+            default: return -1;
+        }
+    }
+
+    public static int sparse(int value) {
+        int result;
+        switch (value) {
+            case -1000: result = 1; break;
+            case 7: result = 2; break;
+            case 100: result = 3; break;
+            case 4096: result = 4; break;
+            case 65536: result = 5; break;
+            case Integer.MAX_VALUE: result = 6; break;
+            default: result = 0;
+        }
+        return result;
+    }
+
+    public static int fallThrough(int value) {
+        int result = 0;
+        switch (value) {
+            case 1: result += 1;
+            case 2: result += 2;
+            case 3: result += 3; break;
+            case 4: result += 4;
+            default: result += 5;
+        }
+        return result;
+    }
+
+    public static int nested(int a, int b) {
+        switch (a) {
+            case 0:
+                switch (b) {
+                    case 0: return 0;
+                    case 1: return 1;
+                    default: return 2;
+                }
+            case 1:
+                switch (b) {
+                    case 10: return 3;
+                    case 20: return 4;
+                    default: return 5;
+                }
+            default:
+                return 6;
+        }
+    }
+
+    public static int strings(String value) {
+        switch (value) {
+            case "alpha": return 1;
+            case "beta": return 2;
+            case "gamma": return 3;
+            case "delta": return 4;
+            default: return 0;
+        }
+    }
+
+    public static long enums(TimeUnit unit) {
+        switch (unit) {
+            case NANOSECONDS: return 1;
+            case MICROSECONDS: return 1000;
+            case MILLISECONDS: return 1000000;
+            case SECONDS: return 1000000000;
+            default: return -1;
+        }
+    }
+}
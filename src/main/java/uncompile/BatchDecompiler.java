@@ -0,0 +1,164 @@
+package uncompile;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+import uncompile.ast.Class;
+import uncompile.astbuilder.ClassBuilder;
+import uncompile.astbuilder.DescriptionProvider;
+import uncompile.metrics.Metrics;
+import uncompile.metrics.MetricsListener;
+import uncompile.transformation.AstTransformations;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
+
+/**
+ * Decompiles many classes at once on a work-stealing pool. All classes share
+ * the same {@link ClassProvider} and {@link DescriptionProvider}, which must
+ * therefore be safe for concurrent use.
+ * <p>
+ * A class that fails to decompile is reported in the result of {@link #decompile}
+ * and doesn't stop the other classes from being decompiled.
+ */
+public class BatchDecompiler {
+    private final ClassProvider classProvider;
+    private final DescriptionProvider descriptionProvider;
+    private final int parallelism;
+
+    public BatchDecompiler(ClassProvider classProvider, DescriptionProvider descriptionProvider) {
+        this(classProvider, descriptionProvider, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchDecompiler(ClassProvider classProvider, DescriptionProvider descriptionProvider, int parallelism) {
+        this.classProvider = classProvider;
+        this.descriptionProvider = descriptionProvider;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Decompiles all top-level classes among the given classes. Inner classes are
+     * skipped since they are decompiled as part of their outer class.
+     *
+     * @param classNames the internal names of the classes to decompile
+     * @param output     called with the internal name and result of each decompiled
+     *                   class, possibly from several threads at once
+     * @return the exceptions thrown while decompiling each failed class, sorted by class name
+     */
+    public Map<String, Throwable> decompile(Collection<String> classNames, BiConsumer<String, Class> output) {
+        Map<String, Throwable> failures = new ConcurrentSkipListMap<>();
+        String[] names = classNames.toArray(new String[0]);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new DecompileTask(names, 0, names.length, output, failures));
+        } finally {
+            pool.shutdown();
+        }
+
+        return failures;
+    }
+
+    /**
+     * Decompiles a single class on the calling thread.
+     *
+     * @return the decompiled class, or null if the class is not a top-level class
+     */
+    public Class decompile(String className) {
+        byte[] bytes = classProvider.getClass(className);
+        if (bytes == null) {
+            throw new DecompilationNotPossibleException("class " + className + " not found");
+        }
+
+        ClassReader classReader = new ClassReader(bytes);
+        if (!isTopLevel(classReader) || (classReader.getAccess() & Opcodes.ACC_MODULE) != 0) {
+            return null;
+        }
+
+        MetricsListener metrics = Metrics.getListener();
+        metrics.classStarted(className);
+        try {
+            Class decompiled;
+            metrics.phaseStarted("ClassBuilder");
+            try {
+                ClassBuilder classBuilder = new ClassBuilder(classProvider, descriptionProvider);
+                classReader.accept(classBuilder, ClassReader.EXPAND_FRAMES);
+                decompiled = classBuilder.getResult();
+            } finally {
+                metrics.phaseFinished("ClassBuilder");
+            }
+
+            AstTransformations.run(decompiled);
+            return decompiled;
+        } finally {
+            metrics.classFinished(className);
+        }
+    }
+
+    private static boolean isTopLevel(ClassReader classReader) {
+        String className = classReader.getClassName();
+        if (className.endsWith("/package-info") || className.equals("package-info")) {
+            return false;
+        }
+
+        boolean[] isInner = {false};
+        classReader.accept(new ClassVisitor(Opcodes.ASM7) {
+            @Override
+            public void visitInnerClass(String name, String outerName, String innerName, int access) {
+                if (name.equals(className)) {
+                    isInner[0] = true;
+                }
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+        return !isInner[0];
+    }
+
+    private class DecompileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] classNames;
+        private final int start;
+        private final int end;
+        private final BiConsumer<String, Class> output;
+        private final Map<String, Throwable> failures;
+
+        private DecompileTask(String[] classNames, int start, int end, BiConsumer<String, Class> output, Map<String, Throwable> failures) {
+            this.classNames = classNames;
+            this.start = start;
+            this.end = end;
+            this.output = output;
+            this.failures = failures;
+        }
+
+        @Override
+        protected void compute() {
+            // Split down to single classes, since the time needed to decompile
+            // a class varies too much to be able to pick a useful batch size
+            if (end - start > 1) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new DecompileTask(classNames, start, middle, output, failures),
+                          new DecompileTask(classNames, middle, end, output, failures));
+                return;
+            }
+
+            if (start == end) {
+                return;
+            }
+
+            String className = classNames[start];
+            try {
+                Class decompiled = decompile(className);
+                if (decompiled != null) {
+                    output.accept(className, decompiled);
+                }
+            } catch (Throwable t) {
+                failures.put(className, t);
+            }
+        }
+    }
+}
@@ -1,5 +1,25 @@
 package uncompile;
 
+import java.util.zip.CRC32;
+
 public interface ClassProvider {
     byte[] getClass(String name);
+
+    /**
+     * Gets a hash of the contents of a class file, used to detect changed classes.
+     * The default implementation is the CRC-32 of the class file, which is also
+     * what ZIP archives store for each entry.
+     *
+     * @return the hash, or -1 if the class can't be found
+     */
+    default long getClassHash(String name) {
+        byte[] bytes = getClass(name);
+        if (bytes == null) {
+            return -1;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
 }
@@ -3,64 +3,186 @@ package uncompile;
 import org.objectweb.asm.ClassReader;
 import uncompile.ast.Class;
 import uncompile.astbuilder.ClassBuilder;
-import uncompile.astbuilder.DescriptionProvider;
-import uncompile.metadata.ClassDescription;
+import uncompile.astbuilder.BytecodeDescriptionProvider;
+import uncompile.astbuilder.MetadataIndex;
+import uncompile.classpath.*;
+import uncompile.metrics.Metrics;
+import uncompile.metrics.MetricsCollector;
 import uncompile.transformation.AstTransformations;
+import uncompile.transformation.DebugPrintTransformation;
 
 import java.io.*;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.Optional;
 
 public class Main {
-    public static void main(String[] args) {
-        ClassProvider classProvider = new SimpleClassProvider();
-        DescriptionProvider descriptionProvider = new DescriptionProvider() {
-            @Override
-            protected ClassDescription createClassDescription() {
-                return null; // TODO
-            }
-        };
+    private static final long CLASS_CACHE_SIZE = 64 * 1024 * 1024;
+    private static final int MISSING_CLASS_CACHE_SIZE = 64 * 1024;
 
-        ClassBuilder classBuilder = new ClassBuilder(classProvider, descriptionProvider);
-        new ClassReader(classProvider.getClass("Test")).accept(classBuilder, ClassReader.EXPAND_FRAMES);
-        Class decompiled = classBuilder.getResult();
+    /**
+     * Usage: [--index indexFile] [--metrics metricsFile] [inputJarOrDirectory [outputDirectory]]
+     * <p>
+     * With an index file, library metadata is read from the index, and the index
+     * is created or updated with the classes that were missing or stale in it.
+     * <p>
+     * With a metrics file, the time and memory used by each phase of decompiling
+     * each class and method are written to it, as CSV if its name ends with ".csv"
+     * and as JSON otherwise.
+     */
+    public static void main(String[] args) throws IOException {
+        Path indexFile = null;
+        Path metricsFile = null;
+        while (args.length > 1 && args[0].startsWith("--")) {
+            switch (args[0]) {
+                case "--index": {
+                    indexFile = Paths.get(args[1]);
+                    break;
+                }
 
-        AstTransformations.run(decompiled);
+                case "--metrics": {
+                    metricsFile = Paths.get(args[1]);
+                    break;
+                }
 
-        System.out.println(decompiled);
+                default: {
+                    System.err.println("Unknown option " + args[0]);
+                    return;
+                }
+            }
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+
+        MetricsCollector metrics = null;
+        if (metricsFile != null) {
+            metrics = new MetricsCollector();
+            Metrics.setListener(metrics);
+        }
+
+        try {
+            run(args, indexFile);
+        } finally {
+            if (metrics != null) {
+                writeMetrics(metrics, metricsFile);
+            }
+        }
     }
 
-    private static class SimpleClassProvider implements ClassProvider {
-        // TODO: switch to guava cache?
-        private Map<String, Optional<byte[]>> classCache = new HashMap<>();
+    private static void run(String[] args, Path indexFile) throws IOException {
+        if (args.length > 0) {
+            decompileAll(Paths.get(args[0]), args.length > 1 ? Paths.get(args[1]) : null, indexFile);
+            return;
+        }
 
-        @Override
-        public byte[] getClass(String name) {
-            return classCache.computeIfAbsent(name, k -> {
-                try {
-                    String resourceName = name.replace('.', '/') + ".class";
-                    File classFile = new File(resourceName);
+        try (ClassPath classPath = createClassPath(null);
+             MetadataIndex index = openIndex(indexFile)) {
+            ClassProvider classProvider = new CachingClassProvider(classPath, CLASS_CACHE_SIZE, MISSING_CLASS_CACHE_SIZE);
+            BytecodeDescriptionProvider descriptionProvider = createDescriptionProvider(classProvider, indexFile, index);
 
-                    InputStream classResource = classFile.exists() ?
-                            new FileInputStream(classFile) :
-                            Main.class.getResourceAsStream(resourceName);
+            ClassBuilder classBuilder = new ClassBuilder(classProvider, descriptionProvider);
+            new ClassReader(classProvider.getClass("Test")).accept(classBuilder, ClassReader.EXPAND_FRAMES);
+            Class decompiled = classBuilder.getResult();
 
-                    if (classResource == null) {
-                        return Optional.empty();
-                    }
+            // Show the code before the transformations too, for debugging them
+            new DebugPrintTransformation().run(decompiled);
+            AstTransformations.run(decompiled);
+
+            System.out.println(decompiled);
+
+            updateIndex(descriptionProvider, indexFile);
+        }
+    }
+
+    /**
+     * Decompiles all classes in a JAR or directory, writing them to the output
+     * directory, or to standard output if no output directory is given.
+     */
+    private static void decompileAll(Path input, Path outputDirectory, Path indexFile) throws IOException {
+        // The class path closes the source too, but it needs closing if creating
+        // the class path fails
+        try (ClassSource classSource = ClassSources.open(input);
+             ClassPath classPath = createClassPath(classSource);
+             MetadataIndex index = openIndex(indexFile)) {
+            ClassProvider classProvider = new CachingClassProvider(classPath, CLASS_CACHE_SIZE, MISSING_CLASS_CACHE_SIZE);
+            BytecodeDescriptionProvider descriptionProvider = createDescriptionProvider(classProvider, indexFile, index);
 
-                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-                    int nRead;
-                    byte[] data = new byte[16384];
-                    while ((nRead = classResource.read(data, 0, data.length)) != -1) {
-                        bytes.write(data, 0, nRead);
+            BatchDecompiler decompiler = new BatchDecompiler(classProvider, descriptionProvider);
+            Map<String, Throwable> failures = decompiler.decompile(classSource.getClassNames(), (name, decompiled) -> {
+                if (outputDirectory == null) {
+                    synchronized (System.out) {
+                        System.out.println(decompiled);
                     }
-                    return Optional.of(bytes.toByteArray());
+                    return;
+                }
+
+                try {
+                    Path outputFile = outputDirectory.resolve(name + ".java");
+                    Files.createDirectories(outputFile.getParent());
+                    Files.write(outputFile, decompiled.toString().getBytes(StandardCharsets.UTF_8));
                 } catch (IOException e) {
-                    throw new RuntimeException(e);
+                    throw new UncheckedIOException(e);
                 }
-            }).orElse(null);
+            });
+
+            for (Map.Entry<String, Throwable> failure : failures.entrySet()) {
+                System.err.println("Failed to decompile " + failure.getKey() + ": " + failure.getValue());
+            }
+
+            updateIndex(descriptionProvider, indexFile);
+        }
+    }
+
+    private static void writeMetrics(MetricsCollector metrics, Path metricsFile) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(metricsFile, StandardCharsets.UTF_8)) {
+            if (metricsFile.getFileName().toString().endsWith(".csv")) {
+                metrics.writeCsv(writer);
+            } else {
+                metrics.writeJson(writer);
+            }
+        }
+    }
+
+    /**
+     * @return the index, or null if there's none yet or it can't be used, in which
+     *         case a new one is written after decompiling
+     */
+    private static MetadataIndex openIndex(Path indexFile) {
+        if (indexFile == null || !Files.exists(indexFile)) {
+            return null;
+        }
+
+        try {
+            return MetadataIndex.open(indexFile);
+        } catch (IOException e) {
+            System.err.println("Rebuilding metadata index: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static BytecodeDescriptionProvider createDescriptionProvider(ClassProvider classProvider, Path indexFile, MetadataIndex index) {
+        return indexFile != null ? new BytecodeDescriptionProvider(classProvider, index) : new BytecodeDescriptionProvider(classProvider);
+    }
+
+    private static void updateIndex(BytecodeDescriptionProvider descriptionProvider, Path indexFile) throws IOException {
+        if (indexFile != null && descriptionProvider.getUnindexedClassCount() > 0) {
+            descriptionProvider.writeIndex(indexFile);
+        }
+    }
+
+    /**
+     * Creates the class path used to find classes: the input (if any), then the
+     * working directory, then the JDK.
+     */
+    private static ClassPath createClassPath(ClassSource input) throws IOException {
+        ClassPath classPath = new ClassPath();
+        if (input != null) {
+            classPath.add(input);
         }
+        classPath.add(new DirectoryClassSource(Paths.get("")));
+        classPath.add(ClassSources.openRuntime());
+        return classPath;
     }
 }
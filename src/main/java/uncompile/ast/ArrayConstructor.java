@@ -11,6 +11,7 @@ public class ArrayConstructor extends Expression {
     public ArrayConstructor(TypeNode componentType, Expression[] dimensions) {
         this.componentType = componentType;
         this.dimensions = dimensions;
+        AstLinks.linkChildren(this);
     }
 
     @Override
@@ -11,6 +11,7 @@ public class ArrayElement extends Expression {
     public ArrayElement(Expression array, Expression index) {
         this.array = array;
         this.index = index;
+        AstLinks.linkChildren(this);
     }
 
     @Override
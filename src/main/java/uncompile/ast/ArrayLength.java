@@ -9,6 +9,7 @@ public class ArrayLength extends Expression {
 
     public ArrayLength(Expression array) {
         this.array = array;
+        AstLinks.linkChildren(this);
     }
 
     @Override
@@ -10,6 +10,7 @@ public class ArrayTypeLiteral extends ClassReference {
     public ArrayTypeLiteral(TypeNode componenentType) {
         super(new ClassType(componenentType.toType() + "[]")); // TODO
         this.componenentType = componenentType;
+        AstLinks.linkChildren(this);
     }
 
     @Override
@@ -10,6 +10,7 @@ public class Assignment extends Expression {
     public Assignment(Expression left, Expression right) {
         this.left = left;
         this.right = right;
+        AstLinks.linkChildren(this);
     }
 
     @Override
@@ -0,0 +1,663 @@
+package uncompile.ast;
+
+import uncompile.astbuilder.LabeledStatement;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Links AST nodes to the slot they're in (see {@link AstNode#getParentNode}). A slot
+ * is a child field of the parent, numbered in the order {@link AstVisitor} visits the
+ * fields, and the position in the field if it's a list or an array.
+ * <p>
+ * Constructors link the children they're given, classes are linked once they've been
+ * built, and {@link ReplacingAstVisitor}, {@link SubstitutingAstVisitor} and
+ * {@link AstNode#replaceWith} keep the links up to date. Code that assigns the child
+ * fields of a node directly (or changes a child list) must call {@link #linkChildren}
+ * for the node, or {@link #linkIndexedChildren} if it updated the def-use index for
+ * the change.
+ */
+public final class AstLinks {
+    private static final Linker SHALLOW_LINKER = new Linker(false);
+    private static final Linker DEEP_LINKER = new Linker(true);
+
+    private AstLinks() {}
+
+    /**
+     * Links all nodes below a node to their parents.
+     */
+    public static void link(AstNode root) {
+        DEEP_LINKER.linkChildren(root);
+    }
+
+    /**
+     * Links the children of a node to it. The def-use index of the method the node
+     * is in is dropped, since it doesn't know about the change.
+     */
+    public static void linkChildren(AstNode parent) {
+        SHALLOW_LINKER.linkChildren(parent);
+
+        Method method = parent instanceof Method ? (Method) parent : parent.getEnclosing(Method.class);
+        if (method != null) {
+            method.defUseIndex = null;
+        }
+    }
+
+    /**
+     * Links the children of a node to it, keeping the def-use index of the method
+     * the node is in. The change must have been recorded in the index.
+     */
+    public static void linkIndexedChildren(AstNode parent) {
+        SHALLOW_LINKER.linkChildren(parent);
+    }
+
+    /**
+     * Puts a node in a slot of a parent, or removes the node in the slot if the node
+     * is null. Removing a node from a list moves the nodes after it up.
+     */
+    static void set(AstNode parent, int slot, int index, @Nullable AstNode child) {
+        Setter setter = new Setter(slot, index, child);
+        if (parent instanceof TryCatch.Catch) {
+            setter.setCatch((TryCatch.Catch) parent);
+        } else {
+            parent.accept(setter);
+        }
+    }
+
+    /**
+     * Moves the links of a node that was replaced to its replacement.
+     */
+    static void move(AstNode from, @Nullable AstNode to) {
+        if (to != null) {
+            to.parentNode = from.parentNode;
+            to.slot = from.slot;
+            to.slotIndex = from.slotIndex;
+        }
+
+        if (from != to) {
+            from.parentNode = null;
+            from.slot = -1;
+            from.slotIndex = -1;
+        }
+    }
+
+    /**
+     * Updates the position of a node that was moved in a list of a parent.
+     */
+    static void setIndex(AstNode parent, AstNode child, int index) {
+        if (child.parentNode == parent) {
+            child.slotIndex = index;
+        }
+    }
+
+    private static class Linker extends AstVisitor {
+        private final boolean deep;
+
+        private Linker(boolean deep) {
+            this.deep = deep;
+        }
+
+        private void linkChildren(AstNode parent) {
+            // Catch blocks can't be visited
+            if (parent instanceof TryCatch.Catch) {
+                linkCatch((TryCatch.Catch) parent);
+            } else {
+                parent.accept(this);
+            }
+        }
+
+        private void link(AstNode parent, int slot, int index, @Nullable AstNode child) {
+            if (child != null) {
+                child.parentNode = parent;
+                child.slot = slot;
+                child.slotIndex = index;
+                if (deep) {
+                    linkChildren(child);
+                }
+            }
+        }
+
+        private void link(AstNode parent, int slot, @Nullable AstNode child) {
+            link(parent, slot, -1, child);
+        }
+
+        private void link(AstNode parent, int slot, List<? extends AstNode> children) {
+            for (int i = 0; i < children.size(); i++) {
+                link(parent, slot, i, children.get(i));
+            }
+        }
+
+        private void link(AstNode parent, int slot, AstNode[] children) {
+            for (int i = 0; i < children.length; i++) {
+                link(parent, slot, i, children[i]);
+            }
+        }
+
+        private void linkCatch(TryCatch.Catch catchBlock) {
+            link(catchBlock, 0, catchBlock.exceptionVariable);
+            link(catchBlock, 1, catchBlock.block);
+            link(catchBlock, 2, catchBlock.exceptionTypes);
+        }
+
+        @Override
+        public void visit(ArrayConstructor arrayConstructor) {
+            link(arrayConstructor, 0, arrayConstructor.componentType);
+            link(arrayConstructor, 1, arrayConstructor.dimensions);
+        }
+
+        @Override
+        public void visit(ArrayElement arrayElement) {
+            link(arrayElement, 0, arrayElement.array);
+            link(arrayElement, 1, arrayElement.index);
+        }
+
+        @Override
+        public void visit(Assignment assignment) {
+            link(assignment, 0, assignment.left);
+            link(assignment, 1, assignment.right);
+        }
+
+        @Override
+        public void visit(BinaryOperation binaryOperation) {
+            link(binaryOperation, 0, binaryOperation.left);
+            link(binaryOperation, 1, binaryOperation.right);
+        }
+
+        @Override
+        public void visit(Block block) {
+            link(block, 0, block.statements);
+        }
+
+        @Override
+        public void visit(Cast cast) {
+            link(cast, 0, cast.type);
+            link(cast, 1, cast.expression);
+        }
+
+        @Override
+        public void visit(Class clazz) {
+            link(clazz, 0, clazz.typeParameters);
+            link(clazz, 1, clazz.superType);
+            link(clazz, 2, clazz.interfaces);
+            link(clazz, 3, clazz.innerClasses);
+            link(clazz, 4, clazz.fields);
+            link(clazz, 5, clazz.methods);
+        }
+
+        @Override
+        public void visit(ClassLiteral classLiteral) {
+            link(classLiteral, 0, classLiteral.value);
+        }
+
+        @Override
+        public void visit(ArrayLength arrayLength) {
+            link(arrayLength, 0, arrayLength.array);
+        }
+
+        @Override
+        public void visit(ArrayTypeLiteral arrayType) {
+            link(arrayType, 0, arrayType.componenentType);
+        }
+
+        @Override
+        public void visit(ClassCreationExpression constructorCall) {
+            link(constructorCall, 0, constructorCall.type);
+            link(constructorCall, 1, constructorCall.arguments);
+        }
+
+        @Override
+        public void visit(Field field) {
+            link(field, 0, field.type);
+            link(field, 1, field.initialValue);
+        }
+
+        @Override
+        public void visit(If ifExpr) {
+            link(ifExpr, 0, ifExpr.condition);
+            link(ifExpr, 1, ifExpr.ifBlock);
+            link(ifExpr, 2, ifExpr.elseBlock);
+        }
+
+        @Override
+        public void visit(InstanceFieldReference instanceFieldReference) {
+            link(instanceFieldReference, 0, instanceFieldReference.target);
+        }
+
+        @Override
+        public void visit(InstanceMethodCall instanceMethodCall) {
+            link(instanceMethodCall, 0, instanceMethodCall.target);
+            link(instanceMethodCall, 1, instanceMethodCall.typeArguments);
+            link(instanceMethodCall, 2, instanceMethodCall.arguments);
+        }
+
+        @Override
+        public void visit(Method method) {
+            link(method, 0, method.typeParameters);
+            link(method, 1, method.returnType);
+            link(method, 2, method.parameters);
+            link(method, 3, method.exceptions);
+            link(method, 4, method.body);
+        }
+
+        @Override
+        public void visit(ParenthesizedExpression par) {
+            link(par, 0, par.expression);
+        }
+
+        @Override
+        public void visit(ParameterizedTypeNode parameterizedTypeNode) {
+            link(parameterizedTypeNode, 0, parameterizedTypeNode.rawType);
+            link(parameterizedTypeNode, 1, parameterizedTypeNode.typeArguments);
+        }
+
+        @Override
+        public void visit(Return returnExpr) {
+            link(returnExpr, 0, returnExpr.value);
+        }
+
+        @Override
+        public void visit(StaticFieldReference staticFieldReference) {
+            link(staticFieldReference, 0, staticFieldReference.owner);
+        }
+
+        @Override
+        public void visit(StaticMethodCall staticMethodCall) {
+            link(staticMethodCall, 0, staticMethodCall.owner);
+            link(staticMethodCall, 1, staticMethodCall.typeArguments);
+            link(staticMethodCall, 2, staticMethodCall.arguments);
+        }
+
+        @Override
+        public void visit(SuperConstructorCall superConstructorCall) {
+            link(superConstructorCall, 0, superConstructorCall.owner);
+            link(superConstructorCall, 1, superConstructorCall.arguments);
+        }
+
+        @Override
+        public void visit(SuperReference superReference) {
+            link(superReference, 0, superReference.owner);
+        }
+
+        @Override
+        public void visit(Switch switchExpr) {
+            link(switchExpr, 0, switchExpr.expression);
+            link(switchExpr, 1, switchExpr.cases);
+            link(switchExpr, 2, switchExpr.branches);
+        }
+
+        @Override
+        public void visit(ThisConstructorCall thisConstructorCall) {
+            link(thisConstructorCall, 0, thisConstructorCall.owner);
+            link(thisConstructorCall, 1, thisConstructorCall.arguments);
+        }
+
+        @Override
+        public void visit(ThisReference thisReference) {
+            link(thisReference, 0, thisReference.owner);
+        }
+
+        @Override
+        public void visit(Throw throwExpr) {
+            link(throwExpr, 0, throwExpr.exception);
+        }
+
+        @Override
+        public void visit(TryCatch tryCatch) {
+            link(tryCatch, 0, tryCatch.resources);
+            link(tryCatch, 1, tryCatch.tryBlock);
+            link(tryCatch, 2, tryCatch.catchBlocks);
+            link(tryCatch, 3, tryCatch.finallyBlock);
+        }
+
+        @Override
+        public void visit(TypeParameter typeParameter) {
+            link(typeParameter, 0, typeParameter.extendsBound);
+            link(typeParameter, 1, typeParameter.additionalBounds);
+        }
+
+        @Override
+        public void visit(UnaryOperation unaryOperation) {
+            link(unaryOperation, 0, unaryOperation.expression);
+        }
+
+        @Override
+        public void visit(VariableDeclaration variableDeclaration) {
+            link(variableDeclaration, 0, variableDeclaration.type);
+        }
+
+        @Override
+        public void visit(Instanceof instanceofExpression) {
+            link(instanceofExpression, 0, instanceofExpression.expression);
+            link(instanceofExpression, 1, instanceofExpression.type);
+        }
+
+        @Override
+        public void visit(WhileLoop whileLoop) {
+            link(whileLoop, 0, whileLoop.condition);
+            link(whileLoop, 1, whileLoop.body);
+        }
+
+        @Override
+        public void visit(Wildcard wildcard) {
+            link(wildcard, 0, wildcard.extendsBound);
+            link(wildcard, 1, wildcard.superBound);
+        }
+
+        @Override
+        public void visit(ExpressionStatement expressionStatement) {
+            link(expressionStatement, 0, expressionStatement.expression);
+        }
+
+        @Override
+        public void visit(LabeledStatement labeledStatement) {
+            link(labeledStatement, 0, labeledStatement.statement);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static class Setter extends AstVisitor {
+        private final int slot;
+        private final int index;
+        @Nullable private final AstNode child;
+
+        private Setter(int slot, int index, @Nullable AstNode child) {
+            this.slot = slot;
+            this.index = index;
+            this.child = child;
+        }
+
+        private <T extends AstNode> void set(AstNode parent, List<T> list) {
+            if (child != null) {
+                list.set(index, (T) child);
+                return;
+            }
+
+            list.remove(index);
+            for (int i = index; i < list.size(); i++) {
+                setIndex(parent, list.get(i), i);
+            }
+        }
+
+        private <T extends AstNode> void set(T[] array) {
+            array[index] = (T) child;
+        }
+
+        private void setCatch(TryCatch.Catch catchBlock) {
+            switch (slot) {
+                case 0: catchBlock.exceptionVariable = (VariableDeclaration) child; break;
+                case 1: catchBlock.block = (Block) child; break;
+                default: set(catchBlock, catchBlock.exceptionTypes);
+            }
+        }
+
+        @Override
+        public void visit(ArrayConstructor arrayConstructor) {
+            if (slot == 0) {
+                arrayConstructor.componentType = (TypeNode) child;
+            } else {
+                set(arrayConstructor.dimensions);
+            }
+        }
+
+        @Override
+        public void visit(ArrayElement arrayElement) {
+            if (slot == 0) {
+                arrayElement.array = (Expression) child;
+            } else {
+                arrayElement.index = (Expression) child;
+            }
+        }
+
+        @Override
+        public void visit(Assignment assignment) {
+            if (slot == 0) {
+                assignment.left = (Expression) child;
+            } else {
+                assignment.right = (Expression) child;
+            }
+        }
+
+        @Override
+        public void visit(BinaryOperation binaryOperation) {
+            if (slot == 0) {
+                binaryOperation.left = (Expression) child;
+            } else {
+                binaryOperation.right = (Expression) child;
+            }
+        }
+
+        @Override
+        public void visit(Block block) {
+            set(block, block.statements);
+        }
+
+        @Override
+        public void visit(Cast cast) {
+            if (slot == 0) {
+                cast.type = (TypeNode) child;
+            } else {
+                cast.expression = (Expression) child;
+            }
+        }
+
+        @Override
+        public void visit(Class clazz) {
+            switch (slot) {
+                case 0: set(clazz, clazz.typeParameters); break;
+                case 1: clazz.superType = (ReferenceTypeNode) child; break;
+                case 2: set(clazz, clazz.interfaces); break;
+                case 3: set(clazz, clazz.innerClasses); break;
+                case 4: set(clazz, clazz.fields); break;
+                default: set(clazz, clazz.methods);
+            }
+        }
+
+        @Override
+        public void visit(ClassLiteral classLiteral) {
+            classLiteral.value = (TypeNode) child;
+        }
+
+        @Override
+        public void visit(ArrayLength arrayLength) {
+            arrayLength.array = (Expression) child;
+        }
+
+        @Override
+        public void visit(ArrayTypeLiteral arrayType) {
+            arrayType.componenentType = (TypeNode) child;
+        }
+
+        @Override
+        public void visit(ClassCreationExpression constructorCall) {
+            if (slot == 0) {
+                constructorCall.type = (ReferenceTypeNode) child;
+            } else {
+                set(constructorCall, constructorCall.arguments);
+            }
+        }
+
+        @Override
+        public void visit(Field field) {
+            if (slot == 0) {
+                field.type = (TypeNode) child;
+            } else {
+                field.initialValue = (Expression) child;
+            }
+        }
+
+        @Override
+        public void visit(If ifExpr) {
+            switch (slot) {
+                case 0: ifExpr.condition = (Expression) child; break;
+                case 1: ifExpr.ifBlock = (Block) child; break;
+                default: ifExpr.elseBlock = (Block) child;
+            }
+        }
+
+        @Override
+        public void visit(InstanceFieldReference instanceFieldReference) {
+            instanceFieldReference.target = (Expression) child;
+        }
+
+        @Override
+        public void visit(InstanceMethodCall instanceMethodCall) {
+            switch (slot) {
+                case 0: instanceMethodCall.target = (Expression) child; break;
+                case 1: set(instanceMethodCall, instanceMethodCall.typeArguments); break;
+                default: set(instanceMethodCall, instanceMethodCall.arguments);
+            }
+        }
+
+        @Override
+        public void visit(Method method) {
+            switch (slot) {
+                case 0: set(method, method.typeParameters); break;
+                case 1: method.returnType = (TypeNode) child; break;
+                case 2: set(method, method.parameters); break;
+                case 3: set(method, method.exceptions); break;
+                default: method.body = (Block) child;
+            }
+        }
+
+        @Override
+        public void visit(ParenthesizedExpression par) {
+            par.expression = (Expression) child;
+        }
+
+        @Override
+        public void visit(ParameterizedTypeNode parameterizedTypeNode) {
+            if (slot == 0) {
+                parameterizedTypeNode.rawType = (ClassReference) child;
+            } else {
+                set(parameterizedTypeNode, parameterizedTypeNode.typeArguments);
+            }
+        }
+
+        @Override
+        public void visit(Return returnExpr) {
+            returnExpr.value = (Expression) child;
+        }
+
+        @Override
+        public void visit(StaticFieldReference staticFieldReference) {
+            staticFieldReference.owner = (ClassReference) child;
+        }
+
+        @Override
+        public void visit(StaticMethodCall staticMethodCall) {
+            switch (slot) {
+                case 0: staticMethodCall.owner = (ClassReference) child; break;
+                case 1: set(staticMethodCall, staticMethodCall.typeArguments); break;
+                default: set(staticMethodCall, staticMethodCall.arguments);
+            }
+        }
+
+        @Override
+        public void visit(SuperConstructorCall superConstructorCall) {
+            if (slot == 0) {
+                superConstructorCall.owner = (SuperReference) child;
+            } else {
+                set(superConstructorCall, superConstructorCall.arguments);
+            }
+        }
+
+        @Override
+        public void visit(SuperReference superReference) {
+            superReference.owner = (ClassReference) child;
+        }
+
+        @Override
+        public void visit(Switch switchExpr) {
+            switch (slot) {
+                case 0: switchExpr.expression = (Expression) child; break;
+                case 1: set(switchExpr.cases); break;
+                default: set(switchExpr.branches);
+            }
+        }
+
+        @Override
+        public void visit(ThisConstructorCall thisConstructorCall) {
+            if (slot == 0) {
+                thisConstructorCall.owner = (ThisReference) child;
+            } else {
+                set(thisConstructorCall, thisConstructorCall.arguments);
+            }
+        }
+
+        @Override
+        public void visit(ThisReference thisReference) {
+            thisReference.owner = (ClassReference) child;
+        }
+
+        @Override
+        public void visit(Throw throwExpr) {
+            throwExpr.exception = (Expression) child;
+        }
+
+        @Override
+        public void visit(TryCatch tryCatch) {
+            switch (slot) {
+                case 0: tryCatch.resources = (Block) child; break;
+                case 1: tryCatch.tryBlock = (Block) child; break;
+                case 2: set(tryCatch, tryCatch.catchBlocks); break;
+                default: tryCatch.finallyBlock = (Block) child;
+            }
+        }
+
+        @Override
+        public void visit(TypeParameter typeParameter) {
+            if (slot == 0) {
+                typeParameter.extendsBound = (ReferenceTypeNode) child;
+            } else {
+                set(typeParameter, typeParameter.additionalBounds);
+            }
+        }
+
+        @Override
+        public void visit(UnaryOperation unaryOperation) {
+            unaryOperation.expression = (Expression) child;
+        }
+
+        @Override
+        public void visit(VariableDeclaration variableDeclaration) {
+            variableDeclaration.type = (TypeNode) child;
+        }
+
+        @Override
+        public void visit(Instanceof instanceofExpression) {
+            if (slot == 0) {
+                instanceofExpression.expression = (Expression) child;
+            } else {
+                instanceofExpression.type = (ReferenceTypeNode) child;
+            }
+        }
+
+        @Override
+        public void visit(WhileLoop whileLoop) {
+            if (slot == 0) {
+                whileLoop.condition = (Expression) child;
+            } else {
+                whileLoop.body = (Block) child;
+            }
+        }
+
+        @Override
+        public void visit(Wildcard wildcard) {
+            if (slot == 0) {
+                wildcard.extendsBound = (TypeNode) child;
+            } else {
+                wildcard.superBound = (TypeNode) child;
+            }
+        }
+
+        @Override
+        public void visit(ExpressionStatement expressionStatement) {
+            expressionStatement.expression = (Expression) child;
+        }
+
+        @Override
+        public void visit(LabeledStatement labeledStatement) {
+            labeledStatement.statement = (Statement) child;
+        }
+    }
+}
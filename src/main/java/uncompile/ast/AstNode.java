@@ -2,12 +2,18 @@ package uncompile.ast;
 
 import uncompile.util.IndentingPrintWriter;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
 
 public abstract class AstNode { // TODO: use builders for everything, use print visitor rather than print methods
+    // The slot this node is in (see AstLinks)
+    @Nullable AstNode parentNode = null;
+    int slot = -1;
+    int slotIndex = -1;
+
     public String toString() {
         try (StringWriter stringWriter = new StringWriter();
              IndentingPrintWriter w = new IndentingPrintWriter(stringWriter)) {
@@ -32,6 +38,83 @@ public abstract class AstNode { // TODO: use builders for everything, use print
         return super.hashCode();
     }
 
+    /**
+     * @return the node this node is a child of, or null if it isn't linked to one (see
+     *         {@link AstLinks}). A node that is in the tree more than once is linked to
+     *         the last place it was put in.
+     */
+    public AstNode getParentNode() {
+        return parentNode;
+    }
+
+    /**
+     * @return the child field of the parent this node is in, numbered in the order
+     *         {@link AstVisitor} visits the fields, or -1 if it isn't linked
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * @return the position of this node in its slot if the slot is a list or an array,
+     *         or -1 otherwise
+     */
+    public int getSlotIndex() {
+        return slotIndex;
+    }
+
+    /**
+     * @return the closest ancestor of this node that is of some type, or null if there
+     *         isn't one
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends AstNode> T getEnclosing(java.lang.Class<T> type) {
+        for (AstNode node = parentNode; node != null; node = node.parentNode) {
+            if (type.isInstance(node)) {
+                return (T) node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Replaces this node in the slot it's in, or removes it if the replacement is null.
+     * Removing a node from a list moves the nodes after it up.
+     */
+    public void replaceWith(@Nullable AstNode node) {
+        if (parentNode == null) {
+            throw new IllegalStateException("node isn't linked to a parent");
+        }
+
+        DefUseIndex index = getBuiltDefUseIndex();
+        Statement statement = index != null ? getEnclosing(Statement.class) : null;
+        if (index != null) {
+            index.remove(this);
+        }
+
+        AstLinks.set(parentNode, slot, slotIndex, node);
+        AstLinks.move(this, node);
+
+        if (index != null && node != null) {
+            index.add(node, statement);
+        }
+    }
+
+    /**
+     * @return the def-use index of the method body this node is in, if it has been built
+     */
+    @Nullable
+    private DefUseIndex getBuiltDefUseIndex() {
+        AstNode child = this;
+        for (AstNode node = parentNode; node != null; child = node, node = node.parentNode) {
+            if (node instanceof Method) {
+                Method method = (Method) node;
+                return child == method.body ? method.defUseIndex : null;
+            }
+        }
+        return null;
+    }
+
     @SuppressWarnings("unchecked")
     public <T> List<T> getDescendants(java.lang.Class<T> type) {
         List<T> results = new ArrayList<>();
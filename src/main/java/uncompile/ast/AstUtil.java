@@ -2,6 +2,7 @@ package uncompile.ast;
 
 import uncompile.metadata.PrimitiveType;
 
+import javax.annotation.Nullable;
 import java.util.Map;
 import java.util.Optional;
 
@@ -10,6 +11,7 @@ public class AstUtil {
         if (expression instanceof ParenthesizedExpression) {
             ParenthesizedExpression par = (ParenthesizedExpression) expression;
             ((ParenthesizedExpression) expression).expression = negate(par.expression);
+            AstLinks.linkChildren(par);
             return par;
         }
 
@@ -90,7 +92,11 @@ public class AstUtil {
     }
 
     public static boolean substitute(AstNode expression, Map<? extends Expression, Optional<Expression>> substitutions) {
-        SubstitutingAstVisitor visitor = new SubstitutingAstVisitor(substitutions);
+        return substitute(expression, substitutions, null);
+    }
+
+    public static boolean substitute(AstNode expression, Map<? extends Expression, Optional<Expression>> substitutions, @Nullable DefUseIndex index) {
+        SubstitutingAstVisitor visitor = new SubstitutingAstVisitor(substitutions, index);
         visitor.visit(expression);
         return visitor.changed();
     }
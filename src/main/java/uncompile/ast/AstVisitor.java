@@ -51,6 +51,7 @@ public class AstVisitor {
     }
 
     public void visit(Class clazz) {
+        visit(clazz.typeParameters);
         visit(clazz.superType);
         visit(clazz.interfaces);
         visit(clazz.innerClasses);
@@ -101,7 +102,9 @@ public class AstVisitor {
 
     public void visit(Field field) {
         visit(field.type);
-        visit(field.initialValue);
+        if (field.initialValue != null) {
+            visit(field.initialValue);
+        }
     }
 
     public void visit(FloatLiteral floatLiteral) {
@@ -160,6 +163,11 @@ public class AstVisitor {
         visit(par.expression);
     }
 
+    public void visit(ParameterizedTypeNode parameterizedTypeNode) {
+        visit(parameterizedTypeNode.rawType);
+        visit(parameterizedTypeNode.typeArguments);
+    }
+
     public void visit(PrimitiveTypeNode primitiveTypeNode) {
 
     }
@@ -235,6 +243,7 @@ public class AstVisitor {
         if (typeParameter.extendsBound != null) {
             visit(typeParameter.extendsBound);
         }
+        visit(typeParameter.additionalBounds);
     }
 
     public void visit(UnaryOperation unaryOperation) {
@@ -12,6 +12,7 @@ public class BinaryOperation extends Expression {
         this.operator = operator;
         this.left = left;
         this.right = right;
+        AstLinks.linkChildren(this);
     }
 
     @Override
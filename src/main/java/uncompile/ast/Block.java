@@ -12,10 +12,13 @@ public class Block extends Statement implements Iterable<Statement> {
 
     public void add(Statement statement) {
         statements.add(statement);
+        statement.parentNode = this;
+        statement.slot = 0;
+        statement.slotIndex = statements.size() - 1;
     }
 
     public void add(Expression expression) {
-        statements.add(new ExpressionStatement(expression));
+        add(new ExpressionStatement(expression));
     }
 
     public void addStatements(Iterable<? extends Statement> statements) {
@@ -10,6 +10,7 @@ public class Cast extends Expression {
     public Cast(Expression expression, TypeNode type) {
         this.expression = expression;
         this.type = type;
+        AstLinks.linkChildren(this);
     }
 
     @Override
@@ -16,6 +16,7 @@ public class Class extends AstNode implements ClassDescription {
     public boolean isFinal;
     public boolean isAbstract;
     public boolean isSynthetic;
+    public List<TypeParameter> typeParameters = new ArrayList<>();
     public ReferenceTypeNode superType;
     public List<ReferenceTypeNode> interfaces = new ArrayList<>();
     public Class outerClass = null;
@@ -35,6 +36,7 @@ public class Class extends AstNode implements ClassDescription {
         this.isAbstract = isAbstract;
         this.isSynthetic = isSynthetic;
         this.superType = superType;
+        AstLinks.linkChildren(this);
     }
 
     public boolean isNormalClass() {
@@ -192,6 +194,23 @@ public class Class extends AstNode implements ClassDescription {
         // Name
         w.append(name);
 
+        // Type parameters
+        if (!typeParameters.isEmpty()) {
+            w.append("<");
+
+            boolean first = true;
+            for (TypeParameter typeParameter : typeParameters) {
+                if (!first) {
+                    w.append(", ");
+                }
+                first = false;
+
+                typeParameter.append(w);
+            }
+
+            w.append(">");
+        }
+
         // Extends
         if (!superType.toType().getRawType().equals(ClassType.OBJECT) && !(isEnum() && superType.toType().getRawType().equals(ClassType.ENUM))) {
             w.append(" extends ");
@@ -16,6 +16,7 @@ public class ClassCreationExpression extends Expression { // TODO: primary, type
     public ClassCreationExpression(ReferenceTypeNode type, MethodDescription method) {
         this.type = type;
         this.method = method;
+        AstLinks.linkChildren(this);
     }
 
     @Override
@@ -9,6 +9,7 @@ public class ClassLiteral extends Expression {
 
     public ClassLiteral(TypeNode value) {
         this.value = value;
+        AstLinks.linkChildren(this);
     }
 
     @Override
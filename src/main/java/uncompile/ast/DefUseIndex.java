@@ -0,0 +1,246 @@
+package uncompile.ast;
+
+import java.util.*;
+
+/**
+ * The uses, definitions and declarations of the variables of a method body, and
+ * the statement each of them is in. Uses are variable references that aren't the
+ * left side of an assignment, definitions are assignments to a variable, and
+ * declarations are the variable declarations themselves.
+ * <p>
+ * The index is built once per method (see {@link Method#getDefUseIndex}) and kept
+ * up to date by {@link AstNode#replaceWith}, by a {@link ReplacingAstVisitor} or
+ * {@link SubstitutingAstVisitor} created with the index, or by calling
+ * {@link #remove} and {@link #add} for the changed nodes. Other changes drop it
+ * when the node is relinked (see {@link AstLinks#linkChildren}).
+ */
+public class DefUseIndex {
+    private final Map<VariableDeclaration, Entry> entries = new HashMap<>();
+    private final Map<AstNode, Statement> statements = new HashMap<>();
+
+    private static class Entry {
+        // Occurrence counts, in case a node is in the tree more than once
+        private final Map<VariableReference, Integer> uses = new LinkedHashMap<>();
+        private final Map<Assignment, Integer> definitions = new LinkedHashMap<>();
+        private final Map<VariableDeclaration, Integer> declarations = new LinkedHashMap<>();
+        private int useCount = 0;
+        private int definitionCount = 0;
+
+        private boolean isEmpty() {
+            return uses.isEmpty() && definitions.isEmpty() && declarations.isEmpty();
+        }
+    }
+
+    private DefUseIndex() {}
+
+    public static DefUseIndex build(Block body) {
+        DefUseIndex index = new DefUseIndex();
+        index.add(body, null);
+        return index;
+    }
+
+    /**
+     * @return the variables that are used, defined or declared in the body
+     */
+    public Set<VariableDeclaration> getVariables() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    public Set<VariableReference> getUses(VariableDeclaration variable) {
+        Entry entry = entries.get(variable);
+        return entry == null ? Collections.emptySet() : Collections.unmodifiableSet(entry.uses.keySet());
+    }
+
+    public Set<Assignment> getDefinitions(VariableDeclaration variable) {
+        Entry entry = entries.get(variable);
+        return entry == null ? Collections.emptySet() : Collections.unmodifiableSet(entry.definitions.keySet());
+    }
+
+    public Set<VariableDeclaration> getDeclarations(VariableDeclaration variable) {
+        Entry entry = entries.get(variable);
+        return entry == null ? Collections.emptySet() : Collections.unmodifiableSet(entry.declarations.keySet());
+    }
+
+    /**
+     * @return the number of times a variable is used, counting nodes that are in
+     *         the tree more than once for each occurrence
+     */
+    public int getUseCount(VariableDeclaration variable) {
+        Entry entry = entries.get(variable);
+        return entry == null ? 0 : entry.useCount;
+    }
+
+    public int getDefinitionCount(VariableDeclaration variable) {
+        Entry entry = entries.get(variable);
+        return entry == null ? 0 : entry.definitionCount;
+    }
+
+    /**
+     * @return the innermost statement containing an indexed node (a use, definition,
+     *         declaration or statement), or null if it's the root or not indexed
+     */
+    public Statement getStatement(AstNode node) {
+        return statements.get(node);
+    }
+
+    /**
+     * @return whether an indexed node is inside a statement (or is the statement)
+     */
+    public boolean isInside(AstNode node, Statement statement) {
+        for (AstNode current = node; current != null; current = statements.get(current)) {
+            if (current == statement) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Indexes a subtree that was added to the body.
+     *
+     * @param statement the innermost statement the subtree is in (or is a part of),
+     *                  unless the subtree is the whole body
+     */
+    public void add(AstNode node, Statement statement) {
+        new Indexer(true, statement).visitRoot(node);
+    }
+
+    /**
+     * Removes a subtree that was removed from the body from the index. This must be
+     * called before the subtree is unlinked.
+     */
+    public void remove(AstNode node) {
+        new Indexer(false, null).visitRoot(node);
+    }
+
+    private static <T> int count(Map<T, Integer> occurrences, T node, boolean adding) {
+        if (adding) {
+            occurrences.merge(node, 1, Integer::sum);
+            return 1;
+        }
+
+        Integer count = occurrences.get(node);
+        if (count == null) {
+            return 0;
+        }
+
+        if (count == 1) {
+            occurrences.remove(node);
+        } else {
+            occurrences.put(node, count - 1);
+        }
+        return -1;
+    }
+
+    private class Indexer extends AstVisitor {
+        private final boolean adding;
+        private final Deque<Statement> enclosing = new ArrayDeque<>();
+
+        private Indexer(boolean adding, Statement statement) {
+            this.adding = adding;
+            if (statement != null) {
+                enclosing.push(statement);
+            }
+        }
+
+        private void record(AstNode node) {
+            if (adding) {
+                Statement statement = enclosing.peek();
+                if (statement != null) {
+                    statements.put(node, statement);
+                }
+            } else {
+                statements.remove(node);
+            }
+        }
+
+        private Entry getEntry(VariableDeclaration variable) {
+            return adding ? entries.computeIfAbsent(variable, k -> new Entry()) : entries.get(variable);
+        }
+
+        private void removeIfEmpty(VariableDeclaration variable, Entry entry) {
+            if (!adding && entry.isEmpty()) {
+                entries.remove(variable);
+            }
+        }
+
+        private void visitRoot(AstNode node) {
+            // A variable on the left side of an assignment is a definition, which
+            // is indexed by the assignment
+            if (node instanceof VariableReference && node.getParentNode() instanceof Assignment && node.getSlot() == 0) {
+                define((Assignment) node.getParentNode(), (VariableReference) node);
+                if (node instanceof VariableDeclaration) {
+                    visit(node);
+                }
+            } else {
+                visit(node);
+            }
+        }
+
+        private void define(Assignment assignment, VariableReference left) {
+            VariableDeclaration variable = left.declaration;
+            Entry entry = getEntry(variable);
+            if (entry != null) {
+                entry.definitionCount += count(entry.definitions, assignment, adding);
+                record(assignment);
+                removeIfEmpty(variable, entry);
+            }
+        }
+
+        @Override
+        public void visit(AstNode node) {
+            if (node instanceof Statement && !(node instanceof Block)) {
+                record(node);
+                enclosing.push((Statement) node);
+                super.visit(node);
+                enclosing.pop();
+            } else {
+                super.visit(node);
+            }
+        }
+
+        @Override
+        public void visit(Block block) {
+            // Blocks are often visited directly rather than through visit(AstNode)
+            record(block);
+            enclosing.push(block);
+            super.visit(block);
+            enclosing.pop();
+        }
+
+        @Override
+        public void visit(Assignment assignment) {
+            if (assignment.left instanceof VariableReference) {
+                define(assignment, (VariableReference) assignment.left);
+                if (assignment.left instanceof VariableDeclaration) {
+                    visit(assignment.left);
+                }
+            } else {
+                visit(assignment.left);
+            }
+            visit(assignment.right);
+        }
+
+        @Override
+        public void visit(VariableReference variableReference) {
+            VariableDeclaration variable = variableReference.declaration;
+            Entry entry = getEntry(variable);
+            if (entry != null) {
+                entry.useCount += count(entry.uses, variableReference, adding);
+                record(variableReference);
+                removeIfEmpty(variable, entry);
+            }
+        }
+
+        @Override
+        public void visit(VariableDeclaration variableDeclaration) {
+            super.visit(variableDeclaration);
+            Entry entry = getEntry(variableDeclaration);
+            if (entry != null) {
+                count(entry.declarations, variableDeclaration, adding);
+                record(variableDeclaration);
+                removeIfEmpty(variableDeclaration, entry);
+            }
+        }
+    }
+}
@@ -7,6 +7,7 @@ public class ExpressionStatement extends Statement {
 
     public ExpressionStatement(Expression expression) {
         this.expression = expression;
+        AstLinks.linkChildren(this);
     }
 
     @Override
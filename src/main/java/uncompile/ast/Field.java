@@ -28,6 +28,7 @@ public class Field extends AstNode implements FieldDescription {
         this.isVolatile = isVolatile;
         this.isTransient = isTransient;
         this.isSynthetic = isSynthetic;
+        AstLinks.linkChildren(this);
     }
 
     @Override
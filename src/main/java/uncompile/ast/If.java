@@ -11,6 +11,7 @@ public class If extends Statement {
         this.condition = condition;
         this.ifBlock = ifBlock;
         this.elseBlock = elseBlock;
+        AstLinks.linkChildren(this);
     }
 
     @Override
@@ -11,6 +11,7 @@ public class InstanceFieldReference extends Expression {
     public InstanceFieldReference(Expression target, FieldDescription field) {
         this.target = target;
         this.field = field;
+        AstLinks.linkChildren(this);
     }
 
     @Override
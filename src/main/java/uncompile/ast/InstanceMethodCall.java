@@ -16,6 +16,7 @@ public class InstanceMethodCall extends Expression { // TODO: MethodDescription,
     public InstanceMethodCall(Expression target, MethodDescription method) {
         this.target = target;
         this.method = method;
+        AstLinks.linkChildren(this);
     }
 
     @Override
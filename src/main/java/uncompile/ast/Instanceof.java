@@ -11,6 +11,7 @@ public class Instanceof extends Expression {
     public Instanceof(Expression expression, ReferenceTypeNode type) {
         this.expression = expression;
         this.type = type;
+        AstLinks.linkChildren(this);
     }
 
     @Override
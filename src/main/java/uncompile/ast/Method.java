@@ -24,6 +24,7 @@ public class Method extends AstNode implements MethodDescription {
     public List<VariableDeclaration> parameters = new ArrayList<>();
     public List<ReferenceTypeNode> exceptions = new ArrayList<>();
     @Nullable public Block body;
+    @Nullable DefUseIndex defUseIndex = null;
 
     public Method(String name, Class owner, AccessLevel accessLevel, boolean isStatic, boolean isFinal, boolean isAbstract, boolean isSynchronized, boolean isNative, boolean isSynthetic, boolean isBridge, TypeNode returnType, @Nullable Block body) {
         this.name = name;
@@ -38,6 +39,19 @@ public class Method extends AstNode implements MethodDescription {
         this.isBridge = isBridge;
         this.returnType = returnType;
         this.body = body;
+        AstLinks.linkChildren(this);
+    }
+
+    /**
+     * @return the def-use index of the body, which is built the first time this is
+     *         called and kept until the body is changed without updating it (see
+     *         {@link AstLinks#linkChildren})
+     */
+    public DefUseIndex getDefUseIndex() {
+        if (defUseIndex == null) {
+            defUseIndex = DefUseIndex.build(body);
+        }
+        return defUseIndex;
     }
 
     public boolean isClassInitializer() {
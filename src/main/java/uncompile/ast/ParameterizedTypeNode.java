@@ -0,0 +1,55 @@
+package uncompile.ast;
+
+import uncompile.metadata.ParameterizedType;
+import uncompile.metadata.Type;
+import uncompile.util.IndentingPrintWriter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ParameterizedTypeNode extends ReferenceTypeNode {
+    public ClassReference rawType;
+    public List<TypeNode> typeArguments = new ArrayList<>();
+
+    public ParameterizedTypeNode(ClassReference rawType) {
+        this.rawType = rawType;
+        AstLinks.linkChildren(this);
+    }
+
+    @Override
+    public void accept(AstVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public void append(IndentingPrintWriter w) {
+        w.append(rawType);
+
+        // Inner classes of parameterized classes may have no type arguments themselves
+        if (!typeArguments.isEmpty()) {
+            w.append("<");
+
+            boolean first = true;
+            for (TypeNode typeArgument : typeArguments) {
+                if (!first) {
+                    w.append(", ");
+                }
+                first = false;
+
+                w.append(typeArgument);
+            }
+
+            w.append(">");
+        }
+    }
+
+    @Override
+    public ParameterizedType toType() {
+        List<Type> typeArgumentTypes = new ArrayList<>();
+        for (TypeNode typeArgument : typeArguments) {
+            typeArgumentTypes.add(typeArgument.toType());
+        }
+
+        return new ParameterizedType(rawType.toType(), null, typeArgumentTypes);
+    }
+}
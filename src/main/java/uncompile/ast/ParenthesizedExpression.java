@@ -8,6 +8,7 @@ public class ParenthesizedExpression extends Expression {
 
     public ParenthesizedExpression(Expression expression) {
         this.expression = expression;
+        AstLinks.linkChildren(this);
     }
 
     @Override
@@ -1,203 +1,263 @@
 package uncompile.ast;
 
+import javax.annotation.Nullable;
 import java.util.*;
 
+/**
+ * A visitor that can replace or remove the node it's visiting. Children that can
+ * be replaced are visited through a cursor over the field, array element or list
+ * element they're in, and {@link #replace} and {@link #remove} write to that slot
+ * as soon as the node has been visited, and the replacement takes over the links of
+ * the node it replaces (see {@link AstLinks}). Nothing is copied, so a pass only
+ * allocates the nodes it creates.
+ * <p>
+ * Nodes that aren't in a slot (a block, or any node visited directly through
+ * {@link #visit(AstNode)}) can't be replaced.
+ */
 public class ReplacingAstVisitor extends AstVisitor {
-    private final Map<AstNode, Optional<AstNode>> substitutions = new HashMap<>();
-    private Deque<AstNode> current = new ArrayDeque<>();
+    @Nullable private AstNode replacement = null;
+    private final Deque<Statement> statements = new ArrayDeque<>();
+    @Nullable private final DefUseIndex index;
     private boolean changed = false;
 
+    public ReplacingAstVisitor() {
+        this(null);
+    }
+
+    /**
+     * @param index the index to update with the replacements, if any
+     */
+    public ReplacingAstVisitor(@Nullable DefUseIndex index) {
+        this.index = index;
+    }
+
     @Override
     public void visit(AstNode node) {
-        current.push(node);
-        super.visit(node);
-        current.pop();
+        visitNode(node);
     }
 
     protected void replace(AstNode with) {
-        substitutions.put(current.getFirst(), Optional.of(with));
+        replacement = with;
     }
 
     protected void remove() {
-        substitutions.put(current.getFirst(), Optional.empty());
+        replacement = null;
     }
 
     public boolean changed() {
         return changed;
     }
 
-    private <T extends AstNode> T substitute(T expression) {
-        AstNode substitution = substitutions.getOrDefault(expression, Optional.ofNullable(expression)).orElse(null);
-        if (substitution != expression) {
+    /**
+     * Visits a node and returns what the slot it's in should contain afterwards.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends AstNode> T visitSlot(T node) {
+        if (node == null) {
+            return null;
+        }
+
+        AstNode result = visitNode(node);
+        if (result != node) {
             changed = true;
+            if (index != null) {
+                index.remove(node);
+            }
+            AstLinks.move(node, result);
+            if (index != null && result != null) {
+                index.add(result, statements.peek());
+            }
+        }
+        return (T) result;
+    }
+
+    private AstNode visitNode(AstNode node) {
+        AstNode outer = replacement;
+        replacement = node;
+        if (node instanceof Statement) {
+            statements.push((Statement) node);
+            node.accept(this);
+            statements.pop();
+        } else {
+            node.accept(this);
         }
-        return (T) substitution;
+        AstNode result = replacement;
+        replacement = outer;
+        return result;
     }
 
-    private <T extends AstNode> void substitute(List<T> list) {
-        List<T> old = new ArrayList<>(list);
-        list.clear();
-        for (T t : old) {
-            t = substitute(t);
-            if (t != null) {
-                list.add(t);
+    private <T extends AstNode> void visitSlots(AstNode parent, List<T> list) {
+        int size = 0;
+        for (int i = 0; i < list.size(); i++) {
+            T node = visitSlot(list.get(i));
+            if (node != null) {
+                AstLinks.setIndex(parent, node, size);
+                list.set(size++, node);
             }
         }
+
+        while (list.size() > size) {
+            list.remove(list.size() - 1);
+        }
+    }
+
+    private <T extends AstNode> void visitSlots(T[] array) {
+        for (int i = 0; i < array.length; i++) {
+            array[i] = visitSlot(array[i]);
+        }
     }
 
     @Override
     public void visit(ArrayConstructor arrayConstructor) {
-        super.visit(arrayConstructor);
-        for (int i = 0; i < arrayConstructor.dimensions.length; i++) {
-            arrayConstructor.dimensions[i] = substitute(arrayConstructor.dimensions[i]);
-        }
+        visit(arrayConstructor.componentType);
+        visitSlots(arrayConstructor.dimensions);
     }
 
     @Override
     public void visit(ArrayElement arrayElement) {
-        super.visit(arrayElement);
-        arrayElement.array = substitute(arrayElement.array);
-        arrayElement.index = substitute(arrayElement.index);
+        arrayElement.array = visitSlot(arrayElement.array);
+        arrayElement.index = visitSlot(arrayElement.index);
     }
 
     @Override
     public void visit(Assignment assignment) {
-        super.visit(assignment);
-        assignment.left = substitute(assignment.left);
-        assignment.right = substitute(assignment.right);
+        assignment.left = visitSlot(assignment.left);
+        assignment.right = visitSlot(assignment.right);
     }
 
     @Override
     public void visit(BinaryOperation binaryOperation) {
-        super.visit(binaryOperation);
-        binaryOperation.left = substitute(binaryOperation.left);
-        binaryOperation.right = substitute(binaryOperation.right);
+        binaryOperation.left = visitSlot(binaryOperation.left);
+        binaryOperation.right = visitSlot(binaryOperation.right);
     }
 
     @Override
     public void visit(Block block) {
-        super.visit(block);
-
-        List<Statement> newStatements = new ArrayList<>();
-        for (Statement statement : block) {
-            if (statement instanceof ExpressionStatement && ((ExpressionStatement) statement).expression == null) {
+        statements.push(block);
+        int size = 0;
+        for (int i = 0; i < block.statements.size(); i++) {
+            Statement statement = visitSlot(block.statements.get(i));
+            if (statement == null || statement instanceof ExpressionStatement && ((ExpressionStatement) statement).expression == null) {
                 continue;
             }
 
-            newStatements.add(statement);
+            AstLinks.setIndex(block, statement, size);
+            block.statements.set(size++, statement);
         }
 
-        block.statements = newStatements;
-        substitute(block.statements);
+        while (block.statements.size() > size) {
+            block.statements.remove(block.statements.size() - 1);
+        }
+        statements.pop();
     }
 
     @Override
     public void visit(ExpressionStatement expressionStatement) {
-        super.visit(expressionStatement);
-        expressionStatement.expression = substitute(expressionStatement.expression);
+        expressionStatement.expression = visitSlot(expressionStatement.expression);
     }
 
     @Override
     public void visit(Cast cast) {
-        super.visit(cast);
-        cast.expression = substitute(cast.expression);
+        visit(cast.type);
+        cast.expression = visitSlot(cast.expression);
     }
 
     @Override
     public void visit(ArrayLength arrayLength) {
-        super.visit(arrayLength);
-        arrayLength.array = substitute(arrayLength.array);
+        arrayLength.array = visitSlot(arrayLength.array);
     }
 
     @Override
     public void visit(ClassCreationExpression constructorCall) {
-        super.visit(constructorCall);
-        substitute(constructorCall.arguments);
+        visit(constructorCall.type);
+        visitSlots(constructorCall, constructorCall.arguments);
     }
 
     @Override
     public void visit(Field field) {
-        super.visit(field);
-        field.initialValue = substitute(field.initialValue);
+        visit(field.type);
+        field.initialValue = visitSlot(field.initialValue);
     }
 
     @Override
     public void visit(If ifExpr) {
-        super.visit(ifExpr);
-        ifExpr.condition = substitute(ifExpr.condition);
+        ifExpr.condition = visitSlot(ifExpr.condition);
+        visit(ifExpr.ifBlock);
+        if (ifExpr.elseBlock != null) {
+            visit(ifExpr.elseBlock);
+        }
     }
 
     @Override
     public void visit(InstanceFieldReference instanceFieldReference) {
-        super.visit(instanceFieldReference);
-        instanceFieldReference.target = substitute(instanceFieldReference.target);
+        instanceFieldReference.target = visitSlot(instanceFieldReference.target);
     }
 
     @Override
     public void visit(InstanceMethodCall instanceMethodCall) {
-        super.visit(instanceMethodCall);
-        instanceMethodCall.target = substitute(instanceMethodCall.target);
-        substitute(instanceMethodCall.arguments);
+        instanceMethodCall.target = visitSlot(instanceMethodCall.target);
+        visit(instanceMethodCall.typeArguments);
+        visitSlots(instanceMethodCall, instanceMethodCall.arguments);
     }
 
     @Override
     public void visit(ParenthesizedExpression par) {
-        super.visit(par);
-        par.expression = substitute(par.expression);
+        par.expression = visitSlot(par.expression);
     }
 
     @Override
     public void visit(Return returnExpr) {
-        super.visit(returnExpr);
-        if (returnExpr.value != null) {
-            returnExpr.value = substitute(returnExpr.value);
-        }
+        returnExpr.value = visitSlot(returnExpr.value);
     }
 
     @Override
     public void visit(StaticMethodCall staticMethodCall) {
-        super.visit(staticMethodCall);
-        substitute(staticMethodCall.arguments);
+        visit(staticMethodCall.owner);
+        visit(staticMethodCall.typeArguments);
+        visitSlots(staticMethodCall, staticMethodCall.arguments);
     }
 
     @Override
     public void visit(SuperConstructorCall superConstructorCall) {
-        super.visit(superConstructorCall);
-        substitute(superConstructorCall.arguments);
+        visit(superConstructorCall.owner);
+        visitSlots(superConstructorCall, superConstructorCall.arguments);
     }
 
     @Override
     public void visit(Switch switchExpr) {
-        super.visit(switchExpr);
-
-        switchExpr.expression = substitute(switchExpr.expression);
+        switchExpr.expression = visitSlot(switchExpr.expression);
+        visitSlots(switchExpr.cases);
 
-        for (int i = 0; i < switchExpr.cases.length; i++) {
-            switchExpr.cases[i] = substitute(switchExpr.cases[i]);
+        for (Block branch : switchExpr.branches) {
+            visit(branch);
         }
     }
 
     @Override
     public void visit(ThisConstructorCall thisConstructorCall) {
-        super.visit(thisConstructorCall);
-        substitute(thisConstructorCall.arguments);
+        visit(thisConstructorCall.owner);
+        visitSlots(thisConstructorCall, thisConstructorCall.arguments);
     }
 
     @Override
     public void visit(Throw throwExpr) {
-        super.visit(throwExpr);
-        throwExpr.exception = substitute(throwExpr.exception);
+        throwExpr.exception = visitSlot(throwExpr.exception);
     }
 
     @Override
     public void visit(UnaryOperation unaryOperation) {
-        super.visit(unaryOperation);
-        unaryOperation.expression = substitute(unaryOperation.expression);
+        unaryOperation.expression = visitSlot(unaryOperation.expression);
+    }
+
+    @Override
+    public void visit(Instanceof instanceofExpression) {
+        instanceofExpression.expression = visitSlot(instanceofExpression.expression);
+        visit(instanceofExpression.type);
     }
 
     @Override
     public void visit(WhileLoop whileLoop) {
-        super.visit(whileLoop);
-        whileLoop.condition = substitute(whileLoop.condition);
+        whileLoop.condition = visitSlot(whileLoop.condition);
+        visit(whileLoop.body);
     }
 }
@@ -9,6 +9,7 @@ public class Return extends Statement {
 
     public Return(@Nullable Expression value) {
         this.value = value;
+        AstLinks.linkChildren(this);
     }
 
     @Override
@@ -11,6 +11,7 @@ public class StaticFieldReference extends Expression {
     public StaticFieldReference(ClassReference owner, FieldDescription field) {
         this.owner = owner;
         this.field = field;
+        AstLinks.linkChildren(this);
     }
 
     @Override
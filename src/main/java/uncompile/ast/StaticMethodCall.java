@@ -16,6 +16,7 @@ public class StaticMethodCall extends Expression {
     public StaticMethodCall(ClassReference owner, MethodDescription method) {
         this.owner = owner;
         this.method = method;
+        AstLinks.linkChildren(this);
     }
 
     @Override
@@ -1,16 +1,35 @@
 package uncompile.ast;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import javax.annotation.Nullable;
+import java.util.*;
 
 public class SubstitutingAstVisitor extends AstVisitor { // TODO: make this an extensible visitor
     private final Map<? extends Expression, Optional<Expression>> substitutions;
+    @Nullable private final DefUseIndex index;
+    private final Deque<Statement> statements = new ArrayDeque<>();
     private boolean changed = false;
 
     public SubstitutingAstVisitor(Map<? extends Expression, Optional<Expression>> substitutions) {
+        this(substitutions, null);
+    }
+
+    /**
+     * @param index the index to update with the substitutions, if any
+     */
+    public SubstitutingAstVisitor(Map<? extends Expression, Optional<Expression>> substitutions, @Nullable DefUseIndex index) {
         this.substitutions = substitutions;
+        this.index = index;
+    }
+
+    @Override
+    public void visit(AstNode node) {
+        if (node instanceof Statement) {
+            statements.push((Statement) node);
+            super.visit(node);
+            statements.pop();
+        } else {
+            super.visit(node);
+        }
     }
 
     public boolean changed() {
@@ -18,22 +37,40 @@ public class SubstitutingAstVisitor extends AstVisitor { // TODO: make this an e
     }
 
     private Expression substitute(Expression expression) {
-        Expression substitution = substitutions.getOrDefault(expression, Optional.ofNullable(expression)).orElse(null);
+        Optional<Expression> optional = substitutions.get(expression);
+        if (optional == null) {
+            return expression;
+        }
+
+        Expression substitution = optional.orElse(null);
         if (substitution != expression) {
             changed = true;
+            if (expression != null) {
+                if (index != null) {
+                    index.remove(expression);
+                }
+                AstLinks.move(expression, substitution);
+            }
+            if (index != null && substitution != null) {
+                index.add(substitution, statements.peek());
+            }
         }
         return substitution;
     }
 
-    private void substitute(List<Expression> list) {
-        List<Expression> old = new ArrayList<>(list);
-        list.clear();
-        for (Expression t : old) {
-            t = substitute(t);
+    private void substitute(AstNode parent, List<Expression> list) {
+        int size = 0;
+        for (int i = 0; i < list.size(); i++) {
+            Expression t = substitute(list.get(i));
             if (t != null) {
-                list.add(t);
+                AstLinks.setIndex(parent, t, size);
+                list.set(size++, t);
             }
         }
+
+        while (list.size() > size) {
+            list.remove(list.size() - 1);
+        }
     }
 
     @Override
@@ -67,18 +104,24 @@ public class SubstitutingAstVisitor extends AstVisitor { // TODO: make this an e
 
     @Override
     public void visit(Block block) {
+        statements.push(block);
         super.visit(block);
+        statements.pop();
 
-        List<Statement> newStatements = new ArrayList<>();
-        for (Statement statement : block) {
+        int size = 0;
+        for (int i = 0; i < block.statements.size(); i++) {
+            Statement statement = block.statements.get(i);
             if (statement instanceof ExpressionStatement && ((ExpressionStatement) statement).expression == null) {
                 continue;
             }
 
-            newStatements.add(statement);
+            AstLinks.setIndex(block, statement, size);
+            block.statements.set(size++, statement);
         }
 
-        block.statements = newStatements;
+        while (block.statements.size() > size) {
+            block.statements.remove(block.statements.size() - 1);
+        }
     }
 
     @Override
@@ -100,7 +143,7 @@ public class SubstitutingAstVisitor extends AstVisitor { // TODO: make this an e
 
     @Override
     public void visit(ClassCreationExpression constructorCall) {
-        substitute(constructorCall.arguments);
+        substitute(constructorCall, constructorCall.arguments);
         super.visit(constructorCall);
     }
 
@@ -125,7 +168,7 @@ public class SubstitutingAstVisitor extends AstVisitor { // TODO: make this an e
     @Override
     public void visit(InstanceMethodCall instanceMethodCall) {
         instanceMethodCall.target = substitute(instanceMethodCall.target);
-        substitute(instanceMethodCall.arguments);
+        substitute(instanceMethodCall, instanceMethodCall.arguments);
         super.visit(instanceMethodCall);
     }
 
@@ -145,13 +188,13 @@ public class SubstitutingAstVisitor extends AstVisitor { // TODO: make this an e
 
     @Override
     public void visit(StaticMethodCall staticMethodCall) {
-        substitute(staticMethodCall.arguments);
+        substitute(staticMethodCall, staticMethodCall.arguments);
         super.visit(staticMethodCall);
     }
 
     @Override
     public void visit(SuperConstructorCall superConstructorCall) {
-        substitute(superConstructorCall.arguments);
+        substitute(superConstructorCall, superConstructorCall.arguments);
         super.visit(superConstructorCall);
     }
 
@@ -168,7 +211,7 @@ public class SubstitutingAstVisitor extends AstVisitor { // TODO: make this an e
 
     @Override
     public void visit(ThisConstructorCall thisConstructorCall) {
-        substitute(thisConstructorCall.arguments);
+        substitute(thisConstructorCall, thisConstructorCall.arguments);
         super.visit(thisConstructorCall);
     }
 
@@ -184,6 +227,12 @@ public class SubstitutingAstVisitor extends AstVisitor { // TODO: make this an e
         super.visit(unaryOperation);
     }
 
+    @Override
+    public void visit(Instanceof instanceofExpression) {
+        instanceofExpression.expression = substitute(instanceofExpression.expression);
+        super.visit(instanceofExpression);
+    }
+
     @Override
     public void visit(WhileLoop whileLoop) {
         whileLoop.condition = substitute(whileLoop.condition);
@@ -13,6 +13,7 @@ public class SuperConstructorCall extends Expression {
 
     public SuperConstructorCall(SuperReference owner) {
         this.owner = owner;
+        AstLinks.linkChildren(this);
     }
 
     @Override
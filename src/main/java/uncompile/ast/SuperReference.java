@@ -10,6 +10,7 @@ public class SuperReference extends Expression {
     public SuperReference(ClassReference owner, boolean isQualified) {
         this.owner = owner;
         this.isQualified = isQualified;
+        AstLinks.linkChildren(this);
     }
 
     @Override
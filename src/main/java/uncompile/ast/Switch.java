@@ -11,6 +11,7 @@ public class Switch extends Statement {
         this.expression = expression;
         this.cases = cases;
         this.branches = branches;
+        AstLinks.linkChildren(this);
     }
 
     @Override
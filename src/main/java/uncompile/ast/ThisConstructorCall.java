@@ -13,6 +13,7 @@ public class ThisConstructorCall extends Expression {
 
     public ThisConstructorCall(ThisReference owner) {
         this.owner = owner;
+        AstLinks.linkChildren(this);
     }
 
     @Override
@@ -10,6 +10,7 @@ public class ThisReference extends Expression {
     public ThisReference(ClassReference owner, boolean isQualified) {
         this.owner = owner;
         this.isQualified = isQualified;
+        AstLinks.linkChildren(this);
     }
 
     @Override
@@ -7,6 +7,7 @@ public class Throw extends Statement {
 
     public Throw(Expression exception) {
         this.exception = exception;
+        AstLinks.linkChildren(this);
     }
 
     @Override
@@ -14,6 +14,7 @@ public class TryCatch extends Statement {
         public Catch(VariableDeclaration exceptionVariable, Block block) {
             this.exceptionVariable = exceptionVariable;
             this.block = block;
+            AstLinks.linkChildren(this);
         }
 
         @Override
@@ -47,6 +48,7 @@ public class TryCatch extends Statement {
 
     public TryCatch(Block tryBlock) {
         this.tryBlock = tryBlock;
+        AstLinks.linkChildren(this);
     }
 
     @Override
@@ -1,9 +1,6 @@
 package uncompile.ast;
 
-import uncompile.metadata.ArrayType;
-import uncompile.metadata.ClassType;
-import uncompile.metadata.PrimitiveType;
-import uncompile.metadata.Type;
+import uncompile.metadata.*;
 
 public abstract class TypeNode extends AstNode {
     public static TypeNode fromType(Type type) {
@@ -19,6 +16,27 @@ public abstract class TypeNode extends AstNode {
             return new PrimitiveTypeNode((PrimitiveType) type);
         }
 
+        if (type instanceof ParameterizedType) {
+            ParameterizedTypeNode node = new ParameterizedTypeNode(new ClassReference(((ParameterizedType) type).rawType));
+            for (Type typeArgument : ((ParameterizedType) type).typeArguments) {
+                node.typeArguments.add(fromType(typeArgument));
+            }
+            return node;
+        }
+
+        if (type instanceof TypeParameterType) {
+            TypeParameterType typeParameter = (TypeParameterType) type;
+            TypeParameter node = new TypeParameter(typeParameter.name, (ReferenceTypeNode) fromType(typeParameter.extendsBound), null);
+            for (ReferenceType additionalBound : typeParameter.additionalBounds) {
+                node.additionalBounds.add((ReferenceTypeNode) fromType(additionalBound));
+            }
+            return node;
+        }
+
+        if (type instanceof WildcardType) {
+            return new Wildcard(fromType(((WildcardType) type).extendsBound), fromType(((WildcardType) type).superBound));
+        }
+
         return null;
     }
 
@@ -1,17 +1,23 @@
 package uncompile.ast;
 
+import uncompile.metadata.ReferenceType;
 import uncompile.metadata.TypeParameterType;
 import uncompile.util.IndentingPrintWriter;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class TypeParameter extends ReferenceTypeNode {
     public String name;
-    public ReferenceTypeNode extendsBound;
+    public ReferenceTypeNode extendsBound; // null if unbounded or if this is a reference to a type parameter
+    public List<ReferenceTypeNode> additionalBounds = new ArrayList<>();
     public AstNode declarationScope;
 
     public TypeParameter(String name, ReferenceTypeNode extendsBound, AstNode declarationScope) {
         this.name = name;
         this.extendsBound = extendsBound;
         this.declarationScope = declarationScope;
+        AstLinks.linkChildren(this);
     }
 
     @Override
@@ -27,10 +33,20 @@ public class TypeParameter extends ReferenceTypeNode {
             w.append(" extends ");
             extendsBound.append(w);
         }
+
+        for (ReferenceTypeNode additionalBound : additionalBounds) {
+            w.append(" & ");
+            additionalBound.append(w);
+        }
     }
 
     @Override
     public TypeParameterType toType() {
-        return new TypeParameterType(name, extendsBound.toType(), declarationScope);
+        List<ReferenceType> additionalBoundTypes = new ArrayList<>();
+        for (ReferenceTypeNode additionalBound : additionalBounds) {
+            additionalBoundTypes.add(additionalBound.toType());
+        }
+
+        return new TypeParameterType(name, extendsBound != null ? extendsBound.toType() : null, additionalBoundTypes, declarationScope);
     }
 }
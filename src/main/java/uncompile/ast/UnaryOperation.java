@@ -10,6 +10,7 @@ public class UnaryOperation extends Expression {
     public UnaryOperation(UnaryOperator operator, Expression expression) {
         this.operator = operator;
         this.expression = expression;
+        AstLinks.linkChildren(this);
     }
 
     @Override
@@ -19,6 +19,7 @@ public class VariableDeclaration extends VariableReference { // TODO: extend a c
         this.isFinal = isFinal;
         this.isSynthetic = isSynthetic;
         this.isParameter = isParameter;
+        AstLinks.linkChildren(this);
     }
 
     @Override
@@ -10,6 +10,7 @@ public class WhileLoop extends Statement {
     public WhileLoop(Expression condition, Block body) {
         this.condition = condition;
         this.body = body;
+        AstLinks.linkChildren(this);
     }
 
     @Override
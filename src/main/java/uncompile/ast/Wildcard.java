@@ -1,5 +1,6 @@
 package uncompile.ast;
 
+import uncompile.metadata.ReferenceType;
 import uncompile.metadata.Type;
 import uncompile.metadata.WildcardType;
 import uncompile.util.IndentingPrintWriter;
@@ -13,6 +14,7 @@ public class Wildcard extends TypeNode {
     public Wildcard(@Nullable TypeNode extendsBound, @Nullable TypeNode superBound) {
         this.extendsBound = extendsBound;
         this.superBound = superBound;
+        AstLinks.linkChildren(this);
     }
 
 
@@ -38,6 +40,9 @@ public class Wildcard extends TypeNode {
 
     @Override
     public Type toType() {
-        return new WildcardType(extendsBound, superBound);
+        return new WildcardType(
+                extendsBound != null ? (ReferenceType) extendsBound.toType() : null,
+                superBound != null ? (ReferenceType) superBound.toType() : null
+        );
     }
 }
@@ -7,7 +7,6 @@ import uncompile.controlflow.ControlFlowNode;
 import uncompile.controlflow.Jump;
 import uncompile.metadata.Type;
 import uncompile.metadata.*;
-import uncompile.util.DescriptorReader;
 
 import java.lang.invoke.MethodHandle;
 import java.util.*;
@@ -146,14 +145,13 @@ public class BlockBuilder extends MethodVisitor {
             return new ThisReference(new ClassReference(method.owner.getClassType()), false);
         }
 
-        VariableDeclaration parameter = indexToParameter.get(var);
-        if (parameter != null) {
-            return new VariableReference(parameter);
-        }
-
         // TODO: find in LVT
 
         VariableDeclaration local = locals[var];
+        if (local == null) {
+            local = indexToParameter.get(var);
+        }
+
         if (local == null) {
             throw new DecompilationNotPossibleException("local variable " + var + " used before declaration");
         }
@@ -161,6 +159,24 @@ public class BlockBuilder extends MethodVisitor {
         return new VariableReference(local);
     }
 
+    /**
+     * Stores a value into a new variable for a local slot. Expressions already on the
+     * stack keep referencing the slot's previous variable, so they still see the old value.
+     */
+    private void store(int var, Type type, Expression value) {
+        VariableDeclaration newVariable = new VariableDeclaration(
+                TypeNode.fromType(type),
+                "var" + variableCounter.get(),
+                false,
+                false,
+                false
+        );
+        variables.add(newVariable);
+        locals[var] = newVariable;
+
+        result.add(new Assignment(new VariableReference(newVariable), value));
+    }
+
     private VariableDeclaration createTemporaryVariable(Type type) {
         VariableDeclaration variable = new VariableDeclaration(
                 TypeNode.fromType(type),
@@ -680,19 +696,7 @@ public class BlockBuilder extends MethodVisitor {
                 if (opcode == Opcodes.DSTORE) type = PrimitiveType.DOUBLE;
                 if (opcode == Opcodes.ASTORE) type = value.getType();
 
-                VariableDeclaration newVariable = new VariableDeclaration(
-                        TypeNode.fromType(type),
-                        "var" + variableCounter.get(),
-                        false,
-                        false,
-                        false
-                );
-                variables.add(newVariable);
-                locals[var] = newVariable;
-
-                VariableReference reference = new VariableReference(newVariable);
-
-                result.add(new Assignment(reference, value));
+                store(var, type, value);
                 break;
             }
 
@@ -708,7 +712,7 @@ public class BlockBuilder extends MethodVisitor {
 
     @Override
     public void visitTypeInsn(int opcode, String type) {
-        ClassType classType = new ClassType(type.replace('/', '.'));
+        ClassType classType = descriptionProvider.getTypes().getClassType(type);
 
         switch (opcode) {
             case Opcodes.NEW: {
@@ -742,8 +746,8 @@ public class BlockBuilder extends MethodVisitor {
 
     @Override
     public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
-        ClassType ownerType = new ClassType(owner.replace('/', '.'));
-        Type fieldType = new DescriptorReader(descriptor, 0).read();
+        ClassType ownerType = descriptionProvider.getTypes().getClassType(owner);
+        Type fieldType = descriptionProvider.getTypes().getType(descriptor);
         boolean isStatic = opcode == Opcodes.GETSTATIC || opcode == Opcodes.PUTSTATIC;
         FieldDescription field = descriptionProvider.getFieldDescription(owner, name, descriptor, isStatic);
 
@@ -787,16 +791,12 @@ public class BlockBuilder extends MethodVisitor {
 
     @Override
     public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
-        ClassType currentClassType = new ClassType(className.replace('/', '.'));
-        ClassType ownerType = new ClassType(owner.replace('/', '.'));
+        ClassType currentClassType = descriptionProvider.getTypes().getClassType(className);
+        ClassType ownerType = descriptionProvider.getTypes().getClassType(owner);
 
-        DescriptorReader r = new DescriptorReader(descriptor, 1);
-        List<Type> parameterTypes = new ArrayList<>();
-        while (descriptor.charAt(r.pos) != ')') {
-            parameterTypes.add(r.read());
-        }
-        r.pos++;
-        Type returnType = r.read();
+        MethodSignature methodSignature = descriptionProvider.getTypes().getMethodSignature(descriptor);
+        List<Type> parameterTypes = methodSignature.parameterTypes;
+        Type returnType = methodSignature.returnType;
 
         boolean isStatic = opcode == Opcodes.INVOKESTATIC;
         MethodDescription method = descriptionProvider.getMethodDescription(owner, name, descriptor, isStatic);
@@ -1013,7 +1013,7 @@ public class BlockBuilder extends MethodVisitor {
             org.objectweb.asm.Type type = (org.objectweb.asm.Type) value;
             if (type.getSort() == org.objectweb.asm.Type.OBJECT ||
                 type.getSort() == org.objectweb.asm.Type.ARRAY) {
-                stack.push(new ClassLiteral(TypeNode.fromType(new DescriptorReader(type.getDescriptor(), 0).read())));
+                stack.push(new ClassLiteral(TypeNode.fromType(descriptionProvider.getTypes().getType(type.getDescriptor()))));
             } else if (type.getSort() == org.objectweb.asm.Type.METHOD) {
                 throw new UnsupportedOperationException("not yet implemented");
             } else {
@@ -1030,7 +1030,7 @@ public class BlockBuilder extends MethodVisitor {
 
     @Override
     public void visitIincInsn(int var, int increment) {
-        result.add(new Assignment(getVariableReference(var), new BinaryOperation(BinaryOperator.ADD, getVariableReference(var), new IntLiteral(increment))));
+        store(var, PrimitiveType.INT, new BinaryOperation(BinaryOperator.ADD, getVariableReference(var), new IntLiteral(increment)));
     }
 
     @Override
@@ -1046,8 +1046,8 @@ public class BlockBuilder extends MethodVisitor {
     @Override
     public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
         Expression expression = stack.pop();
-        Expression[] cases = new Expression[labels.length + 1];
-        ControlFlowNode[] caseNodes = new ControlFlowNode[labels.length + 1];
+        Expression[] cases = new Expression[labels.length];
+        ControlFlowNode[] caseNodes = new ControlFlowNode[labels.length];
 
         for (int i = 0; i < labels.length; i++) {
             caseNodes[i] = jumpTargetFinder.apply(labels[i]);
@@ -1061,7 +1061,7 @@ public class BlockBuilder extends MethodVisitor {
 
     @Override
     public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
-        Type componentType = new DescriptorReader(descriptor, 0).read();
+        Type componentType = descriptionProvider.getTypes().getType(descriptor);
         for (int i = 0; i < numDimensions; i++) {
             componentType = ((ArrayType) componentType).getComponentType();
         }
@@ -0,0 +1,129 @@
+package uncompile.astbuilder;
+
+import uncompile.ClassProvider;
+import uncompile.metadata.ClassDescription;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves descriptions of referenced classes by reading their class files on
+ * demand. Only the class header and member declarations are read, so library
+ * classes are cheap to resolve.
+ * <p>
+ * If indexing is enabled, classes with an up-to-date entry in the given
+ * {@link MetadataIndex} are taken from the index instead, and classes that had
+ * to be read from their class file are remembered so that an updated index can
+ * be written with {@link #writeIndex}.
+ * <p>
+ * Classes whose class files can't be read (for example because they're newer
+ * than the ASM version supports) are left unresolved, as if they were missing.
+ */
+public class BytecodeDescriptionProvider extends DescriptionProvider {
+    private final ClassProvider classProvider;
+    private final boolean indexing;
+    private final MetadataIndex index;
+    private final Map<String, ClassDescriptionAndHash> unindexedClasses = new ConcurrentHashMap<>();
+
+    public BytecodeDescriptionProvider(ClassProvider classProvider) {
+        this.classProvider = classProvider;
+        indexing = false;
+        index = null;
+    }
+
+    /**
+     * Creates a description provider with indexing enabled.
+     *
+     * @param index the existing index, or null to build a new one
+     */
+    public BytecodeDescriptionProvider(ClassProvider classProvider, MetadataIndex index) {
+        this.classProvider = classProvider;
+        indexing = true;
+        this.index = index;
+    }
+
+    @Override
+    protected ClassDescription createClassDescription(String name) {
+        // Array classes have no class file
+        if (name.startsWith("[")) {
+            return null;
+        }
+
+        if (!indexing) {
+            byte[] bytes = classProvider.getClass(name);
+            return bytes == null ? null : read(bytes);
+        }
+
+        long hash = classProvider.getClassHash(name);
+        if (hash == -1) {
+            return null;
+        }
+
+        ResolvedClassDescription classDescription = index != null ? index.getClassDescription(name, hash, getTypes()) : null;
+        if (classDescription != null) {
+            return classDescription;
+        }
+
+        // Missing or stale
+        byte[] bytes = classProvider.getClass(name);
+        if (bytes == null) {
+            return null;
+        }
+
+        classDescription = read(bytes);
+        if (classDescription != null) {
+            unindexedClasses.put(name, new ClassDescriptionAndHash(classDescription, hash));
+        }
+        return classDescription;
+    }
+
+    /**
+     * @return the description read from a class file, or null if ASM can't read it,
+     *         in which case the class is left unresolved
+     */
+    private ResolvedClassDescription read(byte[] bytes) {
+        // Class files newer than the ASM version (such as those of the running JDK)
+        // are rejected, and corrupt ones fail anywhere
+        try {
+            return ResolvedClassDescription.read(bytes, getTypes());
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the number of classes that were resolved without the index
+     */
+    public int getUnindexedClassCount() {
+        return unindexedClasses.size();
+    }
+
+    /**
+     * Writes an index containing the entries of the current index, with the
+     * classes that were missing or stale in it added or replaced.
+     */
+    public void writeIndex(Path file) throws IOException {
+        MetadataIndexWriter writer = new MetadataIndexWriter();
+        for (ClassDescriptionAndHash unindexedClass : unindexedClasses.values()) {
+            writer.add(unindexedClass.classDescription, unindexedClass.hash);
+        }
+
+        if (index != null) {
+            writer.addAll(index);
+        }
+
+        writer.write(file);
+    }
+
+    private static class ClassDescriptionAndHash {
+        private final ResolvedClassDescription classDescription;
+        private final long hash;
+
+        private ClassDescriptionAndHash(ResolvedClassDescription classDescription, long hash) {
+            this.classDescription = classDescription;
+            this.hash = hash;
+        }
+    }
+}
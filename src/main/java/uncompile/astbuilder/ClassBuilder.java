@@ -4,11 +4,10 @@ import org.objectweb.asm.*;
 import uncompile.ClassProvider;
 import uncompile.ast.Class;
 import uncompile.ast.*;
-import uncompile.metadata.AccessLevel;
-import uncompile.metadata.ClassKind;
-import uncompile.metadata.ClassType;
+import uncompile.metadata.*;
 import uncompile.metadata.Type;
-import uncompile.util.DescriptorReader;
+
+import java.util.List;
 
 public class ClassBuilder extends ClassVisitor {
     private final ClassProvider classProvider;
@@ -43,6 +42,8 @@ public class ClassBuilder extends ClassVisitor {
             simpleClassName = name.substring(packageSeparator + 1).replace('/', '.');
         }
 
+        ClassSignature classSignature = parseClassSignature(signature);
+
         clazz = new Class(
                 packageName,
                 simpleClassName,
@@ -52,11 +53,20 @@ public class ClassBuilder extends ClassVisitor {
                 (access & Opcodes.ACC_FINAL) != 0,
                 (access & Opcodes.ACC_ABSTRACT) != 0,
                 (access & Opcodes.ACC_SYNTHETIC) != 0,
-                new ClassReference(new ClassType(superName.replace('/', '.')))
+                classSignature != null ?
+                        (ReferenceTypeNode) TypeNode.fromType(classSignature.superClass) :
+                        new ClassReference(descriptionProvider.getTypes().getClassType(superName))
         );
 
-        for (String interfac : interfaces) {
-            clazz.interfaces.add(new ClassReference(new ClassType(interfac.replace('/', '.'))));
+        if (classSignature != null) {
+            addTypeParameters(clazz.typeParameters, classSignature.typeParameters, clazz);
+            for (ReferenceType interfaceType : classSignature.interfaces) {
+                clazz.interfaces.add((ReferenceTypeNode) TypeNode.fromType(interfaceType));
+            }
+        } else {
+            for (String interfac : interfaces) {
+                clazz.interfaces.add(new ClassReference(descriptionProvider.getTypes().getClassType(interfac)));
+            }
         }
 
         descriptionProvider.addClassDescription(name, clazz);
@@ -95,7 +105,7 @@ public class ClassBuilder extends ClassVisitor {
         Field field = new Field(
                 name,
                 clazz,
-                TypeNode.fromType(new DescriptorReader(descriptor, 0).read()),
+                TypeNode.fromType(parseFieldSignature(signature, descriptor)),
                 getAccessLevel(access),
                 (access & Opcodes.ACC_STATIC) != 0,
                 (access & Opcodes.ACC_FINAL) != 0,
@@ -128,18 +138,12 @@ public class ClassBuilder extends ClassVisitor {
                 null
         );
 
-        String correctSignature = /*signature != null ? signature :*/ descriptor; // TODO: generics
-        DescriptorReader r = new DescriptorReader(correctSignature, 0);
-
-        if (correctSignature.charAt(r.pos++) != '(') {
-            throw new IllegalStateException("Bad method signature: " + correctSignature);
-        }
+        MethodSignature methodSignature = parseMethodSignature(signature, descriptor);
+        addTypeParameters(method.typeParameters, methodSignature.typeParameters, method);
 
         // Parameters
         int index = 0;
-
-        while (correctSignature.charAt(r.pos) != ')') {
-            Type type = r.read();
+        for (Type type : methodSignature.parameterTypes) {
             method.parameters.add(new VariableDeclaration(
                     TypeNode.fromType(type),
                     "par" + index,
@@ -150,12 +154,15 @@ public class ClassBuilder extends ClassVisitor {
 
             index++;
         }
-        r.pos++;
-        method.returnType = TypeNode.fromType(r.read());
+        method.returnType = TypeNode.fromType(methodSignature.returnType);
 
-        if (exceptions != null) {
+        if (!methodSignature.exceptionTypes.isEmpty()) {
+            for (ReferenceType exceptionType : methodSignature.exceptionTypes) {
+                method.exceptions.add((ReferenceTypeNode) TypeNode.fromType(exceptionType));
+            }
+        } else if (exceptions != null) {
             for (String exception : exceptions) {
-                method.exceptions.add(new ClassReference(new ClassType(exception.replace('/', '.'))));
+                method.exceptions.add(new ClassReference(descriptionProvider.getTypes().getClassType(exception)));
             }
         }
 
@@ -166,7 +173,71 @@ public class ClassBuilder extends ClassVisitor {
         return new MethodBuilder(method, this.name, superName, access, name, descriptor, signature, exceptions, descriptionProvider);
     }
 
-    private ClassKind getClassKind(int access) {
+    @Override
+    public void visitEnd() {
+        // Method bodies and child lists are built by direct assignment, so link the
+        // whole class once it's complete
+        AstLinks.link(clazz);
+    }
+
+    // Signatures aren't checked by the JVM, so obfuscated classes may have
+    // broken ones. The descriptor is used instead in that case.
+
+    private ClassSignature parseClassSignature(String signature) {
+        if (signature == null) {
+            return null;
+        }
+
+        try {
+            return descriptionProvider.getTypes().getClassSignature(signature);
+        } catch (IllegalStateException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private Type parseFieldSignature(String signature, String descriptor) {
+        if (signature != null) {
+            try {
+                return descriptionProvider.getTypes().getType(signature);
+            } catch (IllegalStateException | IndexOutOfBoundsException e) {
+                // Use the descriptor
+            }
+        }
+
+        return descriptionProvider.getTypes().getType(descriptor);
+    }
+
+    private MethodSignature parseMethodSignature(String signature, String descriptor) {
+        MethodSignature erased = descriptionProvider.getTypes().getMethodSignature(descriptor);
+        if (signature == null) {
+            return erased;
+        }
+
+        try {
+            // The signatures of constructors of inner classes and enums leave out the
+            // synthetic parameters, so they can't be matched to the parameters
+            MethodSignature generic = descriptionProvider.getTypes().getMethodSignature(signature);
+            return generic.parameterTypes.size() == erased.parameterTypes.size() ? generic : erased;
+        } catch (IllegalStateException | IndexOutOfBoundsException e) {
+            return erased;
+        }
+    }
+
+    private static void addTypeParameters(List<TypeParameter> typeParameters, List<TypeParameterType> types, AstNode declarationScope) {
+        for (TypeParameterType type : types) {
+            // An Object bound is implicit, unless it's needed for the erasure of an intersection
+            ReferenceTypeNode bound = type.extendsBound != null && (!type.extendsBound.equals(ClassType.OBJECT) || !type.additionalBounds.isEmpty()) ?
+                                      (ReferenceTypeNode) TypeNode.fromType(type.extendsBound) :
+                                      null;
+            TypeParameter typeParameter = new TypeParameter(type.name, bound, declarationScope);
+            for (ReferenceType additionalBound : type.additionalBounds) {
+                typeParameter.additionalBounds.add((ReferenceTypeNode) TypeNode.fromType(additionalBound));
+            }
+            typeParameters.add(typeParameter);
+        }
+    }
+
+    static ClassKind getClassKind(int access) {
         if ((access & Opcodes.ACC_ENUM) != 0) {
             return ClassKind.ENUM;
         }
@@ -182,7 +253,7 @@ public class ClassBuilder extends ClassVisitor {
         return ClassKind.CLASS;
     }
 
-    private AccessLevel getAccessLevel(int access) {
+    static AccessLevel getAccessLevel(int access) {
         if ((access & Opcodes.ACC_PUBLIC) != 0) {
             return AccessLevel.PUBLIC;
         }
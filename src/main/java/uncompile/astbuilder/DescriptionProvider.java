@@ -3,70 +3,216 @@ package uncompile.astbuilder;
 import uncompile.metadata.ClassDescription;
 import uncompile.metadata.FieldDescription;
 import uncompile.metadata.MethodDescription;
+import uncompile.metadata.MethodSignature;
+import uncompile.metadata.ReferenceType;
 import uncompile.metadata.Type;
-import uncompile.util.DescriptorReader;
+import uncompile.metadata.TypeUniverse;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Thread-safe: a single description provider may be shared by classes being
+ * decompiled in parallel. Lookups of descriptions that already exist don't lock
+ * or allocate.
+ */
 public abstract class DescriptionProvider {
-    private Map<String, ClassDescription> classes = new HashMap<>();
-    private Map<String, MethodDescription> methods = new HashMap<>();
-    private Map<String, FieldDescription> fields = new HashMap<>();
+    private final Map<String, ClassDescription> classes = new ConcurrentHashMap<>();
+    private final Map<MemberKey, MethodDescription> methods = new ConcurrentHashMap<>();
+    private final Map<MemberKey, FieldDescription> fields = new ConcurrentHashMap<>();
+    private final Map<String, String> strings = new ConcurrentHashMap<>();
+    private final TypeUniverse types = new TypeUniverse();
+
+    /**
+     * @return the universe all types of the descriptions of this provider are created in
+     */
+    public TypeUniverse getTypes() {
+        return types;
+    }
 
     public void addClassDescription(String name, ClassDescription description) {
         classes.put(name, description);
     }
 
     public void addMethodDescription(String owner, String name, String descriptor, MethodDescription description) {
-        methods.put(owner + ":" + name + descriptor, description);
+        methods.put(createKey(owner, name, descriptor), description);
     }
 
     public void addFieldDescription(String owner, String name, String descriptor, FieldDescription fieldDescription) {
-        fields.put(owner + ":" + name + descriptor, fieldDescription);
+        fields.put(createKey(owner, name, descriptor), fieldDescription);
     }
 
     public ClassDescription getClassDescription(String name) {
-        return classes.computeIfAbsent(name, k -> {
-            ClassDescription classDescription = createClassDescription();
-            return classDescription != null ? classDescription : new UnresolvedClassDescription(name.replace('/', '.'));
-        });
+        ClassDescription classDescription = classes.get(name);
+        if (classDescription != null) {
+            return classDescription;
+        }
+
+        // Created outside of the map so that reading a class doesn't block other
+        // threads. If two threads create the same class, the first one wins.
+        classDescription = createClassDescription(name);
+        if (classDescription == null) {
+            classDescription = new UnresolvedClassDescription(name.replace('/', '.'));
+        }
+
+        ClassDescription existing = classes.putIfAbsent(name, classDescription);
+        return existing != null ? existing : classDescription;
     }
 
-    protected abstract ClassDescription createClassDescription();
+    /**
+     * Creates the description of a class that wasn't added with {@link #addClassDescription}.
+     * May be called more than once for the same class if it's requested by several
+     * threads at once.
+     *
+     * @param name the internal name of the class
+     * @return the description, or null if the class can't be found
+     */
+    protected abstract ClassDescription createClassDescription(String name);
 
     public FieldDescription getFieldDescription(String owner, String name, String descriptor, boolean isStatic) {
-        return fields.computeIfAbsent(owner + ":" + name + descriptor, k -> {
-            DescriptorReader r = new DescriptorReader(descriptor, 0);
-            Type type = r.read();
+        FieldDescription field = fields.get(MemberKey.probe(owner, name, descriptor));
+        if (field != null) {
+            return field;
+        }
 
-            ClassDescription classDescription = getClassDescription(owner);
-            FieldDescription result = new UnresolvedFieldDescription(classDescription, name, type, isStatic);
-            if (classDescription instanceof UnresolvedClassDescription) {
-                ((UnresolvedClassDescription) classDescription).getFields().add(result);
-            }
-            return result;
-        });
+        field = findMember(owner, name, descriptor, fields, ResolvedClassDescription::getField);
+        if (field == null) {
+            field = new UnresolvedFieldDescription(getClassDescription(owner), name, types.getType(descriptor), isStatic);
+        }
+
+        FieldDescription existing = fields.putIfAbsent(createKey(owner, name, descriptor), field);
+        if (existing != null) {
+            return existing;
+        }
+
+        // Only the thread that added the field may add it to its class
+        if (field.getDeclaringClass() instanceof UnresolvedClassDescription) {
+            ((UnresolvedClassDescription) field.getDeclaringClass()).getFields().add(field);
+        }
+        return field;
     }
 
     public MethodDescription getMethodDescription(String owner, String name, String descriptor, boolean isStatic) {
-        return methods.computeIfAbsent(owner + ":" + name + descriptor, k -> {
-            DescriptorReader r = new DescriptorReader(descriptor, 1);
-            List<Type> parameterTypes = new ArrayList<>();
-            while (r.descriptor.charAt(r.pos) != ')') {
-                parameterTypes.add(r.read());
+        MethodDescription method = methods.get(MemberKey.probe(owner, name, descriptor));
+        if (method != null) {
+            return method;
+        }
+
+        method = findMember(owner, name, descriptor, methods, ResolvedClassDescription::getMethod);
+        if (method == null) {
+            MethodSignature methodSignature = types.getMethodSignature(descriptor);
+            method = new UnresolvedMethodDescription(getClassDescription(owner), name, methodSignature.parameterTypes, methodSignature.returnType, isStatic);
+        }
+
+        MethodDescription existing = methods.putIfAbsent(createKey(owner, name, descriptor), method);
+        if (existing != null) {
+            return existing;
+        }
+
+        // Only the thread that added the method may add it to its class
+        if (method.getDeclaringClass() instanceof UnresolvedClassDescription) {
+            ((UnresolvedClassDescription) method.getDeclaringClass()).getMethods().add(method);
+        }
+        return method;
+    }
+
+    /**
+     * Creates a key to store in a map. The strings are interned so that the many
+     * keys with the same owner or descriptor share them.
+     */
+    private MemberKey createKey(String owner, String name, String descriptor) {
+        return new MemberKey(intern(owner), intern(name), intern(descriptor));
+    }
+
+    private String intern(String value) {
+        String existing = strings.get(value);
+        if (existing != null) {
+            return existing;
+        }
+
+        existing = strings.putIfAbsent(value, value);
+        return existing != null ? existing : value;
+    }
+
+    /**
+     * Finds a member declared in a class or inherited from its superclasses or
+     * superinterfaces, searching the superclasses first. The search stops at
+     * unresolved classes since their supertypes are unknown.
+     */
+    private <T> T findMember(String owner, String name, String descriptor, Map<MemberKey, T> added,
+                             MemberLookup<T> lookup) {
+        Set<String> visited = new HashSet<>();
+        Deque<String> interfaces = new ArrayDeque<>();
+
+        for (String className = owner; className != null && visited.add(className); ) {
+            ClassDescription classDescription = getClassDescription(className);
+            T member = findDeclaredMember(className, classDescription, name, descriptor, added, lookup);
+            if (member != null) {
+                return member;
             }
-            r.pos++;
-            Type returnType = r.read();
 
-            ClassDescription classDescription = getClassDescription(owner);
-            MethodDescription result = new UnresolvedMethodDescription(classDescription, name, parameterTypes, returnType, isStatic);
+            // Nothing is known about the supertypes of unresolved classes
             if (classDescription instanceof UnresolvedClassDescription) {
-                ((UnresolvedClassDescription) classDescription).getMethods().add(result);
+                break;
             }
-            return result;
-        });
+
+            interfaces.addAll(getInterfaceNames(classDescription));
+            className = getSuperName(classDescription);
+        }
+
+        while (!interfaces.isEmpty()) {
+            String className = interfaces.removeFirst();
+            if (!visited.add(className)) {
+                continue;
+            }
+
+            ClassDescription classDescription = getClassDescription(className);
+            T member = findDeclaredMember(className, classDescription, name, descriptor, added, lookup);
+            if (member != null) {
+                return member;
+            }
+
+            if (!(classDescription instanceof UnresolvedClassDescription)) {
+                interfaces.addAll(getInterfaceNames(classDescription));
+            }
+        }
+
+        return null;
+    }
+
+    private static String getSuperName(ClassDescription classDescription) {
+        if (classDescription instanceof ResolvedClassDescription) {
+            return ((ResolvedClassDescription) classDescription).getSuperName();
+        }
+
+        ReferenceType superClass = classDescription.getSuperClass();
+        return superClass == null ? null : superClass.getRawType().getInternalName();
+    }
+
+    private static List<String> getInterfaceNames(ClassDescription classDescription) {
+        if (classDescription instanceof ResolvedClassDescription) {
+            return ((ResolvedClassDescription) classDescription).getInterfaceNames();
+        }
+
+        List<String> interfaceNames = new ArrayList<>();
+        for (Type interfaceType : classDescription.getInterfaces()) {
+            if (interfaceType instanceof ReferenceType) {
+                interfaceNames.add(((ReferenceType) interfaceType).getRawType().getInternalName());
+            }
+        }
+        return interfaceNames;
+    }
+
+    private <T> T findDeclaredMember(String className, ClassDescription classDescription, String name, String descriptor,
+                                     Map<MemberKey, T> added, MemberLookup<T> lookup) {
+        T member = added.get(MemberKey.probe(className, name, descriptor));
+        if (member == null && classDescription instanceof ResolvedClassDescription) {
+            member = lookup.apply((ResolvedClassDescription) classDescription, name, descriptor);
+        }
+        return member;
+    }
+
+    private interface MemberLookup<T> {
+        T apply(ResolvedClassDescription classDescription, String name, String descriptor);
     }
 }
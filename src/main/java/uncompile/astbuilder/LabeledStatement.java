@@ -1,5 +1,6 @@
 package uncompile.astbuilder;
 
+import uncompile.ast.AstLinks;
 import uncompile.ast.AstVisitor;
 import uncompile.ast.Statement;
 import uncompile.util.IndentingPrintWriter;
@@ -11,6 +12,7 @@ public class LabeledStatement extends Statement {
     public LabeledStatement(String label, Statement statement) {
         this.label = label;
         this.statement = statement;
+        AstLinks.linkChildren(this);
     }
 
     @Override
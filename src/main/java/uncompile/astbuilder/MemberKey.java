@@ -0,0 +1,66 @@
+package uncompile.astbuilder;
+
+/**
+ * Identifies a field or method by its owner, name and descriptor. Lookups use
+ * {@link #probe}, which reuses a thread-local key, so that looking up a member
+ * doesn't allocate. Keys that are stored in a map are created with the constructor
+ * and never change.
+ */
+final class MemberKey {
+    private static final ThreadLocal<MemberKey> PROBE = ThreadLocal.withInitial(MemberKey::new);
+
+    private String owner;
+    private String name;
+    private String descriptor;
+    private int hash;
+
+    private MemberKey() {}
+
+    MemberKey(String owner, String name, String descriptor) {
+        set(owner, name, descriptor);
+    }
+
+    /**
+     * Gets the lookup key of the current thread. It's only valid until the next
+     * call on the same thread and must not be stored.
+     */
+    static MemberKey probe(String owner, String name, String descriptor) {
+        MemberKey key = PROBE.get();
+        key.set(owner, name, descriptor);
+        return key;
+    }
+
+    private void set(String owner, String name, String descriptor) {
+        this.owner = owner;
+        this.name = name;
+        this.descriptor = descriptor;
+        hash = (owner.hashCode() * 31 + name.hashCode()) * 31 + descriptor.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof MemberKey)) {
+            return false;
+        }
+
+        MemberKey other = (MemberKey) obj;
+        return hash == other.hash &&
+               name.equals(other.name) &&
+               descriptor.equals(other.descriptor) &&
+               owner.equals(other.owner);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return owner + "." + name + descriptor;
+    }
+}
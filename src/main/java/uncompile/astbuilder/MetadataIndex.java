@@ -0,0 +1,328 @@
+package uncompile.astbuilder;
+
+import uncompile.metadata.ClassType;
+import uncompile.metadata.TypeUniverse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A memory-mapped index of class metadata written by {@link MetadataIndexWriter},
+ * used to avoid reading the class files of libraries on every run. Each class is
+ * stored with a hash of its class file (see {@link uncompile.ClassProvider#getClassHash})
+ * so that entries for classes that changed since the index was written are ignored.
+ * <p>
+ * The file consists of a header, fixed-width class and member records, a pool
+ * of int lists (interfaces and exceptions), and a string table:
+ * <pre>
+ * header:  magic, version, class count, member count, pool size, string count, string data size
+ * class:   name hash, name, content hash (long), access, inner access, super name,
+ *          interfaces, first member, field count, method count
+ * member:  access, name, descriptor, exceptions
+ * pool:    lists of string indices, each preceded by its length
+ * strings: string count + 1 offsets into the data, then the UTF-8 data
+ * </pre>
+ * Class records are sorted by the hash code of their name for binary search.
+ * All values are big-endian ints unless noted, names and descriptors are string
+ * indices, -1 stands for null.
+ * <p>
+ * Thread-safe: all reads from the mapped file are absolute.
+ */
+public class MetadataIndex implements Closeable {
+    static final int MAGIC = 0x55434D49; // "UCMI"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 7 * 4;
+    static final int CLASS_RECORD_SIZE = 11 * 4;
+    static final int MEMBER_RECORD_SIZE = 4 * 4;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int classCount;
+    private final int classesOffset;
+    private final int membersOffset;
+    private final int poolOffset;
+    private final int stringOffsetsOffset;
+    private final int stringDataOffset;
+
+    private MetadataIndex(Path path) throws IOException {
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        try {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("not a metadata index: " + path);
+            }
+
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("not a metadata index: " + path);
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("unsupported metadata index version " + buffer.getInt(4) + ": " + path);
+            }
+
+            classCount = buffer.getInt(8);
+            int memberCount = buffer.getInt(12);
+            int poolSize = buffer.getInt(16);
+            int stringCount = buffer.getInt(20);
+            int stringDataSize = buffer.getInt(24);
+
+            if (classCount < 0 || memberCount < 0 || poolSize < 0 || stringCount < 0 || stringDataSize < 0 ||
+                HEADER_SIZE + (long) classCount * CLASS_RECORD_SIZE + (long) memberCount * MEMBER_RECORD_SIZE +
+                ((long) poolSize + stringCount + 1) * 4 + stringDataSize != buffer.limit()) {
+                throw new IOException("truncated metadata index: " + path);
+            }
+
+            classesOffset = HEADER_SIZE;
+            membersOffset = classesOffset + classCount * CLASS_RECORD_SIZE;
+            poolOffset = membersOffset + memberCount * MEMBER_RECORD_SIZE;
+            stringOffsetsOffset = poolOffset + poolSize * 4;
+            stringDataOffset = stringOffsetsOffset + (stringCount + 1) * 4;
+
+            if (!isValid(memberCount, poolSize, stringCount, stringDataSize)) {
+                throw new IOException("corrupt metadata index: " + path);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an index, checking that all records and strings are in range.
+     *
+     * @throws IOException if the file can't be read or isn't an index of the current version
+     */
+    public static MetadataIndex open(Path path) throws IOException {
+        return new MetadataIndex(path);
+    }
+
+    /**
+     * Checks that every index and offset the reads follow is in range, so that a
+     * corrupt index is rejected when it's opened rather than when a class is read.
+     */
+    private boolean isValid(int memberCount, int poolSize, int stringCount, int stringDataSize) {
+        int previousOffset = 0;
+        for (int i = 0; i <= stringCount; i++) {
+            int offset = buffer.getInt(stringOffsetsOffset + i * 4);
+            if (offset < previousOffset || offset > stringDataSize) {
+                return false;
+            }
+            previousOffset = offset;
+        }
+
+        for (int i = 0; i < classCount; i++) {
+            int record = classRecord(i);
+            int firstMember = buffer.getInt(record + 32);
+            int fieldCount = buffer.getInt(record + 36);
+            int methodCount = buffer.getInt(record + 40);
+            if (!isString(buffer.getInt(record + 4), stringCount, false) ||
+                !isString(buffer.getInt(record + 24), stringCount, true) ||
+                !isStrings(buffer.getInt(record + 28), poolSize, stringCount) ||
+                firstMember < 0 || fieldCount < 0 || methodCount < 0 ||
+                (long) firstMember + fieldCount + methodCount > memberCount) {
+                return false;
+            }
+        }
+
+        for (int i = 0; i < memberCount; i++) {
+            int member = memberRecord(i);
+            if (!isString(buffer.getInt(member + 4), stringCount, false) ||
+                !isString(buffer.getInt(member + 8), stringCount, false) ||
+                !isStrings(buffer.getInt(member + 12), poolSize, stringCount)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isString(int index, int stringCount, boolean nullable) {
+        return index >= 0 ? index < stringCount : nullable && index == -1;
+    }
+
+    private boolean isStrings(int poolIndex, int poolSize, int stringCount) {
+        if (poolIndex == -1) {
+            return true;
+        }
+
+        if (poolIndex < 0 || poolIndex >= poolSize) {
+            return false;
+        }
+
+        int count = buffer.getInt(poolOffset + poolIndex * 4);
+        if (count < 0 || (long) poolIndex + 1 + count > poolSize) {
+            return false;
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (!isString(buffer.getInt(poolOffset + (poolIndex + 1 + i) * 4), stringCount, false)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * Gets the description of a class if the index contains an up-to-date entry for it.
+     *
+     * @param name  the internal name of the class
+     * @param hash  the hash of the current class file
+     * @param types the universe to create the types of the class and its members in
+     * @return the description, or null if the class is missing or its entry is stale
+     */
+    public ResolvedClassDescription getClassDescription(String name, long hash, TypeUniverse types) {
+        int index = find(name);
+        if (index == -1 || buffer.getLong(classRecord(index) + 8) != hash) {
+            return null;
+        }
+
+        return read(index, types);
+    }
+
+    /**
+     * @return the hash of the class file the entry of a class was created from, or -1 if there's no entry
+     */
+    public long getClassHash(String name) {
+        int index = find(name);
+        return index == -1 ? -1 : buffer.getLong(classRecord(index) + 8);
+    }
+
+    /**
+     * @return the internal names of all classes in the index
+     */
+    public List<String> getClassNames() {
+        List<String> names = new ArrayList<>(classCount);
+        for (int i = 0; i < classCount; i++) {
+            names.add(getString(buffer.getInt(classRecord(i) + 4)));
+        }
+        return names;
+    }
+
+    private int find(String name) {
+        int nameHash = name.hashCode();
+
+        // Find the first record with this name hash
+        int low = 0;
+        int high = classCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (buffer.getInt(classRecord(middle)) < nameHash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        for (int i = low; i < classCount && buffer.getInt(classRecord(i)) == nameHash; i++) {
+            if (getString(buffer.getInt(classRecord(i) + 4)).equals(name)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private ResolvedClassDescription read(int index, TypeUniverse types) {
+        int record = classRecord(index);
+        int access = buffer.getInt(record + 16);
+        int innerAccess = buffer.getInt(record + 20);
+        int firstMember = buffer.getInt(record + 32);
+        int fieldCount = buffer.getInt(record + 36);
+        int methodCount = buffer.getInt(record + 40);
+
+        ResolvedClassDescription classDescription = new ResolvedClassDescription(
+                types,
+                access,
+                getString(buffer.getInt(record + 4)),
+                getString(buffer.getInt(record + 24)),
+                Collections.unmodifiableList(Arrays.asList(getStrings(buffer.getInt(record + 28)))));
+        classDescription.setInnerAccess(innerAccess);
+
+        for (int i = firstMember; i < firstMember + fieldCount; i++) {
+            int member = memberRecord(i);
+            classDescription.addField(new ResolvedFieldDescription(
+                    classDescription,
+                    buffer.getInt(member),
+                    getString(buffer.getInt(member + 4)),
+                    getString(buffer.getInt(member + 8))));
+        }
+
+        for (int i = firstMember + fieldCount; i < firstMember + fieldCount + methodCount; i++) {
+            int member = memberRecord(i);
+            List<ClassType> exceptions = new ArrayList<>();
+            for (String exception : getStrings(buffer.getInt(member + 12))) {
+                exceptions.add(types.getClassType(exception));
+            }
+
+            classDescription.addMethod(new ResolvedMethodDescription(
+                    classDescription,
+                    buffer.getInt(member),
+                    getString(buffer.getInt(member + 4)),
+                    getString(buffer.getInt(member + 8)),
+                    exceptions));
+        }
+
+        return classDescription;
+    }
+
+    private int classRecord(int index) {
+        return classesOffset + index * CLASS_RECORD_SIZE;
+    }
+
+    private int memberRecord(int index) {
+        return membersOffset + index * MEMBER_RECORD_SIZE;
+    }
+
+    private String[] getStrings(int poolIndex) {
+        if (poolIndex == -1) {
+            return new String[0];
+        }
+
+        int pos = poolOffset + poolIndex * 4;
+        String[] strings = new String[buffer.getInt(pos)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = getString(buffer.getInt(pos + 4 + i * 4));
+        }
+        return strings;
+    }
+
+    private String getString(int index) {
+        if (index == -1) {
+            return null;
+        }
+
+        int start = buffer.getInt(stringOffsetsOffset + index * 4);
+        int end = buffer.getInt(stringOffsetsOffset + index * 4 + 4);
+        byte[] bytes = new byte[end - start];
+        ByteBuffer data = buffer.duplicate();
+        data.position(stringDataOffset + start);
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return "MetadataIndex{" + path + ", " + classCount + " classes}";
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,222 @@
+package uncompile.astbuilder;
+
+import uncompile.ClassProvider;
+import uncompile.metadata.ReferenceType;
+import uncompile.metadata.TypeUniverse;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Writes a {@link MetadataIndex}. An index can be created from scratch from the
+ * classes of a class path, or incrementally from an existing index by replacing
+ * the entries of classes that changed.
+ */
+public class MetadataIndexWriter {
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final TypeUniverse types = new TypeUniverse();
+
+    /**
+     * Adds a class, replacing any entry for a class with the same name.
+     *
+     * @param hash the hash of the class file the description was read from
+     */
+    public void add(ResolvedClassDescription classDescription, long hash) {
+        entries.put(classDescription.getInternalName(), new Entry(classDescription, hash));
+    }
+
+    /**
+     * Adds all entries of an existing index that aren't replaced by this writer.
+     */
+    public void addAll(MetadataIndex index) {
+        for (String name : index.getClassNames()) {
+            if (!entries.containsKey(name)) {
+                long hash = index.getClassHash(name);
+                add(index.getClassDescription(name, hash, types), hash);
+            }
+        }
+    }
+
+    /**
+     * Reads and adds classes from a class provider, skipping classes that can't be found.
+     */
+    public void addAll(ClassProvider classProvider, Collection<String> classNames) {
+        for (String name : classNames) {
+            byte[] bytes = classProvider.getClass(name);
+            if (bytes != null) {
+                add(ResolvedClassDescription.read(bytes, types), classProvider.getClassHash(name));
+            }
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Writes the index. The file is replaced atomically, so an index that is
+     * currently open stays valid.
+     */
+    public void write(Path file) throws IOException {
+        List<Entry> sortedEntries = new ArrayList<>(entries.values());
+        sortedEntries.sort(Comparator.comparingInt((Entry entry) -> entry.name.hashCode())
+                                     .thenComparing(entry -> entry.name));
+
+        StringTable strings = new StringTable();
+        IntList classes = new IntList();
+        IntList members = new IntList();
+        IntList pool = new IntList();
+        long[] hashes = new long[sortedEntries.size()];
+
+        for (int i = 0; i < sortedEntries.size(); i++) {
+            Entry entry = sortedEntries.get(i);
+            ResolvedClassDescription classDescription = entry.classDescription;
+            hashes[i] = entry.hash;
+
+            classes.add(entry.name.hashCode());
+            classes.add(strings.get(entry.name));
+            classes.add(classDescription.getAccess());
+            classes.add(classDescription.getInnerAccess());
+            classes.add(strings.get(classDescription.getSuperName()));
+            classes.add(addStrings(pool, strings, classDescription.getInterfaceNames()));
+            classes.add(members.size() / 4);
+            classes.add(classDescription.getFields().size());
+            classes.add(classDescription.getMethods().size());
+
+            for (ResolvedFieldDescription field : classDescription.getFields()) {
+                members.add(field.getAccess());
+                members.add(strings.get(field.getName()));
+                members.add(strings.get(field.getDescriptor()));
+                members.add(-1);
+            }
+
+            for (ResolvedMethodDescription method : classDescription.getMethods()) {
+                List<String> exceptions = new ArrayList<>();
+                for (ReferenceType exception : method.getExceptions()) {
+                    exceptions.add(exception.getRawType().getInternalName());
+                }
+
+                members.add(method.getAccess());
+                members.add(strings.get(method.getName()));
+                members.add(strings.get(method.getDescriptor()));
+                members.add(exceptions.isEmpty() ? -1 : addStrings(pool, strings, exceptions));
+            }
+        }
+
+        Path temporaryFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream fileOut = Files.newOutputStream(temporaryFile);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+                out.writeInt(MetadataIndex.MAGIC);
+                out.writeInt(MetadataIndex.VERSION);
+                out.writeInt(sortedEntries.size());
+                out.writeInt(members.size() / 4);
+                out.writeInt(pool.size());
+                out.writeInt(strings.size());
+                out.writeInt(strings.data.size());
+
+                // The content hash is a long in the middle of the class record
+                for (int i = 0; i < sortedEntries.size(); i++) {
+                    int record = i * 9;
+                    out.writeInt(classes.get(record));
+                    out.writeInt(classes.get(record + 1));
+                    out.writeLong(hashes[i]);
+                    for (int j = 2; j < 9; j++) {
+                        out.writeInt(classes.get(record + j));
+                    }
+                }
+
+                members.writeTo(out);
+                pool.writeTo(out);
+                strings.offsets.writeTo(out);
+                strings.data.writeTo(out);
+            }
+
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private static int addStrings(IntList pool, StringTable strings, List<String> values) {
+        int index = pool.size();
+        pool.add(values.size());
+        for (String value : values) {
+            pool.add(strings.get(value));
+        }
+        return index;
+    }
+
+    private static class Entry {
+        private final String name;
+        private final ResolvedClassDescription classDescription;
+        private final long hash;
+
+        private Entry(ResolvedClassDescription classDescription, long hash) {
+            name = classDescription.getInternalName();
+            this.classDescription = classDescription;
+            this.hash = hash;
+        }
+    }
+
+    private static class StringTable {
+        private final Map<String, Integer> indices = new HashMap<>();
+        private final IntList offsets = new IntList();
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        private StringTable() {
+            offsets.add(0);
+        }
+
+        private int get(String value) {
+            if (value == null) {
+                return -1;
+            }
+
+            return indices.computeIfAbsent(value, k -> {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                data.write(bytes, 0, bytes.length);
+                offsets.add(data.size());
+                return indices.size();
+            });
+        }
+
+        private int size() {
+            return indices.size();
+        }
+    }
+
+    private static class IntList {
+        private int[] values = new int[64];
+        private int size = 0;
+
+        private void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        private int get(int index) {
+            return values[index];
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private void writeTo(DataOutputStream out) throws IOException {
+            for (int i = 0; i < size; i++) {
+                out.writeInt(values[i]);
+            }
+        }
+    }
+}
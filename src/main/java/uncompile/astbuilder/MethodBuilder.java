@@ -3,15 +3,19 @@ package uncompile.astbuilder;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.*;
+import uncompile.DecompilationNotPossibleException;
 import uncompile.ast.*;
 import uncompile.controlflow.ControlFlowGraph;
 import uncompile.controlflow.ControlFlowNode;
 import uncompile.controlflow.Jump;
 import uncompile.controlflow.ControlFlowGenerator;
 import uncompile.metadata.PrimitiveType;
-import uncompile.util.FakeMap;
+import uncompile.metrics.Metrics;
+import uncompile.metrics.MetricsListener;
+import uncompile.util.Traversal;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MethodBuilder extends MethodNode {
     private final Method method;
@@ -27,6 +31,10 @@ public class MethodBuilder extends MethodNode {
     private int labelCounter = 0;
     private DescriptionProvider descriptionProvider;
     private Map<Label, ControlFlowBlock> labelToBlock = new HashMap<>();
+    private List<ControlFlowBlock> blocks = new ArrayList<>();
+    private ControlFlowBlock startBlock = null;
+    private AbstractInsnNode[] insns = null;
+    private ControlFlowGraph graph = null;
 
     public MethodBuilder(Method method, String className, String superName, int access, String name, String descriptor, String signature, String[] exceptions, DescriptionProvider descriptionProvider) {
         super(Opcodes.ASM7, access, name, descriptor, signature, exceptions);
@@ -88,90 +96,171 @@ public class MethodBuilder extends MethodNode {
             return;
         }
 
-        Map<Label, Deque<TryCatchBlockNode>> tryCatchStarts = new HashMap<>();
-        Map<Label, Deque<TryCatchBlockNode>> tryCatchEnds = new HashMap<>();
-        Map<Label, TryCatchBlockNode> tryCatchHandlers = new HashMap<>();
-        // TODO: do try catch ordering: make sure that all trys starting at the same label are listed in tryCatchStarts in the
-        //  reverse order they end in.
-        for (TryCatchBlockNode tryCatchBlock : tryCatchBlocks) {
-            tryCatchStarts.computeIfAbsent(tryCatchBlock.start.getLabel(), k -> new ArrayDeque<>()).addFirst(tryCatchBlock);
-            tryCatchEnds.computeIfAbsent(tryCatchBlock.end.getLabel(), k -> new ArrayDeque<>()).addLast(tryCatchBlock);
-            tryCatchHandlers.put(tryCatchBlock.handler.getLabel(), tryCatchBlock);
-        }
-        usefulLabels.addAll(tryCatchStarts.keySet());
-        usefulLabels.addAll(tryCatchEnds.keySet());
-        usefulLabels.addAll(tryCatchHandlers.keySet());
-
-        ControlFlowBlock startBlock = new ControlFlowBlock();
-        ControlFlowBlock currentBlock = startBlock;
-        List<ControlFlowBlock> blocks = new ArrayList<>();
-        blocks.add(currentBlock);
-
-        for (AbstractInsnNode insn : instructions.toArray()) {
-            int opcode = insn.getOpcode();
-
-            if (insn instanceof LabelNode && usefulLabels.contains(((LabelNode) insn).getLabel())) {
-                Label label = ((LabelNode) insn).getLabel();
-
-                ControlFlowBlock newBlock = labelToBlock.computeIfAbsent(label, k -> new ControlFlowBlock());
-                currentBlock.nextBlocks.add(newBlock);
-                currentBlock.successor = newBlock;
-                labelToBlock.put(label, newBlock);
-                currentBlock = newBlock;
-                blocks.add(newBlock);
-            }
+        MetricsListener metrics = Metrics.getListener();
+        metrics.methodStarted(className, name, desc);
+        try {
+            metrics.phaseStarted("splitBlocks");
+            splitBlocks();
+            metrics.nodeCount(blocks.size());
+            metrics.phaseFinished("splitBlocks");
+
+            metrics.phaseStarted("assignFrames");
+            assignFrames();
+            metrics.nodeCount(blocks.size());
+            metrics.phaseFinished("assignFrames");
+
+            metrics.phaseStarted("buildBlocks");
+            buildBlocks();
+            metrics.nodeCount(instructions.size());
+            metrics.phaseFinished("buildBlocks");
+
+            metrics.phaseStarted("generateCode");
+            generateCode();
+            metrics.nodeCount(blocks.size());
+            metrics.phaseFinished("generateCode");
+        } catch (DecompilationNotPossibleException e) {
+            // Keep the rest of the class, and say in the body why this method is missing
+            method.body = createFailureBody(e.getMessage());
+        } finally {
+            metrics.methodFinished(className, name, desc);
+        }
+    }
 
-            currentBlock.instructions.add(insn.clone(new FakeMap<>(LabelNode.class, l -> l)));
+    private Block createFailureBody(String reason) {
+        String exceptionClass = "java/lang/IllegalStateException";
+        ClassCreationExpression exception = new ClassCreationExpression(
+                new ClassReference(descriptionProvider.getTypes().getClassType(exceptionClass)),
+                descriptionProvider.getMethodDescription(exceptionClass, "<init>", "(Ljava/lang/String;)V", false)
+        );
+        exception.arguments.add(new StringLiteral("Decompilation failed: " + reason));
+
+        Block body = new Block();
+        body.add(new Throw(exception));
+        return body;
+    }
 
-            if (opcode == Opcodes.RETURN || opcode == Opcodes.IRETURN || opcode == Opcodes.LRETURN ||
-                opcode == Opcodes.FRETURN || opcode == Opcodes.DRETURN || opcode == Opcodes.ARETURN) {
-                currentBlock.skipSaveFrame = true;
-                ControlFlowBlock newBlock = new ControlFlowBlock();
-                currentBlock = newBlock;
-                blocks.add(newBlock);
+    // The phases of visitEnd are public so that they can be run and measured
+    // separately. They must be called once each, in order.
+
+    /**
+     * Splits the instructions into basic blocks.
+     */
+    public void splitBlocks() {
+        // TODO: exception edges aren't in the graph, so handlers would be unreachable
+        //  and silently dropped. Leave the method out until they're structured.
+        if (!tryCatchBlocks.isEmpty()) {
+            throw new DecompilationNotPossibleException("try/catch blocks aren't supported");
+        }
+
+        // Blocks start at labels that are jumped to and after instructions that
+        // don't continue with the next one, so they are ranges of instructions
+        insns = instructions.toArray();
+        boolean[] isLeader = new boolean[insns.length + 1];
+        for (int i = 0; i < insns.length; i++) {
+            if (isJumpTarget(insns[i])) {
+                isLeader[i] = true;
             }
 
-            if (insn instanceof JumpInsnNode) {
-                Label label = ((JumpInsnNode) insn).label.getLabel();
-                currentBlock.nextBlocks.add(labelToBlock.computeIfAbsent(label, k -> new ControlFlowBlock()));
+            if (insns[i] instanceof JumpInsnNode || insns[i] instanceof TableSwitchInsnNode ||
+                insns[i] instanceof LookupSwitchInsnNode || isReturn(insns[i].getOpcode())) {
+                isLeader[i + 1] = true;
+            }
+        }
 
-                ControlFlowBlock newBlock = new ControlFlowBlock();
-                if (opcode != Opcodes.GOTO) {
-                    currentBlock.successor = newBlock;
-                    currentBlock.nextBlocks.add(newBlock);
+        // The start block can't be jumped to, so it's empty if the first label is
+        if (insns.length > 0 && isJumpTarget(insns[0])) {
+            blocks.add(new ControlFlowBlock(blocks.size(), 0, 0));
+        }
+        int start = 0;
+        for (int i = 1; i <= insns.length; i++) {
+            if (i == insns.length || isLeader[i]) {
+                ControlFlowBlock block = new ControlFlowBlock(blocks.size(), start, i);
+                if (isJumpTarget(insns[start])) {
+                    labelToBlock.put(((LabelNode) insns[start]).getLabel(), block);
                 }
-                currentBlock = newBlock;
-                blocks.add(newBlock);
+                blocks.add(block);
+                start = i;
             }
+        }
+        if (blocks.isEmpty()) {
+            blocks.add(new ControlFlowBlock(0, 0, 0));
+        }
+        startBlock = blocks.get(0);
 
-            if (insn instanceof TableSwitchInsnNode || insn instanceof LookupSwitchInsnNode) {
-                List<LabelNode> labels = insn instanceof TableSwitchInsnNode ?
-                        ((TableSwitchInsnNode) insn).labels :
-                        ((LookupSwitchInsnNode) insn).labels;
-                labels.add(insn instanceof TableSwitchInsnNode ?
-                        ((TableSwitchInsnNode) insn).dflt :
-                        ((LookupSwitchInsnNode) insn).dflt);
-
+        for (ControlFlowBlock block : blocks) {
+            ControlFlowBlock nextBlock = block.index + 1 < blocks.size() ? blocks.get(block.index + 1) : null;
+            AbstractInsnNode last = block.end > block.start ? insns[block.end - 1] : null;
+
+            if (last != null && isReturn(last.getOpcode())) {
+                block.skipSaveFrame = true;
+            } else if (last instanceof JumpInsnNode) {
+                ControlFlowBlock target = labelToBlock.get(((JumpInsnNode) last).label.getLabel());
+                block.nextBlocks.add(target);
+                if (last.getOpcode() != Opcodes.GOTO && nextBlock != null) {
+                    block.successor = nextBlock;
+                    if (nextBlock != target) {
+                        block.nextBlocks.add(nextBlock);
+                    }
+                }
+            } else if (last instanceof TableSwitchInsnNode || last instanceof LookupSwitchInsnNode) {
+                List<LabelNode> labels = last instanceof TableSwitchInsnNode ?
+                        ((TableSwitchInsnNode) last).labels :
+                        ((LookupSwitchInsnNode) last).labels;
+                LabelNode dflt = last instanceof TableSwitchInsnNode ?
+                        ((TableSwitchInsnNode) last).dflt :
+                        ((LookupSwitchInsnNode) last).dflt;
+
+                Set<ControlFlowBlock> targets = new HashSet<>();
                 for (LabelNode labelNode : labels) {
-                    Label label = labelNode.getLabel();
-                    currentBlock.nextBlocks.add(labelToBlock.computeIfAbsent(label, k -> new ControlFlowBlock()));
+                    ControlFlowBlock target = labelToBlock.get(labelNode.getLabel());
+                    if (targets.add(target)) {
+                        block.nextBlocks.add(target);
+                    }
                 }
-
-                ControlFlowBlock newBlock = new ControlFlowBlock();
-                currentBlock = newBlock;
-                blocks.add(newBlock);
+                if (targets.add(labelToBlock.get(dflt.getLabel()))) {
+                    block.nextBlocks.add(labelToBlock.get(dflt.getLabel()));
+                }
+            } else if (nextBlock != null) {
+                block.successor = nextBlock;
+                block.nextBlocks.add(nextBlock);
             }
         }
+    }
 
+    /**
+     * Assigns frames to the blocks and determines the order in which they can be built.
+     */
+    public void assignFrames() {
         // Assign start and end frames to blocks such that the start frame of
-        // any block is equal with the end frames of all incoming blocks
+        // any block is equal with the end frames of all incoming blocks. The
+        // start of block i is 2 * i and its end is 2 * i + 1 in the union-find
+        // of block starts and ends that share a frame.
+        int[] parents = new int[2 * blocks.size()];
+        int[] ranks = new int[parents.length];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = i;
+        }
+
         for (ControlFlowBlock block : blocks) {
-            if (block.startFrame == null) {
-                setBlockStartFrame(blocks, block, new Frame());
+            for (ControlFlowBlock nextBlock : block.nextBlocks) {
+                union(parents, ranks, 2 * block.index + 1, 2 * nextBlock.index);
             }
+        }
 
-            if (block.endFrame == null) {
-                setBlockEndFrame(blocks, block, new Frame());
+        Frame[] frames = new Frame[parents.length];
+        for (ControlFlowBlock block : blocks) {
+            block.startFrame = getFrame(frames, find(parents, 2 * block.index));
+            block.endFrame = getFrame(frames, find(parents, 2 * block.index + 1));
+        }
+
+        // Blocks that start with a frame from the StackMapTable (which class files
+        // have since Java 7) get the declared local variables from it, and can be
+        // built as soon as one incoming block has been built.
+        for (ControlFlowBlock block : blocks) {
+            FrameNode frameNode = getStartFrameNode(block);
+            if (frameNode != null) {
+                block.hasVerifierFrame = true;
+                addUninitializedLocals(frameNode, block.uninitializedLocals);
             }
         }
 
@@ -179,19 +268,27 @@ public class MethodBuilder extends MethodNode {
         // it is known which local variables in the start frame have been declared.
         Deque<ControlFlowBlock> stack = new ArrayDeque<>();
         stack.push(startBlock);
-        Set<ControlFlowBlock> visited = new HashSet<>();
+        BitSet visited = new BitSet(blocks.size());
         while (!stack.isEmpty()) {
             ControlFlowBlock block = stack.pop();
-            if (!visited.add(block)) {
+            if (visited.get(block.index)) {
                 continue;
             }
+            visited.set(block.index);
             for (ControlFlowBlock nextBlock : block.nextBlocks) {
-                nextBlock.unknownIncomingFrames.add(block);
+                if (!nextBlock.hasVerifierFrame) {
+                    nextBlock.unknownIncomingFrames.add(block);
+                }
             }
         }
+    }
 
+    /**
+     * Builds the AST of each block and creates the control flow graph.
+     */
+    public void buildBlocks() {
         // Create a control flow node for each block
-        ControlFlowGraph graph = new ControlFlowGraph();
+        graph = new ControlFlowGraph();
         for (ControlFlowBlock block : blocks) {
             block.node = graph.createNode();
         }
@@ -200,8 +297,16 @@ public class MethodBuilder extends MethodNode {
             block.successorNode = block.successor == null ? null : block.successor.node;
         }
 
+        // Parameters are the locals the method starts with, so that stores to them
+        // are carried through the frames like those to any other local
+        startBlock.startFrame.locals = new VariableDeclaration[maxLocals];
+        for (Map.Entry<Integer, VariableDeclaration> parameter : indexToParameter.entrySet()) {
+            startBlock.startFrame.locals[parameter.getKey()] = parameter.getValue();
+        }
+
         // Build
-        buildBlockAst(startBlock, new BlockBuilder(method, className, superName, indexToParameter, () -> variableCounter++, locals, this::getLabelTarget, descriptionProvider, maxLocals, startBlock.successorNode));
+        startBlock.builder = new BlockBuilder(method, className, superName, indexToParameter, () -> variableCounter++, locals, this::getLabelTarget, descriptionProvider, maxLocals, startBlock.successorNode);
+        Traversal.depthFirst(startBlock, block -> block.nextBlocks, this::enterBlock, this::buildBlockAst, null);
 
         // Copy the AST for each block into the node
         for (ControlFlowBlock block : blocks) {
@@ -212,6 +317,13 @@ public class MethodBuilder extends MethodNode {
             block.node.setJump(block.jump);
         }
 
+        graph.entryPoint = startBlock.node;
+    }
+
+    /**
+     * Generates the method body from the control flow graph.
+     */
+    public void generateCode() {
         List<Statement> statements = new ArrayList<>();
 //        Deque<List<Statement>> tryCatchStack = new ArrayDeque<>();
 //        Deque<TryCatchBlockNode> openTryCatches = new ArrayDeque<>();
@@ -273,43 +385,112 @@ public class MethodBuilder extends MethodNode {
 //            throw new DecompilationNotPossibleException("try block not ended");
 //        }
 
-        graph.entryPoint = startBlock.node;
-        method.body = new ControlFlowGenerator(graph).createCode();
+        Block code = new ControlFlowGenerator(graph).createCode();
+        method.body = new Block();
         method.body.addExpressions(locals);
         method.body.addStatements(statements);
+        method.body.addStatements(code.statements);
     }
 
-    private void setBlockStartFrame(List<ControlFlowBlock> blocks, ControlFlowBlock block, Frame frame) {
-        if (block.startFrame == null) {
-            block.startFrame = frame;
-            for (ControlFlowBlock otherBlock : blocks) {
-                if (otherBlock.nextBlocks.contains(block)) {
-                    setBlockEndFrame(blocks, otherBlock, frame);
-                }
+    /**
+     * @return the control flow graph, or null if {@link #buildBlocks} hasn't been called yet
+     */
+    public ControlFlowGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return the frame at the start of a block if the class file has one there,
+     *         which it does for all jump targets if it has a StackMapTable
+     */
+    private FrameNode getStartFrameNode(ControlFlowBlock block) {
+        for (int i = block.start; i < block.end; i++) {
+            if (insns[i] instanceof FrameNode) {
+                return (FrameNode) insns[i];
+            }
+
+            if (!(insns[i] instanceof LabelNode) && !(insns[i] instanceof LineNumberNode)) {
+                break;
             }
         }
+
+        return null;
     }
 
-    private void setBlockEndFrame(List<ControlFlowBlock> blocks, ControlFlowBlock block, Frame frame) {
-        if (block.endFrame == null) {
-            block.endFrame = frame;
-            for (ControlFlowBlock otherBlock : block.nextBlocks) {
-                setBlockStartFrame(blocks, otherBlock, frame);
+    /**
+     * Adds the local variable indices that are unused in a frame, expanded
+     * by ClassReader.EXPAND_FRAMES.
+     */
+    private void addUninitializedLocals(FrameNode frameNode, Set<Integer> uninitializedLocals) {
+        int index = 0;
+        if (frameNode.local != null) {
+            for (Object type : frameNode.local) {
+                if (Opcodes.TOP.equals(type)) {
+                    uninitializedLocals.add(index);
+                } else if (Opcodes.LONG.equals(type) || Opcodes.DOUBLE.equals(type)) {
+                    index++;
+                    uninitializedLocals.add(index);
+                }
+                index++;
             }
+        }
+
+        for (; index < maxLocals; index++) {
+            uninitializedLocals.add(index);
+        }
+    }
+
+    private boolean isJumpTarget(AbstractInsnNode insn) {
+        return insn instanceof LabelNode && usefulLabels.contains(((LabelNode) insn).getLabel());
+    }
+
+    private static boolean isReturn(int opcode) {
+        return opcode == Opcodes.RETURN || opcode == Opcodes.IRETURN || opcode == Opcodes.LRETURN ||
+               opcode == Opcodes.FRETURN || opcode == Opcodes.DRETURN || opcode == Opcodes.ARETURN;
+    }
+
+    private static int find(int[] parents, int element) {
+        while (parents[element] != element) {
+            parents[element] = parents[parents[element]];
+            element = parents[element];
+        }
+        return element;
+    }
 
-            for (ControlFlowBlock otherBlock : block.exceptionHandlers) {
-                setBlockEndFrame(blocks, otherBlock, frame);
+    private static void union(int[] parents, int[] ranks, int a, int b) {
+        a = find(parents, a);
+        b = find(parents, b);
+        if (a == b) {
+            return;
+        }
+
+        if (ranks[a] < ranks[b]) {
+            parents[a] = b;
+        } else {
+            parents[b] = a;
+            if (ranks[a] == ranks[b]) {
+                ranks[a]++;
             }
         }
     }
 
+    private static Frame getFrame(Frame[] frames, int root) {
+        if (frames[root] == null) {
+            frames[root] = new Frame();
+        }
+        return frames[root];
+    }
+
     private ControlFlowNode getLabelTarget(Label label) {
         return labelToBlock.get(label).node;
     }
 
-    private void buildBlockAst(ControlFlowBlock node, BlockBuilder blockBuilder) {
+    private void buildBlockAst(ControlFlowBlock node) {
+        BlockBuilder blockBuilder = node.builder;
         blockBuilder.loadFrame(node.startFrame, node.uninitializedLocals);
-        node.instructions.accept(blockBuilder);
+        for (int i = node.start; i < node.end; i++) {
+            insns[i].accept(blockBuilder);
+        }
 
         if (!node.skipSaveFrame) {
             blockBuilder.saveFrame(node.endFrame);
@@ -317,43 +498,63 @@ public class MethodBuilder extends MethodNode {
 
         node.block = blockBuilder.getBlock();
         node.jump = blockBuilder.getJump();
+    }
 
-        for (ControlFlowBlock nextNode : node.nextBlocks) {
-            if (nextNode.block == null) {
-                nextNode.unknownIncomingFrames.remove(node);
-                for (int i = 0; i < maxLocals; i++) {
-                    if (node.endFrame.locals[i] == null) {
-                        nextNode.uninitializedLocals.add(i);
-                    }
-                }
+    /**
+     * Called for each next block of a block that has been built, returns whether
+     * the next block can be built now.
+     */
+    private boolean enterBlock(ControlFlowBlock node, ControlFlowBlock nextNode) {
+        if (nextNode.block != null) {
+            return false;
+        }
 
-                if (nextNode.unknownIncomingFrames.isEmpty()) {
-                    buildBlockAst(nextNode, blockBuilder.createNewBuilder(nextNode.successorNode));
+        if (!nextNode.hasVerifierFrame) {
+            nextNode.unknownIncomingFrames.remove(node);
+            for (int i = 0; i < maxLocals; i++) {
+                if (node.endFrame.locals[i] == null) {
+                    nextNode.uninitializedLocals.add(i);
                 }
             }
+
+            if (!nextNode.unknownIncomingFrames.isEmpty()) {
+                return false;
+            }
         }
+
+        nextNode.builder = node.builder.createNewBuilder(nextNode.successorNode);
+        return true;
     }
 
     private static class ControlFlowBlock {
-        public InsnList instructions = new InsnList();
+        public final int index;
+        public final int start; // index of the first instruction
+        public final int end; // index after the last instruction
         public Frame startFrame = null;
         public Frame endFrame = null;
         public Set<ControlFlowBlock> unknownIncomingFrames = new HashSet<>();
         public Set<Integer> uninitializedLocals = new HashSet<>();
-        public Set<ControlFlowBlock> nextBlocks = new LinkedHashSet<>();
-        public Set<ControlFlowBlock> exceptionHandlers = new LinkedHashSet<>();
+        public List<ControlFlowBlock> nextBlocks = new ArrayList<>();
         public Block block = null;
+        public BlockBuilder builder = null;
         public boolean skipSaveFrame = false;
+        public boolean hasVerifierFrame = false;
         public ControlFlowNode node = null;
         public ControlFlowBlock successor = null;
         public ControlFlowNode successorNode = null;
         public Jump jump = null;
+
+        public ControlFlowBlock(int index, int start, int end) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+        }
     }
 
-    private static int debugIdCounter = 0;
+    private static final AtomicInteger debugIdCounter = new AtomicInteger();
 
     public static class Frame {
-        public int debugId = debugIdCounter++;
+        public int debugId = debugIdCounter.getAndIncrement();
         public VariableDeclaration[] stack = null;
         public VariableDeclaration[] locals = null;
     }
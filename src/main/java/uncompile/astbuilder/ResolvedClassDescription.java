@@ -0,0 +1,198 @@
+package uncompile.astbuilder;
+
+import org.objectweb.asm.*;
+import uncompile.metadata.*;
+
+import java.util.*;
+
+/**
+ * Description of a class read from its class file. Only the class header and the
+ * field and method declarations are read, method bodies are skipped.
+ */
+public class ResolvedClassDescription implements ClassDescription {
+    private final TypeUniverse types;
+    private final int access;
+    private final String name;
+    private final String superName;
+    private final List<String> interfaceNames;
+    private int innerAccess = -1;
+    private final List<ResolvedFieldDescription> fields = new ArrayList<>();
+    private final List<ResolvedMethodDescription> methods = new ArrayList<>();
+    private final Map<MemberKey, ResolvedFieldDescription> fieldsByKey = new HashMap<>();
+    private final Map<MemberKey, ResolvedMethodDescription> methodsByKey = new HashMap<>();
+
+    ResolvedClassDescription(TypeUniverse types, int access, String name, String superName, List<String> interfaceNames) {
+        this.types = types;
+        this.access = access;
+        this.name = name;
+        this.superName = superName;
+        this.interfaceNames = interfaceNames;
+    }
+
+    /**
+     * @param types the universe to create the types of the class and its members in
+     */
+    public static ResolvedClassDescription read(byte[] bytes, TypeUniverse types) {
+        ResolvedClassDescription[] result = {null};
+
+        new ClassReader(bytes).accept(new ClassVisitor(Opcodes.ASM7) {
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                result[0] = new ResolvedClassDescription(types, access, name, superName, Collections.unmodifiableList(Arrays.asList(interfaces)));
+            }
+
+            @Override
+            public void visitInnerClass(String name, String outerName, String innerName, int access) {
+                // The access flags of a nested class are only correct in the InnerClasses attribute
+                if (name.equals(result[0].name)) {
+                    result[0].innerAccess = access;
+                }
+            }
+
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+                result[0].addField(new ResolvedFieldDescription(result[0], access, name, descriptor));
+                return null;
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                List<ClassType> exceptionTypes = new ArrayList<>();
+                if (exceptions != null) {
+                    for (String exception : exceptions) {
+                        exceptionTypes.add(types.getClassType(exception));
+                    }
+                }
+
+                result[0].addMethod(new ResolvedMethodDescription(result[0], access, name, descriptor, exceptionTypes));
+                return null;
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+        return result[0];
+    }
+
+    void addField(ResolvedFieldDescription field) {
+        fields.add(field);
+        fieldsByKey.put(new MemberKey(this.name, field.getName(), field.getDescriptor()), field);
+    }
+
+    void addMethod(ResolvedMethodDescription method) {
+        methods.add(method);
+        methodsByKey.put(new MemberKey(this.name, method.getName(), method.getDescriptor()), method);
+    }
+
+    /**
+     * @return the internal name of this class
+     */
+    public String getInternalName() {
+        return name;
+    }
+
+    /**
+     * @return the internal name of the superclass, or null for java.lang.Object
+     */
+    public String getSuperName() {
+        return superName;
+    }
+
+    public List<String> getInterfaceNames() {
+        return interfaceNames;
+    }
+
+    /**
+     * @return the field declared in this class with this name and descriptor, or null
+     */
+    public ResolvedFieldDescription getField(String name, String descriptor) {
+        return fieldsByKey.get(MemberKey.probe(this.name, name, descriptor));
+    }
+
+    /**
+     * @return the method declared in this class with this name and descriptor, or null
+     */
+    public ResolvedMethodDescription getMethod(String name, String descriptor) {
+        return methodsByKey.get(MemberKey.probe(this.name, name, descriptor));
+    }
+
+    TypeUniverse getTypes() {
+        return types;
+    }
+
+    int getAccess() {
+        return access;
+    }
+
+    /**
+     * @return the access flags from the InnerClasses attribute, or -1 if this isn't a nested class
+     */
+    int getInnerAccess() {
+        return innerAccess;
+    }
+
+    void setInnerAccess(int innerAccess) {
+        this.innerAccess = innerAccess;
+    }
+
+    private int getEffectiveAccess() {
+        return innerAccess != -1 ? innerAccess : access;
+    }
+
+    @Override
+    public String getFullName() {
+        return name.replace('/', '.');
+    }
+
+    @Override
+    public AccessLevel getAccessLevel() {
+        return ClassBuilder.getAccessLevel(getEffectiveAccess());
+    }
+
+    @Override
+    public ClassKind getKind() {
+        return ClassBuilder.getClassKind(getEffectiveAccess());
+    }
+
+    @Override
+    public boolean isFinal() {
+        return (getEffectiveAccess() & Opcodes.ACC_FINAL) != 0;
+    }
+
+    @Override
+    public boolean isAbstract() {
+        return (getEffectiveAccess() & Opcodes.ACC_ABSTRACT) != 0;
+    }
+
+    @Override
+    public boolean isSynthetic() {
+        return (getEffectiveAccess() & Opcodes.ACC_SYNTHETIC) != 0;
+    }
+
+    @Override
+    public ReferenceType getSuperClass() {
+        return superName == null ? null : types.getClassType(superName);
+    }
+
+    @Override
+    public List<ClassType> getInterfaces() {
+        List<ClassType> interfaces = new ArrayList<>();
+        for (String interfaceName : interfaceNames) {
+            interfaces.add(types.getClassType(interfaceName));
+        }
+        return interfaces;
+    }
+
+    @Override
+    public List<ResolvedFieldDescription> getFields() {
+        return fields;
+    }
+
+    @Override
+    public List<ResolvedMethodDescription> getMethods() {
+        return methods;
+    }
+
+    @Override
+    public boolean isComplete() {
+        return true;
+    }
+}
@@ -0,0 +1,78 @@
+package uncompile.astbuilder;
+
+import org.objectweb.asm.Opcodes;
+import uncompile.metadata.AccessLevel;
+import uncompile.metadata.FieldDescription;
+import uncompile.metadata.Type;
+
+public class ResolvedFieldDescription implements FieldDescription {
+    private final ResolvedClassDescription declaringClass;
+    private final int access;
+    private final String name;
+    private final String descriptor;
+    private volatile Type type = null;
+
+    public ResolvedFieldDescription(ResolvedClassDescription declaringClass, int access, String name, String descriptor) {
+        this.declaringClass = declaringClass;
+        this.access = access;
+        this.name = name;
+        this.descriptor = descriptor;
+    }
+
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    int getAccess() {
+        return access;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public ResolvedClassDescription getDeclaringClass() {
+        return declaringClass;
+    }
+
+    @Override
+    public Type getType() {
+        // Most fields of library classes are never used, so parse the type lazily
+        if (type == null) {
+            type = declaringClass.getTypes().getType(descriptor);
+        }
+        return type;
+    }
+
+    @Override
+    public boolean isStatic() {
+        return (access & Opcodes.ACC_STATIC) != 0;
+    }
+
+    @Override
+    public AccessLevel getAccessLevel() {
+        return ClassBuilder.getAccessLevel(access);
+    }
+
+    @Override
+    public boolean isFinal() {
+        return (access & Opcodes.ACC_FINAL) != 0;
+    }
+
+    @Override
+    public boolean isVolatile() {
+        return (access & Opcodes.ACC_VOLATILE) != 0;
+    }
+
+    @Override
+    public boolean isTransient() {
+        return (access & Opcodes.ACC_TRANSIENT) != 0;
+    }
+
+    @Override
+    public boolean isSynthetic() {
+        return (access & Opcodes.ACC_SYNTHETIC) != 0;
+    }
+}
@@ -0,0 +1,110 @@
+package uncompile.astbuilder;
+
+import org.objectweb.asm.Opcodes;
+import uncompile.metadata.*;
+
+import java.util.Collections;
+import java.util.List;
+
+public class ResolvedMethodDescription implements MethodDescription {
+    private final ResolvedClassDescription declaringClass;
+    private final int access;
+    private final String name;
+    private final String descriptor;
+    private final List<ClassType> exceptions;
+    private volatile MethodSignature parsedDescriptor = null;
+
+    public ResolvedMethodDescription(ResolvedClassDescription declaringClass, int access, String name, String descriptor, List<ClassType> exceptions) {
+        this.declaringClass = declaringClass;
+        this.access = access;
+        this.name = name;
+        this.descriptor = descriptor;
+        this.exceptions = exceptions;
+    }
+
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    int getAccess() {
+        return access;
+    }
+
+    // Most methods of library classes are never called, so parse the descriptor lazily
+    private MethodSignature getParsedDescriptor() {
+        if (parsedDescriptor == null) {
+            parsedDescriptor = declaringClass.getTypes().getMethodSignature(descriptor);
+        }
+        return parsedDescriptor;
+    }
+
+    @Override
+    public AccessLevel getAccessLevel() {
+        return ClassBuilder.getAccessLevel(access);
+    }
+
+    @Override
+    public boolean isFinal() {
+        return (access & Opcodes.ACC_FINAL) != 0;
+    }
+
+    @Override
+    public boolean isAbstract() {
+        return (access & Opcodes.ACC_ABSTRACT) != 0;
+    }
+
+    @Override
+    public boolean isSynchronized() {
+        return (access & Opcodes.ACC_SYNCHRONIZED) != 0;
+    }
+
+    @Override
+    public boolean isNative() {
+        return (access & Opcodes.ACC_NATIVE) != 0;
+    }
+
+    @Override
+    public boolean isBridge() {
+        return (access & Opcodes.ACC_BRIDGE) != 0;
+    }
+
+    @Override
+    public boolean isSynthetic() {
+        return (access & Opcodes.ACC_SYNTHETIC) != 0;
+    }
+
+    @Override
+    public List<? extends ReferenceType> getExceptions() {
+        return exceptions;
+    }
+
+    @Override
+    public ResolvedClassDescription getDeclaringClass() {
+        return declaringClass;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public List<? extends TypeParameterType> getTypeParameters() {
+        return Collections.emptyList(); // TODO: generics
+    }
+
+    @Override
+    public List<? extends Type> getParameterTypes() {
+        return getParsedDescriptor().parameterTypes;
+    }
+
+    @Override
+    public Type getReturnType() {
+        return getParsedDescriptor().returnType;
+    }
+
+    @Override
+    public boolean isStatic() {
+        return (access & Opcodes.ACC_STATIC) != 0;
+    }
+}
@@ -2,14 +2,15 @@ package uncompile.astbuilder;
 
 import uncompile.metadata.*;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class UnresolvedClassDescription implements ClassDescription {
     private final String name;
-    private final List<FieldDescription> fields = new ArrayList<>();
-    private final List<MethodDescription> methods = new ArrayList<>();
+    // Members are added as they are referenced, possibly from several threads
+    private final List<FieldDescription> fields = new CopyOnWriteArrayList<>();
+    private final List<MethodDescription> methods = new CopyOnWriteArrayList<>();
 
     public UnresolvedClassDescription(String name) {
         this.name = name;
@@ -0,0 +1,177 @@
+package uncompile.classpath;
+
+import uncompile.ClassProvider;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches the classes of another class provider, keeping the total size of the
+ * cached class files under a fixed number of bytes. The least recently used
+ * classes are evicted first. Classes that weren't found are remembered in a
+ * separate, entry-bounded cache so that they don't take space from found classes.
+ * <p>
+ * Thread-safe: the cache is split into segments with their own lock and budget,
+ * and classes are loaded from the underlying provider without holding any lock.
+ */
+public class CachingClassProvider implements ClassProvider {
+    private static final int SEGMENT_COUNT = 16;
+
+    private final ClassProvider delegate;
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder negativeHitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * @param delegate           the provider to load classes from
+     * @param maxWeight          the maximum total size in bytes of cached class files
+     * @param maxNegativeEntries the maximum number of class names to remember as missing
+     */
+    public CachingClassProvider(ClassProvider delegate, long maxWeight, int maxNegativeEntries) {
+        this.delegate = delegate;
+
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(maxWeight / SEGMENT_COUNT, Math.max(1, maxNegativeEntries / SEGMENT_COUNT));
+        }
+    }
+
+    @Override
+    public byte[] getClass(String name) {
+        String internalName = ClassSources.toInternalName(name);
+        Segment segment = segments[(internalName.hashCode() & 0x7FFFFFFF) % SEGMENT_COUNT];
+
+        synchronized (segment) {
+            byte[] bytes = segment.classes.get(internalName);
+            if (bytes != null) {
+                hitCount.increment();
+                return bytes;
+            }
+
+            if (segment.missingClasses.get(internalName) != null) {
+                negativeHitCount.increment();
+                return null;
+            }
+        }
+
+        // Load without holding the lock. Two threads may occasionally load the same
+        // class, which is cheaper than blocking every other class of the segment.
+        missCount.increment();
+        byte[] bytes = delegate.getClass(internalName);
+
+        synchronized (segment) {
+            if (bytes == null) {
+                segment.missingClasses.put(internalName, Boolean.TRUE);
+            } else {
+                segment.put(internalName, bytes);
+            }
+        }
+
+        return bytes;
+    }
+
+    @Override
+    public long getClassHash(String name) {
+        String internalName = ClassSources.toInternalName(name);
+        Segment segment = segments[(internalName.hashCode() & 0x7FFFFFFF) % SEGMENT_COUNT];
+
+        synchronized (segment) {
+            if (segment.missingClasses.get(internalName) != null) {
+                negativeHitCount.increment();
+                return -1;
+            }
+        }
+
+        // Hashes are usually cheaper to get from the underlying provider than
+        // from the class file, and aren't worth caching
+        return delegate.getClassHash(internalName);
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getNegativeHitCount() {
+        return negativeHitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * @return the total size in bytes of the cached class files
+     */
+    public long getWeight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                weight += segment.weight;
+            }
+        }
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        return "CachingClassProvider{" +
+               "hits=" + getHitCount() +
+               ", negativeHits=" + getNegativeHitCount() +
+               ", misses=" + getMissCount() +
+               ", evictions=" + getEvictionCount() +
+               ", weight=" + getWeight() +
+               "}";
+    }
+
+    private class Segment {
+        private final long maxWeight;
+        private final Map<String, byte[]> classes = new LinkedHashMap<>(16, 0.75f, true);
+        private final Map<String, Boolean> missingClasses;
+        private long weight = 0;
+
+        private Segment(long maxWeight, int maxNegativeEntries) {
+            this.maxWeight = maxWeight;
+            missingClasses = new BoundedLruMap<>(maxNegativeEntries);
+        }
+
+        private void put(String name, byte[] bytes) {
+            // Caching a class larger than the whole budget would only evict everything else
+            if (bytes.length > maxWeight) {
+                return;
+            }
+
+            byte[] old = classes.put(name, bytes);
+            weight += bytes.length - (old == null ? 0 : old.length);
+
+            Iterator<byte[]> leastRecentlyUsed = classes.values().iterator();
+            while (weight > maxWeight) {
+                weight -= leastRecentlyUsed.next().length;
+                leastRecentlyUsed.remove();
+                evictionCount.increment();
+            }
+        }
+    }
+
+    private static class BoundedLruMap<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+        private final int maxSize;
+
+        private BoundedLruMap(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
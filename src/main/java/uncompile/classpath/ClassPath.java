@@ -0,0 +1,86 @@
+package uncompile.classpath;
+
+import uncompile.ClassProvider;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A class provider made of several class providers, searched in order. The
+ * first provider to find a class wins, like on a Java class path.
+ */
+public class ClassPath implements ClassProvider, Closeable {
+    private final List<ClassProvider> elements = new ArrayList<>();
+
+    public ClassPath add(ClassProvider element) {
+        elements.add(element);
+        return this;
+    }
+
+    /**
+     * Adds all entries of a class path string such as "a.jar:b/classes", in order.
+     */
+    public ClassPath addAll(String classPath) throws IOException {
+        for (String entry : classPath.split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                add(ClassSources.open(Paths.get(entry)));
+            }
+        }
+        return this;
+    }
+
+    public List<ClassProvider> getElements() {
+        return Collections.unmodifiableList(elements);
+    }
+
+    @Override
+    public byte[] getClass(String name) {
+        for (ClassProvider element : elements) {
+            byte[] bytes = element.getClass(name);
+            if (bytes != null) {
+                return bytes;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public long getClassHash(String name) {
+        for (ClassProvider element : elements) {
+            long hash = element.getClassHash(name);
+            if (hash != -1) {
+                return hash;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+        for (ClassProvider element : elements) {
+            if (element instanceof Closeable) {
+                try {
+                    ((Closeable) element).close();
+                } catch (IOException e) {
+                    if (exception == null) {
+                        exception = e;
+                    } else {
+                        exception.addSuppressed(e);
+                    }
+                }
+            }
+        }
+
+        if (exception != null) {
+            throw exception;
+        }
+    }
+}
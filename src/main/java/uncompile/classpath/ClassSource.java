@@ -0,0 +1,17 @@
+package uncompile.classpath;
+
+import uncompile.ClassProvider;
+
+import java.io.Closeable;
+import java.util.Collection;
+
+/**
+ * A class provider backed by a concrete location (a directory or an archive)
+ * whose classes can be enumerated.
+ */
+public interface ClassSource extends ClassProvider, Closeable {
+    /**
+     * @return the internal names (e.g. "java/lang/Object") of all classes in this source
+     */
+    Collection<String> getClassNames();
+}
@@ -0,0 +1,52 @@
+package uncompile.classpath;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public final class ClassSources {
+    private ClassSources() {}
+
+    /**
+     * Opens a directory, JAR, ZIP or JMOD file as a class source.
+     */
+    public static ClassSource open(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            return new DirectoryClassSource(path);
+        }
+
+        if (path.getFileName().toString().endsWith(".jmod")) {
+            return new JarClassSource(path, "classes/");
+        }
+
+        return new JarClassSource(path);
+    }
+
+    /**
+     * Opens the classes of the running JDK: its runtime image on Java 9 and
+     * later, or rt.jar on Java 8.
+     */
+    public static ClassSource openRuntime() throws IOException {
+        try {
+            return new JrtClassSource();
+        } catch (IOException e) {
+            Path rtJar = Paths.get(System.getProperty("java.home"), "lib", "rt.jar");
+            if (!Files.exists(rtJar)) {
+                NoSuchFileException exception = new NoSuchFileException(rtJar.toString(), null, "no JDK classes found");
+                exception.addSuppressed(e);
+                throw exception;
+            }
+            return new JarClassSource(rtJar);
+        }
+    }
+
+    /**
+     * Converts a class name in either binary ("a.b.C") or internal ("a/b/C")
+     * form to the internal form.
+     */
+    public static String toInternalName(String name) {
+        return name.replace('.', '/');
+    }
+}
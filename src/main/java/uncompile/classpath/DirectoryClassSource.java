@@ -0,0 +1,54 @@
+package uncompile.classpath;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class DirectoryClassSource implements ClassSource {
+    private final Path root;
+
+    public DirectoryClassSource(Path root) {
+        this.root = root;
+    }
+
+    @Override
+    public byte[] getClass(String name) {
+        Path file = root.resolve(ClassSources.toInternalName(name) + ".class");
+
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try {
+            return Files.readAllBytes(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Collection<String> getClassNames() {
+        List<String> names = new ArrayList<>();
+
+        try (Stream<Path> files = Files.walk(root)) {
+            files.forEach(file -> {
+                String relative = root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+                if (relative.endsWith(".class")) {
+                    names.add(relative.substring(0, relative.length() - ".class".length()));
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return names;
+    }
+
+    @Override
+    public void close() {}
+}
@@ -0,0 +1,344 @@
+package uncompile.classpath;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads classes from a memory-mapped JAR or ZIP file. The central directory is
+ * read once when the source is opened to build an index from class name to entry,
+ * so lookups don't scan the archive and the archive is never copied to the heap
+ * as a whole.
+ * <p>
+ * Archives with data prepended to them (such as JMOD files) are supported, and
+ * an entry prefix can be given for archives that don't store classes at the root.
+ * <p>
+ * Thread-safe: all reads from the mapped file are absolute.
+ */
+public class JarClassSource implements ClassSource {
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    // A 258-byte match can be coded in 2 bits
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private final Path path;
+    private final String entryPrefix;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    // Entry index -> entry data. Entries are kept in parallel arrays rather than
+    // objects since large JARs have tens of thousands of them.
+    private final Map<String, Integer> entryIndices;
+    private final int[] localHeaderOffsets;
+    private final int[] compressedSizes;
+    private final int[] uncompressedSizes;
+    private final short[] methods;
+    private final int[] crcs;
+
+    public JarClassSource(Path path) throws IOException {
+        this(path, "");
+    }
+
+    /**
+     * @param entryPrefix the directory classes are stored in, e.g. "classes/" for JMOD files
+     */
+    public JarClassSource(Path path, String entryPrefix) throws IOException {
+        this.path = path;
+        this.entryPrefix = entryPrefix;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new ZipException("archive larger than 2 GB: " + path);
+            }
+
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            // Find the central directory
+            int end = findEndOfCentralDirectory();
+            long entryCount = buffer.getShort(end + 10) & 0xFFFF;
+            long centralDirectorySize = buffer.getInt(end + 12) & 0xFFFFFFFFL;
+            long centralDirectoryOffset = buffer.getInt(end + 16) & 0xFFFFFFFFL;
+            long centralDirectoryEnd = end;
+
+            int locator = end - ZIP64_LOCATOR_SIZE;
+            if (locator >= 0 && buffer.getInt(locator) == ZIP64_LOCATOR_SIGNATURE) {
+                int zip64End = toOffset(buffer.getLong(locator + 8));
+                if (buffer.getInt(zip64End) != ZIP64_END_SIGNATURE) {
+                    throw new ZipException("bad ZIP64 end of central directory: " + path);
+                }
+                entryCount = buffer.getLong(zip64End + 32);
+                centralDirectorySize = buffer.getLong(zip64End + 40);
+                centralDirectoryOffset = buffer.getLong(zip64End + 48);
+                centralDirectoryEnd = zip64End;
+            }
+
+            // Offsets in the archive are relative to its start, which isn't the start
+            // of the file if something was prepended to it
+            long archiveStart = centralDirectoryEnd - centralDirectorySize - centralDirectoryOffset;
+            if (archiveStart < 0) {
+                throw new ZipException("bad central directory offset: " + path);
+            }
+
+            // Index class entries
+            int count = toOffset(entryCount);
+            entryIndices = new HashMap<>(count * 4 / 3 + 1);
+            localHeaderOffsets = new int[count];
+            compressedSizes = new int[count];
+            uncompressedSizes = new int[count];
+            methods = new short[count];
+            crcs = new int[count];
+
+            int pos = toOffset(archiveStart + centralDirectoryOffset);
+            int classCount = 0;
+            for (long i = 0; i < entryCount; i++) {
+                if (buffer.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+                    throw new ZipException("bad central directory entry: " + path);
+                }
+
+                int method = buffer.getShort(pos + 10) & 0xFFFF;
+                int crc = buffer.getInt(pos + 16);
+                long compressedSize = buffer.getInt(pos + 20) & 0xFFFFFFFFL;
+                long uncompressedSize = buffer.getInt(pos + 24) & 0xFFFFFFFFL;
+                int nameLength = buffer.getShort(pos + 28) & 0xFFFF;
+                int extraLength = buffer.getShort(pos + 30) & 0xFFFF;
+                int commentLength = buffer.getShort(pos + 32) & 0xFFFF;
+                long localHeaderOffset = buffer.getInt(pos + 42) & 0xFFFFFFFFL;
+
+                String name = readName(pos + CENTRAL_HEADER_SIZE, nameLength);
+                if (name.startsWith(entryPrefix) && name.endsWith(".class")) {
+                    if (uncompressedSize == 0xFFFFFFFFL || compressedSize == 0xFFFFFFFFL || localHeaderOffset == 0xFFFFFFFFL) {
+                        long[] sizes = {uncompressedSize, compressedSize, localHeaderOffset};
+                        readZip64Extra(pos + CENTRAL_HEADER_SIZE + nameLength, extraLength, sizes);
+                        uncompressedSize = sizes[0];
+                        compressedSize = sizes[1];
+                        localHeaderOffset = sizes[2];
+                    }
+
+                    localHeaderOffsets[classCount] = toOffset(archiveStart + localHeaderOffset);
+                    compressedSizes[classCount] = toOffset(compressedSize);
+                    uncompressedSizes[classCount] = toSize(uncompressedSize, compressedSize);
+                    methods[classCount] = (short) method;
+                    crcs[classCount] = crc;
+                    entryIndices.put(name.substring(entryPrefix.length(), name.length() - ".class".length()), classCount);
+                    classCount++;
+                }
+
+                pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private int findEndOfCentralDirectory() throws ZipException {
+        int limit = Math.max(0, buffer.limit() - END_SIZE - MAX_COMMENT_SIZE);
+        for (int pos = buffer.limit() - END_SIZE; pos >= limit; pos--) {
+            if (buffer.getInt(pos) == END_SIGNATURE) {
+                return pos;
+            }
+        }
+
+        throw new ZipException("end of central directory not found: " + path);
+    }
+
+    private void readZip64Extra(int pos, int length, long[] sizes) throws ZipException {
+        int end = pos + length;
+        while (pos + 4 <= end) {
+            int tag = buffer.getShort(pos) & 0xFFFF;
+            int size = buffer.getShort(pos + 2) & 0xFFFF;
+            if (tag == 0x0001) {
+                // Only the values that overflowed are present, in this order
+                int valuePos = pos + 4;
+                for (int i = 0; i < sizes.length; i++) {
+                    if (sizes[i] == 0xFFFFFFFFL) {
+                        sizes[i] = buffer.getLong(valuePos);
+                        valuePos += 8;
+                    }
+                }
+                return;
+            }
+            pos += 4 + size;
+        }
+
+        throw new ZipException("missing ZIP64 extra field: " + path);
+    }
+
+    private String readName(int pos, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(pos);
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int toOffset(long value) throws ZipException {
+        if (value < 0 || value > buffer.limit()) {
+            throw new ZipException("bad offset or size " + value + ": " + path);
+        }
+        return (int) value;
+    }
+
+    private int toSize(long value, long compressedSize) throws ZipException {
+        // Compressed entries can be larger than the archive once inflated, but only
+        // by as much as DEFLATE can compress
+        if (value < 0 || value > Math.min(compressedSize * MAX_DEFLATE_RATIO, Integer.MAX_VALUE - 8)) {
+            throw new ZipException("bad size " + value + ": " + path);
+        }
+        return (int) value;
+    }
+
+    @Override
+    public byte[] getClass(String name) {
+        ByteBuffer classBuffer = getClassBuffer(name);
+        if (classBuffer == null) {
+            return null;
+        }
+
+        if (classBuffer.hasArray() && classBuffer.arrayOffset() == 0 && classBuffer.array().length == classBuffer.remaining()) {
+            return classBuffer.array();
+        }
+
+        byte[] bytes = new byte[classBuffer.remaining()];
+        classBuffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns the CRC-32 stored in the central directory, so the class doesn't
+     * need to be read.
+     */
+    @Override
+    public long getClassHash(String name) {
+        Integer index = entryIndices.get(ClassSources.toInternalName(name));
+        return index == null ? -1 : crcs[index] & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Gets the contents of a class file without copying it if possible. Stored
+     * entries are returned as a read-only view of the mapped archive, deflated
+     * entries are inflated into a new heap buffer. Both are checked against the
+     * CRC-32 from the central directory.
+     *
+     * @return the class file, or null if the archive doesn't contain the class
+     */
+    public ByteBuffer getClassBuffer(String name) {
+        Integer index = entryIndices.get(ClassSources.toInternalName(name));
+        if (index == null) {
+            return null;
+        }
+
+        try {
+            int localHeaderOffset = localHeaderOffsets[index];
+            toOffset((long) localHeaderOffset + LOCAL_HEADER_SIZE);
+            if (buffer.getInt(localHeaderOffset) != LOCAL_HEADER_SIGNATURE) {
+                throw new ZipException("bad local header for " + name + ": " + path);
+            }
+
+            // The local extra field may differ from the one in the central directory
+            int nameLength = buffer.getShort(localHeaderOffset + 26) & 0xFFFF;
+            int extraLength = buffer.getShort(localHeaderOffset + 28) & 0xFFFF;
+            int dataOffset = toOffset((long) localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength);
+            int dataEnd = toOffset((long) dataOffset + compressedSizes[index]);
+
+            ByteBuffer data = buffer.duplicate();
+            data.position(dataOffset);
+            data.limit(dataEnd);
+
+            ByteBuffer result;
+            switch (methods[index]) {
+                case METHOD_STORED: {
+                    result = data.slice().asReadOnlyBuffer();
+                    break;
+                }
+
+                case METHOD_DEFLATED: {
+                    result = ByteBuffer.wrap(inflate(data, uncompressedSizes[index], name));
+                    break;
+                }
+
+                default: {
+                    throw new ZipException("unsupported compression method " + methods[index] + " for " + name + ": " + path);
+                }
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(result.duplicate());
+            if ((int) crc.getValue() != crcs[index]) {
+                throw new ZipException("CRC mismatch for " + name + ": " + path);
+            }
+
+            return result;
+        } catch (ZipException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[] inflate(ByteBuffer data, int uncompressedSize, String name) throws ZipException {
+        // Inflater only accepts arrays in Java 8
+        byte[] compressed = new byte[data.remaining()];
+        data.get(compressed);
+
+        byte[] result = new byte[uncompressedSize];
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            int length = 0;
+            while (length < uncompressedSize) {
+                int n = inflater.inflate(result, length, uncompressedSize - length);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+
+            if (length != uncompressedSize) {
+                throw new ZipException("truncated entry for " + name + ": " + path);
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("corrupt entry for " + name + ": " + path + " (" + e.getMessage() + ")");
+        }
+
+        return result;
+    }
+
+    @Override
+    public Collection<String> getClassNames() {
+        return Collections.unmodifiableSet(entryIndices.keySet());
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,112 @@
+package uncompile.classpath;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Reads classes from the runtime image of the running JDK (Java 9 and later)
+ * through the "jrt:/" file system.
+ */
+public class JrtClassSource implements ClassSource {
+    private static final String RUNTIME_VERSION = System.getProperty("java.runtime.version");
+
+    private final FileSystem fileSystem;
+    private final Map<String, List<String>> packageToModules = new HashMap<>();
+
+    public JrtClassSource() throws IOException {
+        try {
+            fileSystem = FileSystems.getFileSystem(URI.create("jrt:/"));
+        } catch (ProviderNotFoundException | FileSystemNotFoundException e) {
+            throw new IOException("the running JDK has no runtime image", e);
+        }
+
+        // Indexing packages avoids searching every module for a class. "/packages/<package>/<module>"
+        // exists for every module containing the package or one of its subpackages, so
+        // there can be more than one candidate module.
+        try (DirectoryStream<Path> packages = Files.newDirectoryStream(fileSystem.getPath("/packages"))) {
+            for (Path packagePath : packages) {
+                try (DirectoryStream<Path> modules = Files.newDirectoryStream(packagePath)) {
+                    for (Path module : modules) {
+                        packageToModules.computeIfAbsent(packagePath.getFileName().toString(), k -> new ArrayList<>())
+                                        .add(module.getFileName().toString());
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public byte[] getClass(String name) {
+        String internalName = ClassSources.toInternalName(name);
+        int packageSeparator = internalName.lastIndexOf('/');
+        String packageName = packageSeparator == -1 ? "" : internalName.substring(0, packageSeparator).replace('/', '.');
+
+        for (String module : packageToModules.getOrDefault(packageName, Collections.emptyList())) {
+            Path file = fileSystem.getPath("/modules", module, internalName + ".class");
+            try {
+                return Files.readAllBytes(file);
+            } catch (NoSuchFileException e) {
+                // Try the next module
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Classes in a runtime image only change with the runtime version, so the
+     * hash is derived from the version instead of reading the class.
+     */
+    @Override
+    public long getClassHash(String name) {
+        String internalName = ClassSources.toInternalName(name);
+        int packageSeparator = internalName.lastIndexOf('/');
+        String packageName = packageSeparator == -1 ? "" : internalName.substring(0, packageSeparator).replace('/', '.');
+
+        for (String module : packageToModules.getOrDefault(packageName, Collections.emptyList())) {
+            if (Files.exists(fileSystem.getPath("/modules", module, internalName + ".class"))) {
+                return ((long) RUNTIME_VERSION.hashCode() << 32 | internalName.hashCode() & 0xFFFFFFFFL) & Long.MAX_VALUE;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public Collection<String> getClassNames() {
+        List<String> names = new ArrayList<>();
+
+        try (DirectoryStream<Path> modules = Files.newDirectoryStream(fileSystem.getPath("/modules"))) {
+            for (Path module : modules) {
+                try (Stream<Path> files = Files.walk(module)) {
+                    files.forEach(file -> {
+                        String relative = module.relativize(file).toString();
+                        if (relative.endsWith(".class") && !relative.equals("module-info.class")) {
+                            names.add(relative.substring(0, relative.length() - ".class".length()));
+                        }
+                    });
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return names;
+    }
+
+    @Override
+    public void close() {
+        // The jrt file system is shared and can't be closed
+    }
+}
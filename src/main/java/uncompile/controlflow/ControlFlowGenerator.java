@@ -1,15 +1,20 @@
 package uncompile.controlflow;
 
 import uncompile.ast.Block;
+import uncompile.metrics.Metrics;
+import uncompile.metrics.MetricsListener;
 import uncompile.transformation.*;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 public final class ControlFlowGenerator {
     private static final Transformation[] TRANSFORMATIONS = {
             new RemoveSelfAssignmentsTransformation(),
-            new GenerateConstructorCallsTransform(),
-            new InlineSingleUseVariablesTransformation(),
-            new InlineAliasVariablesTransformation()
+            new GenerateConstructorCallsTransform()
     };
+    private static final String[] TRANSFORMATION_NAMES = Metrics.getPhaseNames(TRANSFORMATIONS);
 
     private final ControlFlowGraph graph;
 
@@ -17,16 +22,48 @@ public final class ControlFlowGenerator {
         this.graph = graph;
     }
 
+    /**
+     * @return the transformations {@link #createCode} applies to the block of each node, in order
+     */
+    public static List<Transformation> getTransformations() {
+        return Collections.unmodifiableList(Arrays.asList(TRANSFORMATIONS));
+    }
+
     public Block createCode() {
+        MetricsListener metrics = Metrics.getListener();
+
         for (ControlFlowNode node : this.graph.getNodes()) {
-            for (Transformation transformation : TRANSFORMATIONS) {
-                transformation.run(node.block);
+            for (int i = 0; i < TRANSFORMATIONS.length; i++) {
+                metrics.phaseStarted(TRANSFORMATION_NAMES[i]);
+                TRANSFORMATIONS[i].run(node.block);
+                metrics.phaseFinished(TRANSFORMATION_NAMES[i]);
             }
         }
 
+        metrics.phaseStarted("calculateDominance");
         graph.calculateDominance();
+        metrics.nodeCount(graph.getNodes().size());
+        metrics.phaseFinished("calculateDominance");
+
+        metrics.phaseStarted("calculateDominanceFrontier");
         graph.calculateDominanceFrontier();
-        System.out.println(graph);
-        return new Block();
+        metrics.nodeCount(graph.getNodes().size());
+        metrics.phaseFinished("calculateDominanceFrontier");
+
+        metrics.phaseStarted("propagateCopies");
+        CopyPropagation.run(graph);
+        metrics.nodeCount(graph.getNodes().size());
+        metrics.phaseFinished("propagateCopies");
+
+        metrics.phaseStarted("findLoops");
+        graph.getLoops();
+        metrics.nodeCount(graph.getNodes().size());
+        metrics.phaseFinished("findLoops");
+
+        metrics.phaseStarted("structure");
+        Block block = new ControlFlowStructurer(graph).createCode();
+        metrics.nodeCount(graph.getNodes().size());
+        metrics.phaseFinished("structure");
+        return block;
     }
 }
@@ -1,135 +1,168 @@
 package uncompile.controlflow;
 
 import uncompile.ast.Statement;
+import uncompile.metrics.Metrics;
 import uncompile.util.IndentingPrintWriter;
 
 import java.io.StringWriter;
 import java.util.*;
 
+/**
+ * A control flow graph of the blocks of a method. Analyses keep no state in the
+ * nodes, and their results are cached until the graph changes, so several
+ * analyses can run at once on different threads as long as the graph isn't
+ * being modified.
+ */
 public final class ControlFlowGraph {
     public ControlFlowNode entryPoint = null;
-    private final Set<ControlFlowNode> nodes = new LinkedHashSet<>();
+    private final List<ControlFlowNode> nodes = new ArrayList<>();
     private int nodeIndex = 0;
 
+    // Analyses of the current edges, discarded when the graph changes
+    private volatile DenseGraph denseGraph = null;
+    private volatile Dominators dominators = null;
+    private volatile LoopForest loops = null;
+
     public final ControlFlowNode getEntryPoint() {
         return entryPoint;
     }
 
-    public final Set<ControlFlowNode> getNodes() {
+    /**
+     * @return the nodes, ordered by index
+     */
+    public final List<ControlFlowNode> getNodes() {
         return nodes;
     }
 
-    public final void resetVisited() {
-        for (ControlFlowNode node : nodes) {
-            node.visited = false;
+    /**
+     * @return a snapshot of the current edges of the graph, in which the id of each
+     *         node is its index
+     */
+    public DenseGraph getDenseGraph() {
+        DenseGraph denseGraph = this.denseGraph;
+        if (denseGraph == null) {
+            denseGraph = DenseGraph.of(nodes, entryPoint);
+            this.denseGraph = denseGraph;
         }
+        return denseGraph;
     }
 
-    public final void calculateDominance() {
-        ControlFlowNode entryPoint = getEntryPoint();
-
-        entryPoint.immediateDominator = entryPoint;
-
-        boolean[] changed = {true};
-
-        while (changed[0]) {
-            changed[0] = false;
-            resetVisited();
-
-            entryPoint.traversePreOrder(
-                    controlFlowNode -> controlFlowNode.outgoing,
-                    (ControlFlowNode b) -> {
-                        if (b == entryPoint) {
-                            return;
-                        }
-
-                        ControlFlowNode newImmediateDominator = null;
-
-                        for (ControlFlowNode p : b.incoming) {
-                            if (p.visited && p != b) {
-                                newImmediateDominator = p;
-                                break;
-                            }
-                        }
-
-                        if (newImmediateDominator == null) {
-                            throw new IllegalStateException("Could not compute new immediate dominator!");
-                        }
-
-                        for (ControlFlowNode p : b.incoming) {
-                            if (p != b && p.immediateDominator != null) {
-                                newImmediateDominator = findCommonDominator(p, newImmediateDominator);
-                            }
-                        }
-
-                        if (b.immediateDominator != newImmediateDominator) {
-                            b.immediateDominator = newImmediateDominator;
-                            changed[0] = true;
-                        }
-                    }
-            );
+    public Dominators getDominators() {
+        Dominators dominators = this.dominators;
+        if (dominators == null) {
+            dominators = Dominators.calculate(getDenseGraph());
+            this.dominators = dominators;
+        }
+        return dominators;
+    }
+
+    public LoopForest getLoops() {
+        LoopForest loops = this.loops;
+        if (loops == null) {
+            loops = LoopForest.calculate(getDenseGraph());
+            this.loops = loops;
         }
+        return loops;
+    }
+
+    /**
+     * Called when nodes or edges are added.
+     */
+    final void invalidate() {
+        denseGraph = null;
+        dominators = null;
+        loops = null;
+    }
 
-        entryPoint.immediateDominator = null;
+    /**
+     * Calculates the dominator tree, and sets the immediate dominator of each node.
+     * Unreachable nodes get no immediate dominator.
+     */
+    public final void calculateDominance() {
+        Dominators dominators = getDominators();
+        Metrics.getListener().iterations(dominators.getIterations());
 
         for (ControlFlowNode node : nodes) {
-            ControlFlowNode immediateDominator = node.immediateDominator;
-            if (immediateDominator != null) {
-                immediateDominator.immediateDominating.add(node);
-            }
+            int immediateDominator = dominators.getImmediateDominator(node.index);
+            node.immediateDominator = immediateDominator == -1 ? null : nodes.get(immediateDominator);
         }
     }
 
     public final void calculateDominanceFrontier() {
-        resetVisited();
-
-        getEntryPoint().traversePostOrder(
-                controlFlowNode -> controlFlowNode.immediateDominating,
-                n -> {
-                    Set<ControlFlowNode> dominanceFrontier = n.dominanceFrontier;
-
-                    dominanceFrontier.clear();
-
-                    for (ControlFlowNode s : n.outgoing) {
-                        if (s.immediateDominator != n) {
-                            dominanceFrontier.add(s);
-                        }
-                    }
-
-                    for (ControlFlowNode dominated : n.immediateDominating) {
-                        for (ControlFlowNode p : dominated.dominanceFrontier) {
-                            if (p.immediateDominator != n) {
-                                dominanceFrontier.add(p);
-                            }
-                        }
-                    }
-                }
-        );
+        getDominators().calculateFrontiers();
     }
 
-    public static ControlFlowNode findCommonDominator(ControlFlowNode a, ControlFlowNode b) {
-        Set<ControlFlowNode> path1 = new LinkedHashSet<>();
-
-        ControlFlowNode node1 = a;
-        ControlFlowNode node2 = b;
+    /**
+     * @return the nodes a node immediately dominates, ordered by index
+     */
+    public List<ControlFlowNode> getImmediatelyDominated(ControlFlowNode node) {
+        Dominators dominators = getDominators();
+        List<ControlFlowNode> dominated = new ArrayList<>(dominators.getChildCount(node.index));
+        for (int i = 0; i < dominators.getChildCount(node.index); i++) {
+            dominated.add(nodes.get(dominators.getChild(node.index, i)));
+        }
+        return dominated;
+    }
 
-        while (node1 != null && path1.add(node1)) {
-            node1 = node1.immediateDominator;
+    /**
+     * @return the dominance frontier of a node, ordered by index
+     */
+    public List<ControlFlowNode> getDominanceFrontier(ControlFlowNode node) {
+        BitSet frontier = getDominators().getFrontier(node.index);
+        List<ControlFlowNode> result = new ArrayList<>(frontier.cardinality());
+        for (int i = frontier.nextSetBit(0); i >= 0; i = frontier.nextSetBit(i + 1)) {
+            result.add(nodes.get(i));
         }
+        return result;
+    }
 
-        while (node2 != null) {
-            if (path1.contains(node2)) {
-                return node2;
-            }
-            node2 = node2.immediateDominator;
+    /**
+     * @return the header of the innermost loop a node is in, or null if it's in no loop
+     */
+    public ControlFlowNode getLoopHeader(ControlFlowNode node) {
+        LoopForest loops = getLoops();
+        int loop = loops.getLoop(node.index);
+        return loop == -1 ? null : nodes.get(loops.getHeader(loop));
+    }
+
+    /**
+     * @return the nodes of the loop a node is the header of, including nested loops,
+     *         ordered by index, or an empty list if it's not a loop header
+     */
+    public List<ControlFlowNode> getLoopBody(ControlFlowNode header) {
+        LoopForest loops = getLoops();
+        int loop = loops.getHeadedLoop(header.index);
+        if (loop == -1) {
+            return Collections.emptyList();
         }
 
-        throw new IllegalStateException("No common dominator found!");
+        int[] body = loops.getBody(loop);
+        Arrays.sort(body);
+        return getNodes(body);
+    }
+
+    /**
+     * @return the nodes outside of the loop a node is the header of that the loop
+     *         has edges to, ordered by index, or an empty list if it's not a loop header
+     */
+    public List<ControlFlowNode> getLoopExits(ControlFlowNode header) {
+        LoopForest loops = getLoops();
+        int loop = loops.getHeadedLoop(header.index);
+        return loop == -1 ? Collections.emptyList() : getNodes(loops.getExits(loop));
+    }
+
+    private List<ControlFlowNode> getNodes(int[] ids) {
+        List<ControlFlowNode> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            result.add(nodes.get(id));
+        }
+        return result;
     }
 
     public ControlFlowNode createNode() {
-        ControlFlowNode node = new ControlFlowNode(nodeIndex++);
+        ControlFlowNode node = new ControlFlowNode(this, nodeIndex++);
         nodes.add(node);
+        invalidate();
 
         if (entryPoint == null) {
             entryPoint = node;
@@ -179,7 +212,7 @@ public final class ControlFlowGraph {
 
             for (ControlFlowNode outgoing : node.outgoing) {
                 String attrs = colors.containsKey(outgoing) ? "color = " + colors.get(outgoing) : "";
-                if (node.immediateDominating.contains(outgoing)) {
+                if (outgoing.immediateDominator == node) {
                     attrs+= " " + "style = bold";
                 }
                 output.println("\"" + ("node" + node.index) + "\" -> \"" + ("node" + outgoing.index) + "\" [ " + attrs + "]");
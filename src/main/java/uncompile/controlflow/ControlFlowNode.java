@@ -1,33 +1,32 @@
 package uncompile.controlflow;
 
 import uncompile.ast.Block;
+import uncompile.util.Traversal;
 
 import java.util.ArrayList;
-import java.util.LinkedHashSet;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 public final class ControlFlowNode implements Comparable<ControlFlowNode> {
+    private final ControlFlowGraph graph;
     public final int index;
-    public boolean visited = false;
 
     // Graph
     public final List<ControlFlowNode> incoming = new ArrayList<>();
     public final List<ControlFlowNode> outgoing = new ArrayList<>();
 
-    // Dominance
+    // Dominance, see ControlFlowGraph.calculateDominance
     public ControlFlowNode immediateDominator = null;
-    public final List<ControlFlowNode> immediateDominating = new ArrayList<>();
-    public final Set<ControlFlowNode> dominanceFrontier = new LinkedHashSet<>();
 
     // Code
     public Block block = null;
     public Jump jump = null;
 
 
-    public ControlFlowNode(int index) {
+    ControlFlowNode(ControlFlowGraph graph, int index) {
+        this.graph = graph;
         this.index = index;
     }
 
@@ -42,6 +41,8 @@ public final class ControlFlowNode implements Comparable<ControlFlowNode> {
             outgoing.add(node);
             node.incoming.add(this);
         }
+
+        graph.invalidate();
     }
 
     public final boolean isReachable() {
@@ -49,30 +50,27 @@ public final class ControlFlowNode implements Comparable<ControlFlowNode> {
     }
 
     public final void traversePreOrder(Function<ControlFlowNode, Iterable<ControlFlowNode>> children, Consumer<ControlFlowNode> visitor) {
-        if (visited) {
-            return;
-        }
-
-        visited = true;
-        visitor.accept(this);
-
-        for (ControlFlowNode child : children.apply(this)) {
-            child.traversePreOrder(children, visitor);
-        }
+        traverse(children, visitor, null);
     }
 
     public final void traversePostOrder(Function<ControlFlowNode, Iterable<ControlFlowNode>> children, Consumer<ControlFlowNode> visitor) {
-        if (visited) {
-            return;
-        }
-
-        visited = true;
-
-        for (ControlFlowNode child : children.apply(this)) {
-            child.traversePostOrder(children, visitor);
-        }
+        traverse(children, null, visitor);
+    }
 
-        visitor.accept(this);
+    /**
+     * Each traversal has its own set of visited nodes, so traversals can be nested
+     * or run on several threads at once.
+     */
+    private void traverse(Function<ControlFlowNode, Iterable<ControlFlowNode>> children, Consumer<ControlFlowNode> preVisitor, Consumer<ControlFlowNode> postVisitor) {
+        BitSet visited = new BitSet(graph.getNodes().size());
+        visited.set(index);
+        Traversal.depthFirst(this, children, (parent, child) -> {
+            if (visited.get(child.index)) {
+                return false;
+            }
+            visited.set(child.index);
+            return true;
+        }, preVisitor, postVisitor);
     }
 
     public final boolean dominates(ControlFlowNode node) {
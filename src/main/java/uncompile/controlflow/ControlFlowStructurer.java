@@ -0,0 +1,425 @@
+package uncompile.controlflow;
+
+import uncompile.DecompilationNotPossibleException;
+import uncompile.ast.*;
+import uncompile.astbuilder.LabeledStatement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates structured code from a control flow graph in a single walk over its
+ * dominator tree (Ramsey, "Beyond Relooper: Recursive Translation of Unstructured
+ * Control Flow to Structured Control Flow"). The code of each node is placed in
+ * the code of its immediate dominator:
+ * - A loop header becomes a labeled while (true) loop, and back edges to it
+ * become continue statements.
+ * - A node with several forward predecessors (a merge node) is placed after a
+ * labeled block containing the code of the rest of its dominator, and edges to
+ * it become break statements. The same happens to nodes outside of a loop
+ * their dominator is in, which are placed after the outermost such loop.
+ * - Any other node is placed where the only edge to it is taken.
+ * <p>
+ * Since the code of a node always ends with a jump, return or throw, the result
+ * is then tidied up locally: jumps to where control flows anyway are removed,
+ * if statements ending with a break become if-else statements, and loops that
+ * start or end with a conditional exit become while or do-while loops. Labels
+ * that end up unused aren't added.
+ * <p>
+ * Irreducible loops can't be structured without duplicating code, so they make
+ * decompilation fail.
+ */
+public final class ControlFlowStructurer {
+    private final DenseGraph graph;
+    private final LoopForest loops;
+    private final int[] postOrderNumbers;
+
+    // Followers are the nodes reached with a break, ordered by reverse postorder,
+    // in compressed sparse rows by the node they are placed after
+    private final boolean[] isFollower;
+    private final int[] followerOffsets;
+    private final int[] followers;
+
+    // Labels and the number of jumps using them, by target node
+    private final String[] breakLabels;
+    private final String[] continueLabels;
+    private final int[] breakCounts;
+    private final int[] continueCounts;
+    private int labelCount = 0;
+
+    public ControlFlowStructurer(ControlFlowGraph controlFlowGraph) {
+        graph = controlFlowGraph.getDenseGraph();
+        loops = controlFlowGraph.getLoops();
+        postOrderNumbers = graph.getPostOrderNumbers();
+        Dominators dominators = controlFlowGraph.getDominators();
+
+        for (int loop = 0; loop < loops.getLoopCount(); loop++) {
+            if (loops.isIrreducible(loop)) {
+                throw new DecompilationNotPossibleException("irreducible loop at node " + loops.getHeader(loop));
+            }
+        }
+
+        int size = graph.size();
+        int[] postOrder = graph.getPostOrder();
+        isFollower = new boolean[size];
+        int[] placements = new int[size];
+        Arrays.fill(placements, -1);
+        followerOffsets = new int[size + 1];
+
+        int[] lastSuccessor = new int[size];
+        Arrays.fill(lastSuccessor, -1);
+        for (int node : postOrder) {
+            int dominator = dominators.getImmediateDominator(node);
+            if (dominator == -1) {
+                continue;
+            }
+
+            int forwardPredecessors = 0;
+            for (int i = 0; i < graph.getPredecessorCount(node); i++) {
+                int predecessor = graph.getPredecessor(node, i);
+                if (postOrderNumbers[predecessor] > postOrderNumbers[node] && lastSuccessor[predecessor] != node) {
+                    lastSuccessor[predecessor] = node;
+                    forwardPredecessors++;
+                }
+            }
+
+            // Leaving loops the dominator is in: place the node after the outermost of them
+            int placement = dominator;
+            int loop = loops.getLoop(dominator);
+            while (loop != -1 && !loops.contains(loop, node)) {
+                placement = loops.getHeader(loop);
+                isFollower[node] = true;
+                loop = loops.getParent(loop);
+            }
+            if (forwardPredecessors > 1) {
+                isFollower[node] = true;
+            }
+
+            if (isFollower[node]) {
+                placements[node] = placement;
+                followerOffsets[placement + 1]++;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            followerOffsets[i + 1] += followerOffsets[i];
+        }
+
+        followers = new int[followerOffsets[size]];
+        int[] next = Arrays.copyOf(followerOffsets, size);
+        for (int i = postOrder.length - 1; i >= 0; i--) {
+            int node = postOrder[i];
+            if (isFollower[node]) {
+                followers[next[placements[node]]++] = node;
+            }
+        }
+
+        breakLabels = new String[size];
+        continueLabels = new String[size];
+        breakCounts = new int[size];
+        continueCounts = new int[size];
+    }
+
+    public Block createCode() {
+        Block block = new Block();
+        emitTree(graph.getEntry(), block.statements);
+        return block;
+    }
+
+    /**
+     * Emits the code of a node, the nodes placed in it and the nodes they are followed by.
+     */
+    private void emitTree(int node, List<Statement> out) {
+        while (node != -1) {
+            node = emitNode(node, out);
+        }
+    }
+
+    /**
+     * Emits the code of a node and the nodes placed in it, except for the node
+     * the code is followed by, which is returned (or -1 if the code doesn't
+     * complete normally). This keeps long chains of nodes from recursing.
+     */
+    private int emitNode(int node, List<Statement> out) {
+        int start = followerOffsets[node];
+        int end = followerOffsets[node + 1];
+        boolean isLoopHeader = loops.isHeader(node);
+        if (end == start && !isLoopHeader) {
+            return emitCode(node, out);
+        }
+
+        // Followers inside the loop of a loop header are placed inside the loop,
+        // the others after it. The first one after it is reached by breaking out
+        // of the loop.
+        int[] inner = new int[end - start];
+        int[] outer = new int[end - start];
+        int innerCount = 0;
+        int outerCount = 0;
+        int loop = isLoopHeader ? loops.getHeadedLoop(node) : -1;
+        for (int i = start; i < end; i++) {
+            int follower = followers[i];
+            if (loop == -1 || loops.contains(loop, follower)) {
+                inner[innerCount++] = follower;
+                breakLabels[follower] = "label" + labelCount++;
+            } else {
+                outer[outerCount++] = follower;
+                breakLabels[follower] = outerCount == 1 ? null : "label" + labelCount++;
+            }
+        }
+        String loopLabel = null;
+        if (isLoopHeader) {
+            loopLabel = "loop" + labelCount++;
+            continueLabels[node] = loopLabel;
+            if (outerCount > 0) {
+                breakLabels[outer[0]] = loopLabel;
+            }
+        }
+
+        // Wrap the code in the blocks and loop, innermost first, each followed by
+        // its follower, except for the outermost one
+        List<Statement> statements = new ArrayList<>();
+        emitTree(emitCode(node, statements), statements);
+        for (int i = 0; i < innerCount; i++) {
+            statements = closeBlock(inner[i], statements);
+            if (!isLoopHeader && i == innerCount - 1) {
+                out.addAll(statements);
+                return inner[i];
+            }
+            emitTree(inner[i], statements);
+        }
+
+        statements = closeLoop(node, outerCount > 0 ? outer[0] : -1, statements);
+        for (int i = 0; i < outerCount; i++) {
+            if (i > 0) {
+                statements = closeBlock(outer[i], statements);
+            }
+            if (i == outerCount - 1) {
+                out.addAll(statements);
+                return outer[i];
+            }
+            emitTree(outer[i], statements);
+        }
+        out.addAll(statements);
+        return -1;
+    }
+
+    /**
+     * Emits the block and jump of a node.
+     *
+     * @return the node to inline after the code, or -1
+     */
+    private int emitCode(int node, List<Statement> out) {
+        ControlFlowNode controlFlowNode = graph.getNode(node);
+        out.addAll(controlFlowNode.block.statements);
+        Jump jump = controlFlowNode.jump;
+
+        if (jump instanceof Jump.Unconditional) {
+            return emitJump(node, ((Jump.Unconditional) jump).nextNode.index, out);
+        }
+
+        if (jump instanceof Jump.Conditional) {
+            Jump.Conditional conditional = (Jump.Conditional) jump;
+            Expression condition = conditional.condition;
+            int trueNode = conditional.trueNode.index;
+            int falseNode = conditional.falseNode.index;
+            if (trueNode == falseNode) {
+                out.add(new If(condition, new Block(), null));
+                return emitJump(node, trueNode, out);
+            }
+
+            // Prefer an if statement that only contains a jump
+            if (!isJump(node, trueNode) && isJump(node, falseNode)) {
+                condition = AstUtil.negate(condition);
+                int temp = trueNode;
+                trueNode = falseNode;
+                falseNode = temp;
+            }
+
+            Block ifBlock = new Block();
+            emitTree(emitJump(node, trueNode, ifBlock.statements), ifBlock.statements);
+            out.add(new If(condition, ifBlock, null));
+            return emitJump(node, falseNode, out);
+        }
+
+        if (jump instanceof Jump.Switch) {
+            Jump.Switch switchJump = (Jump.Switch) jump;
+
+            // Cases with the same target fall through to it
+            Map<Integer, List<Expression>> casesByTarget = new LinkedHashMap<>();
+            for (int i = 0; i < switchJump.cases.length; i++) {
+                casesByTarget.computeIfAbsent(switchJump.caseNodes[i].index, k -> new ArrayList<>()).add(switchJump.cases[i]);
+            }
+            casesByTarget.computeIfAbsent(switchJump.defaultNode.index, k -> new ArrayList<>()).add(null);
+
+            List<Expression> cases = new ArrayList<>();
+            List<Block> branches = new ArrayList<>();
+            for (Map.Entry<Integer, List<Expression>> entry : casesByTarget.entrySet()) {
+                for (int i = 0; i < entry.getValue().size() - 1; i++) {
+                    cases.add(entry.getValue().get(i));
+                    branches.add(new Block());
+                }
+
+                Block branch = new Block();
+                emitTree(emitJump(node, entry.getKey(), branch.statements), branch.statements);
+                cases.add(entry.getValue().get(entry.getValue().size() - 1));
+                branches.add(branch);
+            }
+
+            out.add(new Switch(switchJump.expression, cases.toArray(new Expression[0]), branches.toArray(new Block[0])));
+            return -1;
+        }
+
+        return -1;
+    }
+
+    private boolean isJump(int source, int target) {
+        return postOrderNumbers[source] <= postOrderNumbers[target] || isFollower[target];
+    }
+
+    /**
+     * Emits the jump along an edge, if it needs one.
+     *
+     * @return the target if it is to be inlined, or -1
+     */
+    private int emitJump(int source, int target, List<Statement> out) {
+        if (postOrderNumbers[source] <= postOrderNumbers[target]) {
+            continueCounts[target]++;
+            out.add(new ExpressionStatement(new Continue(continueLabels[target])));
+            return -1;
+        }
+
+        if (isFollower[target]) {
+            breakCounts[target]++;
+            out.add(new Break(breakLabels[target]));
+            return -1;
+        }
+
+        return target;
+    }
+
+    /**
+     * Puts code in a block that breaks to a follower.
+     *
+     * @return the statements replacing the code
+     */
+    private List<Statement> closeBlock(int follower, List<Statement> statements) {
+        String label = breakLabels[follower];
+
+        // Move the code after an if statement ending with a break into an else
+        // block, which then ends where the block does
+        List<Statement> current = statements;
+        while (current != null) {
+            removeTrailingBreak(follower, current);
+            List<Statement> elseStatements = null;
+            for (int i = 0; i < current.size(); i++) {
+                Statement statement = current.get(i);
+                if (statement instanceof If && ((If) statement).elseBlock == null &&
+                    isBreak(getLast(((If) statement).ifBlock.statements), label)) {
+                    If ifStatement = (If) statement;
+                    removeTrailingBreak(follower, ifStatement.ifBlock.statements);
+
+                    List<Statement> rest = current.subList(i + 1, current.size());
+                    if (!rest.isEmpty()) {
+                        ifStatement.elseBlock = createBlock(new ArrayList<>(rest));
+                        elseStatements = ifStatement.elseBlock.statements;
+                        rest.clear();
+                    }
+                    break;
+                }
+            }
+            current = elseStatements;
+        }
+
+        if (breakCounts[follower] == 0) {
+            return statements;
+        }
+
+        List<Statement> enclosing = new ArrayList<>();
+        enclosing.add(new LabeledStatement(label, createBlock(statements)));
+        return enclosing;
+    }
+
+    /**
+     * Puts the code of a loop header and the nodes placed in the loop in a loop.
+     *
+     * @param follower the node after the loop, or -1
+     * @return the statements replacing the code
+     */
+    private List<Statement> closeLoop(int header, int follower, List<Statement> statements) {
+        String label = continueLabels[header];
+        Statement last = getLast(statements);
+        if (last instanceof ExpressionStatement && isContinue(((ExpressionStatement) last).expression, label)) {
+            statements.remove(statements.size() - 1);
+            continueCounts[header]--;
+        }
+
+        WhileLoop loop = new WhileLoop(new BooleanLiteral(true), createBlock(statements));
+        Statement first = statements.isEmpty() ? null : statements.get(0);
+        If lastIf = getLast(statements) instanceof If ? (If) getLast(statements) : null;
+        Statement secondLast = statements.size() < 2 ? null : statements.get(statements.size() - 2);
+        if (isConditionalBreak(first, label)) {
+            // while (true) { if (c) break; ... } -> while (!c) { ... }
+            statements.remove(0);
+            breakCounts[follower]--;
+            loop.condition = AstUtil.negate(((If) first).condition);
+        } else if (isConditionalBreak(lastIf, label) && continueCounts[header] == 0) {
+            // while (true) { ... if (c) break; } -> do { ... } while (!c)
+            statements.remove(statements.size() - 1);
+            breakCounts[follower]--;
+            loop.condition = AstUtil.negate(lastIf.condition);
+            loop.postcondition = true;
+        } else if (isBreak(getLast(statements), label) && secondLast instanceof If &&
+                   ((If) secondLast).elseBlock == null && ((If) secondLast).ifBlock.statements.size() == 1 &&
+                   getLast(((If) secondLast).ifBlock.statements) instanceof ExpressionStatement &&
+                   isContinue(((ExpressionStatement) getLast(((If) secondLast).ifBlock.statements)).expression, label) &&
+                   continueCounts[header] == 1) {
+            // while (true) { ... if (c) continue; break; } -> do { ... } while (c)
+            statements.subList(statements.size() - 2, statements.size()).clear();
+            breakCounts[follower]--;
+            continueCounts[header]--;
+            loop.condition = ((If) secondLast).condition;
+            loop.postcondition = true;
+        }
+
+        List<Statement> enclosing = new ArrayList<>();
+        if (continueCounts[header] > 0 || follower != -1 && breakCounts[follower] > 0) {
+            enclosing.add(new LabeledStatement(label, loop));
+        } else {
+            enclosing.add(loop);
+        }
+        return enclosing;
+    }
+
+    private void removeTrailingBreak(int follower, List<Statement> statements) {
+        if (isBreak(getLast(statements), breakLabels[follower])) {
+            statements.remove(statements.size() - 1);
+            breakCounts[follower]--;
+        }
+    }
+
+    private static boolean isConditionalBreak(Statement statement, String label) {
+        return statement instanceof If && ((If) statement).elseBlock == null &&
+               ((If) statement).ifBlock.statements.size() == 1 &&
+               isBreak(((If) statement).ifBlock.statements.get(0), label);
+    }
+
+    private static boolean isBreak(Statement statement, String label) {
+        return statement instanceof Break && label.equals(((Break) statement).label);
+    }
+
+    private static boolean isContinue(Expression expression, String label) {
+        return expression instanceof Continue && label.equals(((Continue) expression).label);
+    }
+
+    private static Statement getLast(List<Statement> statements) {
+        return statements.isEmpty() ? null : statements.get(statements.size() - 1);
+    }
+
+    private static Block createBlock(List<Statement> statements) {
+        Block block = new Block();
+        block.statements = statements;
+        return block;
+    }
+}
@@ -0,0 +1,478 @@
+package uncompile.controlflow;
+
+import uncompile.ast.*;
+
+import java.util.*;
+
+/**
+ * Removes the copies and dead temporary variables that building the blocks leaves
+ * at block boundaries, using the static single assignment form of the variables of
+ * a control flow graph. Phi functions are placed in the iterated dominance frontiers
+ * of the assignments to a variable, where the variable is live (pruned SSA), and
+ * each use of a variable is linked to the value reaching it by walking the dominator
+ * tree (Cytron et al., "Efficiently Computing Static Single Assignment Form and the
+ * Control Dependence Graph").
+ * <p>
+ * During that walk, a use of a copy (an assignment of a variable to another) is
+ * replaced with the copied variable if it still holds the same value. Afterwards,
+ * assignments without side effects whose values aren't used anymore are removed.
+ * Since uses only ever get replaced with variables holding the same value, the
+ * variables don't need to be renamed, and the code doesn't need to be translated
+ * back from SSA form.
+ * <p>
+ * Only variables that are assigned in statements of their own (v = ...;) and
+ * aren't declared in the blocks are handled, and only copies between variables of
+ * the same type are replaced.
+ */
+public final class CopyPropagation {
+    private final DenseGraph graph;
+    private final Dominators dominators;
+
+    private final Map<VariableDeclaration, Variable> variables = new IdentityHashMap<>();
+    private final List<Value> roots = new ArrayList<>();
+    private final List<Value> definitions = new ArrayList<>();
+    private final List<List<Phi>> phis;
+
+    private CopyPropagation(ControlFlowGraph controlFlowGraph) {
+        graph = controlFlowGraph.getDenseGraph();
+        dominators = controlFlowGraph.getDominators();
+
+        phis = new ArrayList<>(graph.size());
+        for (int node = 0; node < graph.size(); node++) {
+            phis.add(Collections.emptyList());
+        }
+    }
+
+    public static void run(ControlFlowGraph graph) {
+        CopyPropagation copyPropagation = new CopyPropagation(graph);
+        copyPropagation.findVariables();
+        copyPropagation.placePhis();
+        copyPropagation.rename();
+        copyPropagation.removeDeadAssignments();
+    }
+
+    /**
+     * Finds the blocks assigning each variable, and those using it before assigning it.
+     */
+    private void findVariables() {
+        for (int node : graph.getPostOrder()) {
+            ControlFlowNode controlFlowNode = graph.getNode(node);
+            for (Statement statement : controlFlowNode.block.statements) {
+                Assignment definition = getDefinition(statement);
+                if (definition != null) {
+                    definition.right.accept(new UseFinder(node));
+                    if (definition.right instanceof VariableReference) {
+                        getVariable(((VariableReference) definition.right).declaration).isCopied = true;
+                    }
+                    Variable variable = getVariable(((VariableReference) definition.left).declaration);
+                    if (variable.definitionStamp != node) {
+                        variable.definitionStamp = node;
+                        variable.definitionBlocks.add(node);
+                    }
+                } else {
+                    statement.accept(new UseFinder(node));
+                }
+            }
+
+            for (Expression expression : getJumpExpressions(controlFlowNode.jump)) {
+                expression.accept(new UseFinder(node));
+            }
+        }
+    }
+
+    private void placePhis() {
+        int size = graph.size();
+        int[] liveStamps = new int[size];
+        int[] phiStamps = new int[size];
+        Arrays.fill(liveStamps, -1);
+        Arrays.fill(phiStamps, Integer.MAX_VALUE);
+        int[] stack = new int[size];
+
+        int stamp = 0;
+        for (Variable variable : variables.values()) {
+            if (!variable.isTracked || variable.definitionBlocks.isEmpty() ||
+                variable.useBlocks.isEmpty() && !variable.isCopied) {
+                continue;
+            }
+
+            // Blocks the variable is live at the start of: those using it before
+            // assigning it, and the blocks before them that don't assign it.
+            // Replacing copies can add uses of copied variables anywhere, so they
+            // get phis wherever they are assigned on several paths.
+            for (int node : variable.definitionBlocks) {
+                phiStamps[node] = ~stamp; // marks assigning blocks until a phi is placed
+            }
+            int depth = 0;
+            if (!variable.isCopied) {
+                for (int node : variable.useBlocks) {
+                    liveStamps[node] = stamp;
+                    stack[depth++] = node;
+                }
+                while (depth > 0) {
+                    int node = stack[--depth];
+                    for (int i = 0; i < graph.getPredecessorCount(node); i++) {
+                        int predecessor = graph.getPredecessor(node, i);
+                        if (liveStamps[predecessor] != stamp && phiStamps[predecessor] != ~stamp &&
+                            graph.isReachable(predecessor)) {
+                            liveStamps[predecessor] = stamp;
+                            stack[depth++] = predecessor;
+                        }
+                    }
+                }
+            }
+
+            // Iterated dominance frontier of the assigning blocks
+            for (int node : variable.definitionBlocks) {
+                stack[depth++] = node;
+            }
+            while (depth > 0) {
+                BitSet frontier = dominators.getFrontier(stack[--depth]);
+                for (int node = frontier.nextSetBit(0); node >= 0; node = frontier.nextSetBit(node + 1)) {
+                    if (phiStamps[node] != stamp && (variable.isCopied || liveStamps[node] == stamp)) {
+                        if (phis.get(node).isEmpty()) {
+                            phis.set(node, new ArrayList<>());
+                        }
+                        phis.get(node).add(new Phi(variable));
+                        if (phiStamps[node] != ~stamp) {
+                            stack[depth++] = node;
+                        }
+                        phiStamps[node] = stamp;
+                    }
+                }
+            }
+
+            stamp++;
+        }
+    }
+
+    /**
+     * Links each use to the value reaching it in a walk over the dominator tree,
+     * replacing uses of copies on the way.
+     */
+    private void rename() {
+        for (Variable variable : variables.values()) {
+            variable.push(new Value(null));
+        }
+
+        // The variables assigned in each node on the path from the root, to
+        // restore the values when leaving the node
+        Deque<Variable> assigned = new ArrayDeque<>();
+        int size = graph.size();
+        int[] stack = new int[size];
+        int[] nextChild = new int[size];
+        int[] assignedCounts = new int[size];
+        int depth = 0;
+        stack[0] = graph.getEntry();
+        assignedCounts[0] = enter(graph.getEntry(), assigned);
+        while (depth >= 0) {
+            int node = stack[depth];
+            if (nextChild[depth] < dominators.getChildCount(node)) {
+                int child = dominators.getChild(node, nextChild[depth]++);
+                depth++;
+                stack[depth] = child;
+                nextChild[depth] = 0;
+                assignedCounts[depth] = enter(child, assigned);
+            } else {
+                for (int i = 0; i < assignedCounts[depth]; i++) {
+                    assigned.pop().pop();
+                }
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Renames the uses in a node, and adds the values at its end to the phis of its successors.
+     *
+     * @return the number of values pushed
+     */
+    private int enter(int node, Deque<Variable> assigned) {
+        int count = 0;
+        for (Phi phi : phis.get(node)) {
+            phi.variable.push(phi);
+            assigned.push(phi.variable);
+            count++;
+        }
+
+        ControlFlowNode controlFlowNode = graph.getNode(node);
+        for (Statement statement : controlFlowNode.block.statements) {
+            Assignment definition = getDefinition(statement);
+            Variable variable = definition == null ? null : variables.get(((VariableReference) definition.left).declaration);
+            if (variable == null || !variable.isTracked) {
+                statement.accept(new Renamer(null));
+                continue;
+            }
+
+            Value value = new Value(variable);
+            if (isPure(definition.right)) {
+                value.statement = statement;
+                value.node = node;
+                definitions.add(value);
+            }
+
+            Renamer renamer = new Renamer(value.statement != null ? value : null);
+            definition.right.accept(renamer);
+            if (definition.right instanceof VariableReference && renamer.lastVariable != null &&
+                Objects.equals(variable.declaration.getType(), renamer.lastVariable.declaration.getType())) {
+                value.copyOf = renamer.lastVariable;
+                value.copiedValue = renamer.lastValue;
+            }
+
+            variable.push(value);
+            assigned.push(variable);
+            count++;
+        }
+
+        for (Expression expression : getJumpExpressions(controlFlowNode.jump)) {
+            expression.accept(new Renamer(null));
+        }
+
+        for (int i = 0; i < graph.getSuccessorCount(node); i++) {
+            for (Phi phi : phis.get(graph.getSuccessor(node, i))) {
+                phi.operands.add(phi.variable.top());
+            }
+        }
+
+        return count;
+    }
+
+    private void removeDeadAssignments() {
+        Deque<Value> worklist = new ArrayDeque<>();
+        for (Value root : roots) {
+            if (!root.isLive) {
+                root.isLive = true;
+                worklist.push(root);
+            }
+        }
+        while (!worklist.isEmpty()) {
+            for (Value value : worklist.pop().getUses()) {
+                if (!value.isLive) {
+                    value.isLive = true;
+                    worklist.push(value);
+                }
+            }
+        }
+
+        Map<Integer, Set<Statement>> deadStatements = new HashMap<>();
+        for (Value definition : definitions) {
+            if (!definition.isLive) {
+                deadStatements.computeIfAbsent(definition.node, k -> Collections.newSetFromMap(new IdentityHashMap<>()))
+                              .add(definition.statement);
+            }
+        }
+        for (Map.Entry<Integer, Set<Statement>> entry : deadStatements.entrySet()) {
+            graph.getNode(entry.getKey()).block.statements.removeIf(entry.getValue()::contains);
+        }
+    }
+
+    private Variable getVariable(VariableDeclaration declaration) {
+        return variables.computeIfAbsent(declaration, Variable::new);
+    }
+
+    /**
+     * @return the assignment if a statement assigns a variable and does nothing else, or null
+     */
+    private static Assignment getDefinition(Statement statement) {
+        if (statement instanceof ExpressionStatement && ((ExpressionStatement) statement).expression instanceof Assignment) {
+            Assignment assignment = (Assignment) ((ExpressionStatement) statement).expression;
+            if (assignment.left instanceof VariableReference && !(assignment.left instanceof VariableDeclaration)) {
+                return assignment;
+            }
+        }
+
+        return null;
+    }
+
+    private static List<Expression> getJumpExpressions(Jump jump) {
+        if (jump instanceof Jump.Conditional) {
+            return Collections.singletonList(((Jump.Conditional) jump).condition);
+        }
+
+        if (jump instanceof Jump.Switch) {
+            return Collections.singletonList(((Jump.Switch) jump).expression);
+        }
+
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return whether evaluating an expression has no effect other than its value,
+     *         and can't throw
+     */
+    private static boolean isPure(Expression expression) {
+        if (expression instanceof VariableReference) {
+            return !(expression instanceof VariableDeclaration);
+        }
+
+        if (expression instanceof ParenthesizedExpression) {
+            return isPure(((ParenthesizedExpression) expression).expression);
+        }
+
+        if (expression instanceof Cast) {
+            return ((Cast) expression).type instanceof PrimitiveTypeNode && isPure(((Cast) expression).expression);
+        }
+
+        if (expression instanceof UnaryOperation) {
+            return isPure(((UnaryOperation) expression).expression);
+        }
+
+        if (expression instanceof BinaryOperation) {
+            BinaryOperation operation = (BinaryOperation) expression;
+            return operation.operator != BinaryOperator.DIVIDE && operation.operator != BinaryOperator.REMAINDER &&
+                   operation.operator != BinaryOperator.INSTANCEOF && isPure(operation.left) && isPure(operation.right);
+        }
+
+        return expression instanceof IntLiteral ||
+               expression instanceof LongLiteral ||
+               expression instanceof FloatLiteral ||
+               expression instanceof DoubleLiteral ||
+               expression instanceof BooleanLiteral ||
+               expression instanceof CharLiteral ||
+               expression instanceof StringLiteral ||
+               expression instanceof NullLiteral ||
+               expression instanceof ThisReference;
+    }
+
+    /**
+     * Records the uses of variables in a node before they are assigned in it,
+     * and finds variables that can't be handled.
+     */
+    private class UseFinder extends AstVisitor {
+        private final int node;
+
+        public UseFinder(int node) {
+            this.node = node;
+        }
+
+        @Override
+        public void visit(Assignment assignment) {
+            if (assignment.left instanceof VariableReference) {
+                getVariable(((VariableReference) assignment.left).declaration).isTracked = false;
+            }
+            super.visit(assignment);
+        }
+
+        @Override
+        public void visit(VariableDeclaration variableDeclaration) {
+            getVariable(variableDeclaration).isTracked = false;
+            super.visit(variableDeclaration);
+        }
+
+        @Override
+        public void visit(VariableReference variableReference) {
+            Variable variable = getVariable(variableReference.declaration);
+            if (variable.definitionStamp != node && variable.useStamp != node) {
+                variable.useStamp = node;
+                variable.useBlocks.add(node);
+            }
+        }
+    }
+
+    /**
+     * Links the uses of variables to their values, replacing uses of copies.
+     */
+    private class Renamer extends AstVisitor {
+        private final Value user;
+        public Variable lastVariable = null;
+        public Value lastValue = null;
+
+        /**
+         * @param user the removable assignment the uses are part of, or null if they are always needed
+         */
+        public Renamer(Value user) {
+            this.user = user;
+        }
+
+        @Override
+        public void visit(VariableReference variableReference) {
+            Variable variable = variables.get(variableReference.declaration);
+            if (variable == null || !variable.isTracked) {
+                return;
+            }
+
+            // Follow copies while the copied variable still holds the copied value
+            Value value = variable.top();
+            while (value.copyOf != null && value.copyOf.top() == value.copiedValue) {
+                variable = value.copyOf;
+                value = value.copiedValue;
+            }
+            variableReference.declaration = variable.declaration;
+
+            if (user != null) {
+                user.uses.add(value);
+            } else {
+                roots.add(value);
+            }
+            lastVariable = variable;
+            lastValue = value;
+        }
+    }
+
+    private static class Variable {
+        public final VariableDeclaration declaration;
+        public boolean isTracked = true;
+        public boolean isCopied = false;
+        public final List<Integer> definitionBlocks = new ArrayList<>();
+        public final List<Integer> useBlocks = new ArrayList<>();
+        public int definitionStamp = -1;
+        public int useStamp = -1;
+
+        // The values of the variable on the dominator tree path being renamed
+        private Value[] values = new Value[4];
+        private int valueCount = 0;
+
+        public Variable(VariableDeclaration declaration) {
+            this.declaration = declaration;
+        }
+
+        public void push(Value value) {
+            if (valueCount == values.length) {
+                values = Arrays.copyOf(values, valueCount * 2);
+            }
+            values[valueCount++] = value;
+        }
+
+        public void pop() {
+            values[--valueCount] = null;
+        }
+
+        public Value top() {
+            return values[valueCount - 1];
+        }
+    }
+
+    /**
+     * An SSA value: an assignment, a phi, or the value of a variable at the start
+     * of the method (its parameter value, or none).
+     */
+    private static class Value {
+        public final Variable variable;
+        public final List<Value> uses = new ArrayList<>(0);
+        public Variable copyOf = null;
+        public Value copiedValue = null;
+        public Statement statement = null; // set if the assignment can be removed
+        public int node = -1;
+        public boolean isLive = false;
+
+        public Value(Variable variable) {
+            this.variable = variable;
+        }
+
+        public List<Value> getUses() {
+            return uses;
+        }
+    }
+
+    private static class Phi extends Value {
+        public final List<Value> operands = new ArrayList<>();
+
+        public Phi(Variable variable) {
+            super(variable);
+        }
+
+        @Override
+        public List<Value> getUses() {
+            return operands;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package uncompile.controlflow;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * An immutable snapshot of the edges of a control flow graph, which the graph
+ * analyses run on. Nodes are identified by int ids, and the successors and
+ * predecessors of all nodes are stored in two arrays each (compressed sparse
+ * rows): the successors of node i are successors[successorOffsets[i]] up to
+ * successors[successorOffsets[i + 1]].
+ * <p>
+ * The ids of the nodes of a {@link ControlFlowGraph} are their indices.
+ */
+public final class DenseGraph {
+    private final ControlFlowNode[] nodes;
+    private final int entry;
+    private final int[] successorOffsets;
+    private final int[] successors;
+    private final int[] predecessorOffsets;
+    private final int[] predecessors;
+    private volatile int[] postOrder = null;
+    private volatile int[] postOrderNumbers = null;
+
+    /**
+     * @param nodes            the node for each id
+     * @param entry            the id of the entry node
+     * @param successorOffsets the start of the successors of each node, followed by
+     *                         the total number of edges
+     * @param successors       the successors of all nodes
+     */
+    DenseGraph(ControlFlowNode[] nodes, int entry, int[] successorOffsets, int[] successors) {
+        this.nodes = nodes;
+        this.entry = entry;
+        this.successorOffsets = successorOffsets;
+        this.successors = successors;
+
+        // Counting sort of the edges by target
+        int size = nodes.length;
+        predecessorOffsets = new int[size + 1];
+        for (int successor : successors) {
+            predecessorOffsets[successor + 1]++;
+        }
+        for (int i = 0; i < size; i++) {
+            predecessorOffsets[i + 1] += predecessorOffsets[i];
+        }
+
+        predecessors = new int[successors.length];
+        int[] next = Arrays.copyOf(predecessorOffsets, size);
+        for (int node = 0; node < size; node++) {
+            for (int i = successorOffsets[node]; i < successorOffsets[node + 1]; i++) {
+                predecessors[next[successors[i]]++] = node;
+            }
+        }
+    }
+
+    static DenseGraph of(List<ControlFlowNode> nodes, ControlFlowNode entryPoint) {
+        int size = nodes.size();
+        int[] successorOffsets = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            successorOffsets[i + 1] = successorOffsets[i] + nodes.get(i).outgoing.size();
+        }
+
+        int[] successors = new int[successorOffsets[size]];
+        for (int i = 0; i < size; i++) {
+            int offset = successorOffsets[i];
+            for (ControlFlowNode successor : nodes.get(i).outgoing) {
+                successors[offset++] = successor.index;
+            }
+        }
+
+        return new DenseGraph(nodes.toArray(new ControlFlowNode[0]), entryPoint.index, successorOffsets, successors);
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    public int getEntry() {
+        return entry;
+    }
+
+    /**
+     * @return the node with an id, or null if it doesn't correspond to a node
+     */
+    public ControlFlowNode getNode(int id) {
+        return nodes[id];
+    }
+
+    public int getSuccessorCount(int node) {
+        return successorOffsets[node + 1] - successorOffsets[node];
+    }
+
+    public int getSuccessor(int node, int i) {
+        return successors[successorOffsets[node] + i];
+    }
+
+    public int getPredecessorCount(int node) {
+        return predecessorOffsets[node + 1] - predecessorOffsets[node];
+    }
+
+    public int getPredecessor(int node, int i) {
+        return predecessors[predecessorOffsets[node] + i];
+    }
+
+    /**
+     * @return the nodes reachable from the entry node in depth-first postorder,
+     *         which must not be modified
+     */
+    public int[] getPostOrder() {
+        if (postOrder == null) {
+            calculatePostOrder();
+        }
+        return postOrder;
+    }
+
+    /**
+     * @return the position of each node in {@link #getPostOrder}, or -1 for
+     *         unreachable nodes, which must not be modified
+     */
+    public int[] getPostOrderNumbers() {
+        if (postOrderNumbers == null) {
+            calculatePostOrder();
+        }
+        return postOrderNumbers;
+    }
+
+    public boolean isReachable(int node) {
+        return getPostOrderNumbers()[node] != -1;
+    }
+
+    private void calculatePostOrder() {
+        int size = nodes.length;
+        int[] order = new int[size];
+        int count = 0;
+
+        BitSet visited = new BitSet(size);
+        int[] stack = new int[size];
+        int[] nextChild = new int[size];
+        int depth = 0;
+        stack[0] = entry;
+        nextChild[0] = successorOffsets[entry];
+        visited.set(entry);
+
+        while (depth >= 0) {
+            int node = stack[depth];
+            if (nextChild[depth] < successorOffsets[node + 1]) {
+                int child = successors[nextChild[depth]++];
+                if (!visited.get(child)) {
+                    visited.set(child);
+                    depth++;
+                    stack[depth] = child;
+                    nextChild[depth] = successorOffsets[child];
+                }
+            } else {
+                order[count++] = node;
+                depth--;
+            }
+        }
+
+        int[] numbers = new int[size];
+        Arrays.fill(numbers, -1);
+        for (int i = 0; i < count; i++) {
+            numbers[order[i]] = i;
+        }
+
+        // If analyses of the same graph run on several threads, this may run
+        // more than once, with the same result
+        postOrderNumbers = numbers;
+        postOrder = Arrays.copyOf(order, count);
+    }
+}
@@ -0,0 +1,251 @@
+package uncompile.controlflow;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The dominator tree and dominance frontiers of a {@link DenseGraph}. Immediate
+ * dominators are calculated using the algorithm of Cooper, Harvey and Kennedy
+ * ("A Simple, Fast Dominance Algorithm"), which works on the postorder numbers
+ * of the nodes. Unreachable nodes are not part of the tree.
+ * <p>
+ * Dominance frontiers are calculated on first use.
+ */
+public final class Dominators {
+    private final DenseGraph graph;
+    private final int[] immediateDominators;
+    private final int iterations;
+
+    // Dominator tree: children in compressed sparse rows, and the interval of
+    // preorder numbers of the subtree of each node for dominance queries
+    private final int[] childOffsets;
+    private final int[] children;
+    private final int[] preOrderNumbers;
+    private final int[] lastDescendants;
+
+    private volatile BitSet[] frontiers = null;
+
+    private Dominators(DenseGraph graph) {
+        this.graph = graph;
+
+        int size = graph.size();
+        int[] postOrder = graph.getPostOrder();
+        int[] postOrderNumbers = graph.getPostOrderNumbers();
+        int count = postOrder.length;
+
+        // Immediate dominators by postorder number while iterating. The entry node
+        // is last in postorder, and is its own immediate dominator while iterating.
+        int[] dominators = new int[count];
+        Arrays.fill(dominators, -1);
+        dominators[count - 1] = count - 1;
+
+        boolean changed = true;
+        int iterations = 0;
+        while (changed) {
+            changed = false;
+            iterations++;
+
+            // Reverse postorder, so at least one predecessor has been processed
+            for (int i = count - 2; i >= 0; i--) {
+                int node = postOrder[i];
+                int newImmediateDominator = -1;
+                for (int j = 0; j < graph.getPredecessorCount(node); j++) {
+                    int predecessor = postOrderNumbers[graph.getPredecessor(node, j)];
+                    if (predecessor == -1 || dominators[predecessor] == -1) {
+                        continue;
+                    }
+
+                    newImmediateDominator = newImmediateDominator == -1 ?
+                                            predecessor :
+                                            intersect(dominators, predecessor, newImmediateDominator);
+                }
+
+                if (dominators[i] != newImmediateDominator) {
+                    dominators[i] = newImmediateDominator;
+                    changed = true;
+                }
+            }
+        }
+        this.iterations = iterations;
+
+        immediateDominators = new int[size];
+        Arrays.fill(immediateDominators, -1);
+        for (int i = 0; i < count - 1; i++) {
+            immediateDominators[postOrder[i]] = postOrder[dominators[i]];
+        }
+
+        // Children of each node in the dominator tree, ordered by id
+        childOffsets = new int[size + 1];
+        for (int node = 0; node < size; node++) {
+            if (immediateDominators[node] != -1) {
+                childOffsets[immediateDominators[node] + 1]++;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            childOffsets[i + 1] += childOffsets[i];
+        }
+
+        children = new int[childOffsets[size]];
+        int[] next = Arrays.copyOf(childOffsets, size);
+        for (int node = 0; node < size; node++) {
+            if (immediateDominators[node] != -1) {
+                children[next[immediateDominators[node]]++] = node;
+            }
+        }
+
+        // Number the tree in preorder
+        preOrderNumbers = new int[size];
+        lastDescendants = new int[size];
+        Arrays.fill(preOrderNumbers, -1);
+        Arrays.fill(lastDescendants, -1);
+
+        int[] stack = new int[size];
+        int[] nextChild = new int[size];
+        int depth = 0;
+        int number = 0;
+        stack[0] = graph.getEntry();
+        nextChild[0] = childOffsets[graph.getEntry()];
+        preOrderNumbers[graph.getEntry()] = number++;
+        while (depth >= 0) {
+            int node = stack[depth];
+            if (nextChild[depth] < childOffsets[node + 1]) {
+                int child = children[nextChild[depth]++];
+                preOrderNumbers[child] = number++;
+                depth++;
+                stack[depth] = child;
+                nextChild[depth] = childOffsets[child];
+            } else {
+                lastDescendants[node] = number - 1;
+                depth--;
+            }
+        }
+    }
+
+    public static Dominators calculate(DenseGraph graph) {
+        return new Dominators(graph);
+    }
+
+    public DenseGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return the number of passes the fixed-point iteration needed
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return the immediate dominator of a node, or -1 for the entry node and
+     *         unreachable nodes
+     */
+    public int getImmediateDominator(int node) {
+        return immediateDominators[node];
+    }
+
+    /**
+     * @return the number of nodes a node immediately dominates
+     */
+    public int getChildCount(int node) {
+        return childOffsets[node + 1] - childOffsets[node];
+    }
+
+    /**
+     * @return a node immediately dominated by a node, ordered by id
+     */
+    public int getChild(int node, int i) {
+        return children[childOffsets[node] + i];
+    }
+
+    /**
+     * @return whether a dominates b, which is true if they are the same reachable node
+     */
+    public boolean dominates(int a, int b) {
+        int number = preOrderNumbers[b];
+        return number != -1 && preOrderNumbers[a] != -1 && preOrderNumbers[a] <= number && number <= lastDescendants[a];
+    }
+
+    /**
+     * @return whether a dominates b and is a different node
+     */
+    public boolean strictlyDominates(int a, int b) {
+        return a != b && dominates(a, b);
+    }
+
+    /**
+     * @return the dominance frontier of a node, which must not be modified
+     */
+    public BitSet getFrontier(int node) {
+        return getFrontiers()[node];
+    }
+
+    /**
+     * Calculates the dominance frontiers of all nodes, if that hasn't happened yet.
+     */
+    public void calculateFrontiers() {
+        getFrontiers();
+    }
+
+    private BitSet[] getFrontiers() {
+        BitSet[] frontiers = this.frontiers;
+        if (frontiers != null) {
+            return frontiers;
+        }
+
+        // Each join point is in the frontier of the nodes on the dominator tree path
+        // from each of its predecessors up to (not including) its immediate dominator.
+        // Other nodes can't be in a frontier, except for the entry node if it has
+        // a predecessor, which is in the frontier of all nodes on the path to the root.
+        int size = graph.size();
+        BitSet empty = new BitSet(0);
+        frontiers = new BitSet[size];
+        for (int node = 0; node < size; node++) {
+            if (node != graph.getEntry() && (graph.getPredecessorCount(node) < 2 || immediateDominators[node] == -1)) {
+                continue;
+            }
+
+            for (int i = 0; i < graph.getPredecessorCount(node); i++) {
+                int runner = graph.getPredecessor(node, i);
+                if (!graph.isReachable(runner)) {
+                    continue;
+                }
+
+                while (runner != -1 && runner != immediateDominators[node]) {
+                    if (frontiers[runner] == null) {
+                        frontiers[runner] = new BitSet();
+                    } else if (frontiers[runner].get(node)) {
+                        break;
+                    }
+
+                    frontiers[runner].set(node);
+                    runner = immediateDominators[runner];
+                }
+            }
+        }
+
+        for (int node = 0; node < size; node++) {
+            if (frontiers[node] == null) {
+                frontiers[node] = empty;
+            }
+        }
+
+        this.frontiers = frontiers;
+        return frontiers;
+    }
+
+    /**
+     * Finds the nearest common dominator of two nodes given by their postorder numbers.
+     */
+    private static int intersect(int[] dominators, int a, int b) {
+        while (a != b) {
+            while (a < b) {
+                a = dominators[a];
+            }
+            while (b < a) {
+                b = dominators[b];
+            }
+        }
+        return a;
+    }
+}
@@ -0,0 +1,537 @@
+package uncompile.controlflow;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The loop nesting forest of a {@link DenseGraph}, found with Havlak's algorithm
+ * ("Nesting of Reducible and Irreducible Loops"), which also finds irreducible
+ * loops. Edges entering irreducible loops are kept in mergeable heaps rather than
+ * copied into each enclosing loop, so it takes O(E log E) time even for deeply
+ * nested irreducible loops.
+ * <p>
+ * Loops are numbered such that each loop comes before the loops nested in it,
+ * and the nodes of a loop (its body, including nested loops) are those whose
+ * innermost loop is the loop or nested in it. The header of a reducible loop
+ * dominates its body; an irreducible loop has several entries, and its header
+ * is the entry that was reached first by a depth-first search.
+ * Unreachable nodes are in no loop.
+ */
+public final class LoopForest {
+    private final DenseGraph graph;
+
+    private final int loopCount;
+    private final int[] headers;
+    private final int[] parents;
+    private final int[] depths;
+    private final boolean[] irreducible;
+    private final int[] lastDescendants;
+
+    private final int[] innermostLoops;
+    private final int[] headedLoops;
+
+    // All nodes in loops, ordered by their innermost loop, such that the body
+    // of loop i is bodyNodes[bodyOffsets[i]] up to bodyNodes[bodyOffsets[lastDescendants[i] + 1]]
+    private final int[] bodyOffsets;
+    private final int[] bodyNodes;
+
+    private LoopForest(DenseGraph graph) {
+        this.graph = graph;
+        int size = graph.size();
+
+        // Number reachable nodes in depth-first preorder, and find the last
+        // descendant of each in the depth-first spanning tree
+        int[] numbers = new int[size];
+        Arrays.fill(numbers, -1);
+        int[] nodes = new int[size];
+        int[] last = new int[size];
+        int count = numberPreOrder(graph, numbers, nodes, last);
+
+        // Sort the predecessors of each node into back edges (from descendants)
+        // and other edges, in preorder numbers
+        IntList[] backPredecessors = new IntList[count];
+        IntList[] otherPredecessors = new IntList[count];
+        int otherEdges = 0;
+        for (int w = 0; w < count; w++) {
+            backPredecessors[w] = new IntList();
+            otherPredecessors[w] = new IntList();
+
+            int node = nodes[w];
+            for (int i = 0; i < graph.getPredecessorCount(node); i++) {
+                int v = numbers[graph.getPredecessor(node, i)];
+                if (v == -1) {
+                    continue;
+                }
+
+                if (w <= v && v <= last[w]) {
+                    backPredecessors[w].add(v);
+                } else {
+                    otherPredecessors[w].add(v);
+                    otherEdges++;
+                }
+            }
+        }
+
+        // Union-find of nodes and the headers of the loops they were collapsed into
+        int[] unionFind = new int[count];
+        for (int i = 0; i < count; i++) {
+            unionFind[i] = i;
+        }
+
+        int[] loopOfHeader = new int[count];
+        Arrays.fill(loopOfHeader, -1);
+        int[] loopHeaders = new int[count];
+        int[] loopParents = new int[count];
+        boolean[] loopIrreducible = new boolean[count];
+        int[] innermost = new int[count];
+        Arrays.fill(innermost, -1);
+        int loops = 0;
+
+        // Edges that enter a collapsed loop from outside the depth-first subtree of
+        // its header, by the node they were collapsed into. Havlak's algorithm turns
+        // these into edges to the header, which copies them into every enclosing loop
+        // until they are inside one, and takes quadratic time for deeply nested
+        // irreducible loops. Instead, they are kept in heaps ordered by the outermost
+        // header they are still outside of, which are merged when the loop is collapsed.
+        // Edges from nodes before the header in preorder are inside once the header
+        // is at most the source, and edges from nodes after the subtree once the
+        // subtree reaches the source.
+        EntryHeaps entries = new EntryHeaps(otherEdges);
+        int[] earlierEntries = new int[count];
+        int[] laterEntries = new int[count];
+        Arrays.fill(earlierEntries, -1);
+        Arrays.fill(laterEntries, -1);
+
+        int[] inPool = new int[count];
+        Arrays.fill(inPool, -1);
+        IntList pool = new IntList();
+
+        // Inner loops have headers with higher preorder numbers than their outer loops
+        for (int w = count - 1; w >= 0; w--) {
+            pool.clear();
+            boolean isSelfLoop = false;
+            for (int i = 0; i < backPredecessors[w].size; i++) {
+                int v = backPredecessors[w].get(i);
+                if (v == w) {
+                    isSelfLoop = true;
+                    continue;
+                }
+
+                int representative = find(unionFind, v);
+                if (inPool[representative] != w) {
+                    inPool[representative] = w;
+                    pool.add(representative);
+                }
+            }
+
+            // Walk backwards from the back edges to find the body. The pool doubles
+            // as the work list.
+            boolean isIrreducible = false;
+            for (int j = 0; j < pool.size; j++) {
+                int x = pool.get(j);
+                for (int i = 0; i < otherPredecessors[x].size; i++) {
+                    int y = otherPredecessors[x].get(i);
+                    if (y < w) {
+                        isIrreducible = true;
+                        earlierEntries[w] = entries.merge(earlierEntries[w], entries.create(-y, y));
+                    } else if (y > last[w]) {
+                        isIrreducible = true;
+                        laterEntries[w] = entries.merge(laterEntries[w], entries.create(y, y));
+                    } else {
+                        addToPool(find(unionFind, y), w, inPool, pool);
+                    }
+                }
+
+                // Entries into a loop collapsed into x that are inside this loop
+                while (earlierEntries[x] != -1 && entries.getKey(earlierEntries[x]) <= -w) {
+                    addToPool(find(unionFind, entries.getValue(earlierEntries[x])), w, inPool, pool);
+                    earlierEntries[x] = entries.removeMinimum(earlierEntries[x]);
+                }
+                while (laterEntries[x] != -1 && entries.getKey(laterEntries[x]) <= last[w]) {
+                    addToPool(find(unionFind, entries.getValue(laterEntries[x])), w, inPool, pool);
+                    laterEntries[x] = entries.removeMinimum(laterEntries[x]);
+                }
+
+                if (earlierEntries[x] != -1 || laterEntries[x] != -1) {
+                    isIrreducible = true;
+                    earlierEntries[w] = entries.merge(earlierEntries[w], earlierEntries[x]);
+                    laterEntries[w] = entries.merge(laterEntries[w], laterEntries[x]);
+                }
+            }
+
+            if (pool.size == 0 && !isSelfLoop) {
+                continue;
+            }
+
+            int loop = loops++;
+            loopHeaders[loop] = w;
+            loopParents[loop] = -1;
+            loopIrreducible[loop] = isIrreducible;
+            loopOfHeader[w] = loop;
+            innermost[w] = loop;
+
+            for (int i = 0; i < pool.size; i++) {
+                int node = pool.get(i);
+                unionFind[node] = w;
+                if (loopOfHeader[node] != -1) {
+                    loopParents[loopOfHeader[node]] = loop;
+                } else {
+                    innermost[node] = loop;
+                }
+            }
+        }
+
+        // Loops were found inside out, renumber them in preorder of the loop tree
+        loopCount = loops;
+        int[] childOffsets = new int[loops + 2];
+        for (int loop = 0; loop < loops; loop++) {
+            childOffsets[(loopParents[loop] == -1 ? loops : loopParents[loop]) + 1]++;
+        }
+        for (int i = 0; i <= loops; i++) {
+            childOffsets[i + 1] += childOffsets[i];
+        }
+        int[] children = new int[loops];
+        int[] next = Arrays.copyOf(childOffsets, loops + 1);
+        // Children in order of their headers
+        for (int loop = loops - 1; loop >= 0; loop--) {
+            children[next[loopParents[loop] == -1 ? loops : loopParents[loop]]++] = loop;
+        }
+
+        int[] newNumbers = new int[loops];
+        headers = new int[loops];
+        parents = new int[loops];
+        depths = new int[loops];
+        irreducible = new boolean[loops];
+        lastDescendants = new int[loops];
+
+        int[] stack = new int[loops + 1];
+        int[] nextChild = new int[loops + 1];
+        int depth = 0;
+        int number = 0;
+        stack[0] = loops; // Virtual root
+        nextChild[0] = childOffsets[loops];
+        while (depth >= 0) {
+            int loop = stack[depth];
+            if (nextChild[depth] < childOffsets[loop + 1]) {
+                int child = children[nextChild[depth]++];
+                int newNumber = number++;
+                newNumbers[child] = newNumber;
+                headers[newNumber] = nodes[loopHeaders[child]];
+                parents[newNumber] = loop == loops ? -1 : newNumbers[loop];
+                depths[newNumber] = depth + 1;
+                irreducible[newNumber] = loopIrreducible[child];
+                depth++;
+                stack[depth] = child;
+                nextChild[depth] = childOffsets[child];
+            } else {
+                if (loop != loops) {
+                    lastDescendants[newNumbers[loop]] = number - 1;
+                }
+                depth--;
+            }
+        }
+
+        innermostLoops = new int[size];
+        headedLoops = new int[size];
+        Arrays.fill(innermostLoops, -1);
+        Arrays.fill(headedLoops, -1);
+        for (int w = 0; w < count; w++) {
+            if (innermost[w] != -1) {
+                innermostLoops[nodes[w]] = newNumbers[innermost[w]];
+            }
+            if (loopOfHeader[w] != -1) {
+                headedLoops[nodes[w]] = newNumbers[loopOfHeader[w]];
+            }
+        }
+
+        // Group the nodes by innermost loop
+        bodyOffsets = new int[loops + 1];
+        for (int node = 0; node < size; node++) {
+            if (innermostLoops[node] != -1) {
+                bodyOffsets[innermostLoops[node] + 1]++;
+            }
+        }
+        for (int i = 0; i < loops; i++) {
+            bodyOffsets[i + 1] += bodyOffsets[i];
+        }
+        bodyNodes = new int[bodyOffsets[loops]];
+        int[] nextNode = Arrays.copyOf(bodyOffsets, loops);
+        for (int node = 0; node < size; node++) {
+            if (innermostLoops[node] != -1) {
+                bodyNodes[nextNode[innermostLoops[node]]++] = node;
+            }
+        }
+    }
+
+    public static LoopForest calculate(DenseGraph graph) {
+        return new LoopForest(graph);
+    }
+
+    public DenseGraph getGraph() {
+        return graph;
+    }
+
+    public int getLoopCount() {
+        return loopCount;
+    }
+
+    public int getHeader(int loop) {
+        return headers[loop];
+    }
+
+    /**
+     * @return the loop a loop is directly nested in, or -1 for outermost loops
+     */
+    public int getParent(int loop) {
+        return parents[loop];
+    }
+
+    /**
+     * @return the nesting depth of a loop, which is 1 for outermost loops
+     */
+    public int getDepth(int loop) {
+        return depths[loop];
+    }
+
+    public boolean isIrreducible(int loop) {
+        return irreducible[loop];
+    }
+
+    /**
+     * @return the innermost loop a node is in, or -1 if it's in no loop
+     */
+    public int getLoop(int node) {
+        return innermostLoops[node];
+    }
+
+    /**
+     * @return the loop a node is the header of, or -1 if it's not a loop header
+     */
+    public int getHeadedLoop(int node) {
+        return headedLoops[node];
+    }
+
+    public boolean isHeader(int node) {
+        return headedLoops[node] != -1;
+    }
+
+    /**
+     * @return the number of loops a node is in
+     */
+    public int getLoopDepth(int node) {
+        return innermostLoops[node] == -1 ? 0 : depths[innermostLoops[node]];
+    }
+
+    /**
+     * @return whether the body of a loop contains a node
+     */
+    public boolean contains(int loop, int node) {
+        int innermost = innermostLoops[node];
+        return innermost >= loop && innermost <= lastDescendants[loop];
+    }
+
+    /**
+     * @return whether a loop is nested in another loop, or is the same loop
+     */
+    public boolean isNestedIn(int loop, int outerLoop) {
+        return loop >= outerLoop && loop <= lastDescendants[outerLoop];
+    }
+
+    /**
+     * @return the nodes of a loop, including those of nested loops, ordered by
+     *         innermost loop, then id
+     */
+    public int[] getBody(int loop) {
+        return Arrays.copyOfRange(bodyNodes, bodyOffsets[loop], bodyOffsets[lastDescendants[loop] + 1]);
+    }
+
+    /**
+     * @return the nodes outside of a loop that nodes of the loop have edges to,
+     *         ordered by id
+     */
+    public int[] getExits(int loop) {
+        BitSet exits = new BitSet();
+        for (int i = bodyOffsets[loop]; i < bodyOffsets[lastDescendants[loop] + 1]; i++) {
+            int node = bodyNodes[i];
+            for (int j = 0; j < graph.getSuccessorCount(node); j++) {
+                int successor = graph.getSuccessor(node, j);
+                if (!contains(loop, successor)) {
+                    exits.set(successor);
+                }
+            }
+        }
+        return exits.stream().toArray();
+    }
+
+    /**
+     * Numbers the nodes reachable from the entry in depth-first preorder.
+     *
+     * @param numbers the preorder number of each node, or -1 if unreachable
+     * @param nodes   the node with each preorder number
+     * @param last    the highest preorder number in the depth-first spanning subtree
+     *                of each preorder number
+     * @return the number of reachable nodes
+     */
+    private static int numberPreOrder(DenseGraph graph, int[] numbers, int[] nodes, int[] last) {
+        int size = graph.size();
+        int[] stack = new int[size];
+        int[] nextChild = new int[size];
+        int depth = 0;
+        int number = 0;
+
+        stack[0] = graph.getEntry();
+        numbers[graph.getEntry()] = number;
+        nodes[number++] = graph.getEntry();
+
+        while (depth >= 0) {
+            int node = stack[depth];
+            if (nextChild[depth] < graph.getSuccessorCount(node)) {
+                int child = graph.getSuccessor(node, nextChild[depth]++);
+                if (numbers[child] == -1) {
+                    numbers[child] = number;
+                    nodes[number++] = child;
+                    depth++;
+                    stack[depth] = child;
+                    nextChild[depth] = 0;
+                }
+            } else {
+                last[numbers[node]] = number - 1;
+                depth--;
+            }
+        }
+
+        return number;
+    }
+
+    private static void addToPool(int node, int header, int[] inPool, IntList pool) {
+        if (node != header && inPool[node] != header) {
+            inPool[node] = header;
+            pool.add(node);
+        }
+    }
+
+    private static int find(int[] unionFind, int node) {
+        int root = node;
+        while (unionFind[root] != root) {
+            root = unionFind[root];
+        }
+
+        // Path compression
+        while (unionFind[node] != root) {
+            int next = unionFind[node];
+            unionFind[node] = root;
+            node = next;
+        }
+
+        return root;
+    }
+
+    private static class IntList {
+        public int[] elements = new int[4];
+        public int size = 0;
+
+        public int get(int index) {
+            return elements[index];
+        }
+
+        public void add(int element) {
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, size * 2);
+            }
+            elements[size++] = element;
+        }
+
+        public void clear() {
+            size = 0;
+        }
+    }
+
+    /**
+     * Leftist min-heaps of (key, value) entries, identified by the index of their
+     * root entry, or -1 if empty.
+     */
+    private static class EntryHeaps {
+        private final int[] keys;
+        private final int[] values;
+        private final int[] left;
+        private final int[] right;
+        private final int[] ranks;
+        private int size = 0;
+
+        public EntryHeaps(int capacity) {
+            keys = new int[capacity];
+            values = new int[capacity];
+            left = new int[capacity];
+            right = new int[capacity];
+            ranks = new int[capacity];
+        }
+
+        /**
+         * @return a heap with a single entry
+         */
+        public int create(int key, int value) {
+            int entry = size++;
+            keys[entry] = key;
+            values[entry] = value;
+            left[entry] = -1;
+            right[entry] = -1;
+            ranks[entry] = 1;
+            return entry;
+        }
+
+        public int getKey(int heap) {
+            return keys[heap];
+        }
+
+        public int getValue(int heap) {
+            return values[heap];
+        }
+
+        public int removeMinimum(int heap) {
+            return merge(left[heap], right[heap]);
+        }
+
+        public int merge(int a, int b) {
+            if (a == -1) {
+                return b;
+            }
+            if (b == -1) {
+                return a;
+            }
+
+            // Merge along the right spines, which are at most logarithmic in length,
+            // then swap children back up where the leftist property is violated
+            int[] spine = new int[ranks[a] + ranks[b]];
+            int length = 0;
+            while (a != -1 && b != -1) {
+                if (keys[b] < keys[a]) {
+                    int t = a;
+                    a = b;
+                    b = t;
+                }
+                spine[length++] = a;
+                a = right[a];
+            }
+            right[spine[length - 1]] = a == -1 ? b : a;
+
+            for (int i = length - 1; i >= 0; i--) {
+                int entry = spine[i];
+                if (i < length - 1) {
+                    right[entry] = spine[i + 1];
+                }
+
+                int leftRank = left[entry] == -1 ? 0 : ranks[left[entry]];
+                int rightRank = right[entry] == -1 ? 0 : ranks[right[entry]];
+                if (leftRank < rightRank) {
+                    int t = left[entry];
+                    left[entry] = right[entry];
+                    right[entry] = t;
+                    rightRank = leftRank;
+                }
+                ranks[entry] = rightRank + 1;
+            }
+
+            return spine[0];
+        }
+    }
+}
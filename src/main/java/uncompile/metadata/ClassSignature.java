@@ -0,0 +1,18 @@
+package uncompile.metadata;
+
+import java.util.List;
+
+/**
+ * The type parameters and supertypes in a generic class signature.
+ */
+public class ClassSignature {
+    public final List<TypeParameterType> typeParameters;
+    public final ReferenceType superClass;
+    public final List<ReferenceType> interfaces;
+
+    public ClassSignature(List<TypeParameterType> typeParameters, ReferenceType superClass, List<ReferenceType> interfaces) {
+        this.typeParameters = typeParameters;
+        this.superClass = superClass;
+        this.interfaces = interfaces;
+    }
+}
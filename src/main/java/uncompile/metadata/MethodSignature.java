@@ -0,0 +1,21 @@
+package uncompile.metadata;
+
+import java.util.List;
+
+/**
+ * The types in a method descriptor or generic method signature. Descriptors
+ * have no type parameters or exceptions.
+ */
+public class MethodSignature {
+    public final List<TypeParameterType> typeParameters;
+    public final List<Type> parameterTypes;
+    public final Type returnType;
+    public final List<ReferenceType> exceptionTypes;
+
+    public MethodSignature(List<TypeParameterType> typeParameters, List<Type> parameterTypes, Type returnType, List<ReferenceType> exceptionTypes) {
+        this.typeParameters = typeParameters;
+        this.parameterTypes = parameterTypes;
+        this.returnType = returnType;
+        this.exceptionTypes = exceptionTypes;
+    }
+}
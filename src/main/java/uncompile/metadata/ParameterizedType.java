@@ -0,0 +1,56 @@
+package uncompile.metadata;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A generic class type with type arguments, such as {@code List<String>}.
+ */
+public class ParameterizedType extends ReferenceType {
+    public final ClassType rawType;
+    public final ReferenceType ownerType; // the enclosing type of an inner class, if it's parameterized
+    public final List<Type> typeArguments; // reference types or wildcards
+
+    public ParameterizedType(ClassType rawType, ReferenceType ownerType, List<Type> typeArguments) {
+        this.rawType = rawType;
+        this.ownerType = ownerType;
+        this.typeArguments = typeArguments;
+    }
+
+    @Override
+    public ClassType getRawType() {
+        return rawType;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj == this ||
+               obj instanceof ParameterizedType &&
+               rawType.equals(((ParameterizedType) obj).rawType) &&
+               Objects.equals(ownerType, ((ParameterizedType) obj).ownerType) &&
+               typeArguments.equals(((ParameterizedType) obj).typeArguments);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * 31 * rawType.hashCode() +
+               31 * Objects.hashCode(ownerType) +
+               typeArguments.hashCode();
+    }
+
+    public String toString() {
+        // Inner classes of parameterized classes may have no type arguments themselves
+        if (typeArguments.isEmpty()) {
+            return rawType.toString();
+        }
+
+        StringBuilder sb = new StringBuilder(rawType.toString()).append("<");
+        for (int i = 0; i < typeArguments.size(); i++) {
+            if (i != 0) {
+                sb.append(", ");
+            }
+            sb.append(typeArguments.get(i));
+        }
+        return sb.append(">").toString();
+    }
+}
@@ -1,7 +1,5 @@
 package uncompile.metadata;
 
-import java.util.Objects;
-
 public final class PrimitiveType extends Type {
     public static final PrimitiveType BOOLEAN = new PrimitiveType("boolean");
     public static final PrimitiveType BYTE = new PrimitiveType("byte");
@@ -30,6 +28,6 @@ public final class PrimitiveType extends Type {
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(this);
+        return System.identityHashCode(this);
     }
 }
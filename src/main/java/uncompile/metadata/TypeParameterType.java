@@ -1,13 +1,23 @@
 package uncompile.metadata;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
 public class TypeParameterType extends ReferenceType {
     public final String name;
     public final ReferenceType extendsBound;
-    public final Object declarationScope;
+    public final List<ReferenceType> additionalBounds; // the interfaces after the first bound of an intersection
+    public final Object declarationScope; // null for type variables read from signatures
 
     public TypeParameterType(String name, ReferenceType extendsBound, Object declarationScope) {
+        this(name, extendsBound, Collections.emptyList(), declarationScope);
+    }
+
+    public TypeParameterType(String name, ReferenceType extendsBound, List<ReferenceType> additionalBounds, Object declarationScope) {
         this.name = name;
         this.extendsBound = extendsBound;
+        this.additionalBounds = additionalBounds;
         this.declarationScope = declarationScope;
     }
 
@@ -20,14 +30,20 @@ public class TypeParameterType extends ReferenceType {
     public boolean equals(Object obj) {
         return obj instanceof TypeParameterType &&
                name.equals(((TypeParameterType) obj).name) &&
-               extendsBound.equals(((TypeParameterType) obj).extendsBound) &&
-               declarationScope.equals(((TypeParameterType) obj).declarationScope);
+               Objects.equals(extendsBound, ((TypeParameterType) obj).extendsBound) &&
+               additionalBounds.equals(((TypeParameterType) obj).additionalBounds) &&
+               Objects.equals(declarationScope, ((TypeParameterType) obj).declarationScope);
     }
 
     @Override
     public int hashCode() {
-        return 31 * 31 * name.hashCode() +
-               31 * extendsBound.hashCode() +
-               declarationScope.hashCode();
+        return 31 * 31 * 31 * name.hashCode() +
+               31 * 31 * Objects.hashCode(extendsBound) +
+               31 * additionalBounds.hashCode() +
+               Objects.hashCode(declarationScope);
+    }
+
+    public String toString() {
+        return name;
     }
 }
@@ -0,0 +1,115 @@
+package uncompile.metadata;
+
+import uncompile.util.SignatureParser;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates types such that each distinct type exists only once, so that types
+ * can be compared by identity, and caches the results of parsing descriptors and
+ * signatures. Primitive types and the constants in {@link ClassType} are canonical
+ * too.
+ * <p>
+ * Types created elsewhere (for example by AST nodes) are still equal to the
+ * canonical types, they just aren't identical to them.
+ * <p>
+ * Thread-safe.
+ */
+public class TypeUniverse {
+    private final Map<String, ClassType> classTypes = new ConcurrentHashMap<>();
+    private final Map<Type, ArrayType> arrayTypes = new ConcurrentHashMap<>();
+    private final Map<Type, Type> otherTypes = new ConcurrentHashMap<>();
+    private final Map<String, Type> fieldSignatures = new ConcurrentHashMap<>();
+    private final Map<String, MethodSignature> methodSignatures = new ConcurrentHashMap<>();
+    private final Map<String, ClassSignature> classSignatures = new ConcurrentHashMap<>();
+
+    public TypeUniverse() {
+        for (ClassType classType : new ClassType[]{ClassType.OBJECT, ClassType.ENUM, ClassType.STRING, ClassType.CLASS}) {
+            classTypes.put(classType.getInternalName(), classType);
+        }
+        otherTypes.put(WildcardType.UNBOUNDED, WildcardType.UNBOUNDED);
+    }
+
+    /**
+     * @param internalName an internal name such as "java/lang/Object", or the
+     *                     descriptor of an array type such as "[I"
+     */
+    public ClassType getClassType(String internalName) {
+        ClassType classType = classTypes.get(internalName);
+        if (classType != null) {
+            return classType;
+        }
+
+        if (internalName.startsWith("[")) {
+            return (ClassType) getType(internalName);
+        }
+
+        return classTypes.computeIfAbsent(internalName, k -> new ClassType(internalName.replace('/', '.')));
+    }
+
+    public ArrayType getArrayType(Type componentType) {
+        ArrayType arrayType = arrayTypes.get(componentType);
+        if (arrayType != null) {
+            return arrayType;
+        }
+
+        return arrayTypes.computeIfAbsent(componentType, ArrayType::new);
+    }
+
+    /**
+     * Gets the canonical instance of a parameterized type, wildcard or type variable.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Type> T canonicalize(T type) {
+        Type existing = otherTypes.get(type);
+        if (existing != null) {
+            return (T) existing;
+        }
+
+        existing = otherTypes.putIfAbsent(type, type);
+        return existing != null ? (T) existing : type;
+    }
+
+    /**
+     * @param signature a field descriptor such as "[Ljava/lang/String;" or a generic
+     *                  field signature such as "Ljava/util/List&lt;TT;&gt;;"
+     */
+    public Type getType(String signature) {
+        Type type = fieldSignatures.get(signature);
+        if (type != null) {
+            return type;
+        }
+
+        // Not computeIfAbsent since parsing adds types to the other maps, and
+        // parsing the same signature twice is harmless
+        type = new SignatureParser(signature, this).readFieldSignature();
+        Type existing = fieldSignatures.putIfAbsent(signature, type);
+        return existing != null ? existing : type;
+    }
+
+    /**
+     * @param signature a method descriptor such as "(I)V" or a generic method signature
+     */
+    public MethodSignature getMethodSignature(String signature) {
+        MethodSignature methodSignature = methodSignatures.get(signature);
+        if (methodSignature != null) {
+            return methodSignature;
+        }
+
+        methodSignature = new SignatureParser(signature, this).readMethodSignature();
+        MethodSignature existing = methodSignatures.putIfAbsent(signature, methodSignature);
+        return existing != null ? existing : methodSignature;
+    }
+
+    public ClassSignature getClassSignature(String signature) {
+        ClassSignature classSignature = classSignatures.get(signature);
+        if (classSignature != null) {
+            return classSignature;
+        }
+
+        classSignature = new SignatureParser(signature, this).readClassSignature();
+        ClassSignature existing = classSignatures.putIfAbsent(signature, classSignature);
+        return existing != null ? existing : classSignature;
+    }
+}
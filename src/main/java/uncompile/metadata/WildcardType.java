@@ -1,12 +1,14 @@
 package uncompile.metadata;
 
-import uncompile.ast.TypeNode;
+import java.util.Objects;
 
 public class WildcardType extends Type {
-    public final TypeNode extendsBound;
-    public final TypeNode superBound;
+    public static final WildcardType UNBOUNDED = new WildcardType(null, null);
 
-    public WildcardType(TypeNode extendsBound, TypeNode superBound) {
+    public final ReferenceType extendsBound;
+    public final ReferenceType superBound;
+
+    public WildcardType(ReferenceType extendsBound, ReferenceType superBound) {
         this.extendsBound = extendsBound;
         this.superBound = superBound;
     }
@@ -14,13 +16,25 @@ public class WildcardType extends Type {
     @Override
     public boolean equals(Object obj) {
         return obj instanceof WildcardType &&
-               extendsBound.equals(((WildcardType) obj).extendsBound) &&
-               superBound.equals(((WildcardType) obj).superBound);
+               Objects.equals(extendsBound, ((WildcardType) obj).extendsBound) &&
+               Objects.equals(superBound, ((WildcardType) obj).superBound);
     }
 
     @Override
     public int hashCode() {
-        return 31 * extendsBound.hashCode() +
-               31 * superBound.hashCode();
+        return 31 * Objects.hashCode(extendsBound) +
+               Objects.hashCode(superBound);
+    }
+
+    public String toString() {
+        if (extendsBound != null) {
+            return "? extends " + extendsBound;
+        }
+
+        if (superBound != null) {
+            return "? super " + superBound;
+        }
+
+        return "?";
     }
 }
@@ -0,0 +1,32 @@
+package uncompile.metrics;
+
+/**
+ * Holds the listener that the decompiler reports its phases to. The default
+ * listener does nothing.
+ */
+public final class Metrics {
+    private static volatile MetricsListener listener = MetricsListener.NONE;
+
+    private Metrics() {}
+
+    public static MetricsListener getListener() {
+        return listener;
+    }
+
+    public static void setListener(MetricsListener listener) {
+        Metrics.listener = listener == null ? MetricsListener.NONE : listener;
+    }
+
+    /**
+     * Gets phase names for objects such as transformations, which are their simple
+     * class names. Names are computed up front so that reporting a phase is free
+     * when nothing listens.
+     */
+    public static String[] getPhaseNames(Object[] objects) {
+        String[] names = new String[objects.length];
+        for (int i = 0; i < objects.length; i++) {
+            names[i] = objects[i].getClass().getSimpleName();
+        }
+        return names;
+    }
+}
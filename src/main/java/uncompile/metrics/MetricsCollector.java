@@ -0,0 +1,278 @@
+package uncompile.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects the wall time, allocated bytes, node counts and fixed-point iterations
+ * of each phase, summed up per class, method and phase, and exports them as JSON
+ * or CSV. Each class and method also gets a "total" row.
+ * <p>
+ * Allocated bytes are only available on JVMs that support measuring them per
+ * thread (HotSpot does), and are -1 otherwise.
+ * <p>
+ * Thread-safe.
+ */
+public class MetricsCollector implements MetricsListener {
+    public static final String TOTAL = "total";
+
+    private static final com.sun.management.ThreadMXBean ALLOCATION_BEAN = getAllocationBean();
+
+    private final ThreadLocal<ThreadState> threadState = ThreadLocal.withInitial(ThreadState::new);
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    @Override
+    public void classStarted(String className) {
+        ThreadState state = threadState.get();
+        state.className = className;
+        state.method = null;
+        state.openPhases.clear();
+        state.start(TOTAL);
+    }
+
+    @Override
+    public void classFinished(String className) {
+        finish(threadState.get(), TOTAL);
+    }
+
+    @Override
+    public void methodStarted(String className, String name, String descriptor) {
+        ThreadState state = threadState.get();
+        // Methods of inner classes are attributed to the class being decompiled
+        state.method = className.equals(state.className) ? name + descriptor : className + "." + name + descriptor;
+        state.methodDepth = state.openPhases.size();
+        state.start(TOTAL);
+    }
+
+    @Override
+    public void methodFinished(String className, String name, String descriptor) {
+        ThreadState state = threadState.get();
+        finish(state, TOTAL);
+        state.method = null;
+    }
+
+    @Override
+    public void phaseStarted(String phase) {
+        threadState.get().start(phase);
+    }
+
+    @Override
+    public void phaseFinished(String phase) {
+        finish(threadState.get(), phase);
+    }
+
+    @Override
+    public void nodeCount(int count) {
+        OpenPhase phase = threadState.get().openPhases.peek();
+        if (phase != null) {
+            phase.nodes += count;
+        }
+    }
+
+    @Override
+    public void iterations(int count) {
+        OpenPhase phase = threadState.get().openPhases.peek();
+        if (phase != null) {
+            phase.iterations += count;
+        }
+    }
+
+    private void finish(ThreadState state, String name) {
+        // Phases that were left open by an exception are dropped
+        OpenPhase phase;
+        do {
+            phase = state.openPhases.poll();
+            if (phase == null) {
+                return;
+            }
+        } while (!phase.name.equals(name));
+
+        long time = System.nanoTime() - phase.startTime;
+        long allocatedBytes = phase.startAllocatedBytes == -1 ? -1 : getAllocatedBytes() - phase.startAllocatedBytes;
+        String method = state.method != null && state.openPhases.size() >= state.methodDepth ? state.method : null;
+
+        entries.computeIfAbsent(new Key(state.className, method, name), k -> new Entry())
+               .add(time, allocatedBytes, phase.nodes, phase.iterations);
+    }
+
+    /**
+     * @return the keys of all entries, sorted by class, method (class-level entries
+     *         first) and phase
+     */
+    private List<Key> getSortedKeys() {
+        List<Key> keys = new ArrayList<>(entries.keySet());
+        keys.sort(Comparator.comparing((Key key) -> String.valueOf(key.className))
+                            .thenComparing(key -> key.method == null ? "" : key.method)
+                            .thenComparing(key -> key.phase));
+        return keys;
+    }
+
+    /**
+     * Writes the entries as a JSON array of objects.
+     */
+    public void writeJson(Writer w) throws IOException {
+        w.write("[");
+        boolean first = true;
+        for (Key key : getSortedKeys()) {
+            Entry entry = entries.get(key);
+            w.write(first ? "\n" : ",\n");
+            first = false;
+
+            synchronized (entry) {
+                w.write("  {\"class\": " + quoteJson(key.className) +
+                        ", \"method\": " + quoteJson(key.method) +
+                        ", \"phase\": " + quoteJson(key.phase) +
+                        ", \"count\": " + entry.count +
+                        ", \"timeNanos\": " + entry.time +
+                        ", \"allocatedBytes\": " + entry.allocatedBytes +
+                        ", \"nodes\": " + entry.nodes +
+                        ", \"iterations\": " + entry.iterations + "}");
+            }
+        }
+        w.write("\n]\n");
+        w.flush();
+    }
+
+    /**
+     * Writes the entries as CSV with a header row.
+     */
+    public void writeCsv(Writer w) throws IOException {
+        w.write("class,method,phase,count,timeNanos,allocatedBytes,nodes,iterations\n");
+        for (Key key : getSortedKeys()) {
+            Entry entry = entries.get(key);
+            synchronized (entry) {
+                w.write(quoteCsv(key.className) + "," +
+                        quoteCsv(key.method) + "," +
+                        quoteCsv(key.phase) + "," +
+                        entry.count + "," +
+                        entry.time + "," +
+                        entry.allocatedBytes + "," +
+                        entry.nodes + "," +
+                        entry.iterations + "\n");
+            }
+        }
+        w.flush();
+    }
+
+    private static String quoteJson(String s) {
+        if (s == null) {
+            return "null";
+        }
+
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static String quoteCsv(String s) {
+        if (s == null) {
+            return "";
+        }
+
+        // Method descriptors contain ';', so always quote
+        return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
+
+    private static com.sun.management.ThreadMXBean getAllocationBean() {
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean &&
+                ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+                com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) bean;
+                allocationBean.setThreadAllocatedMemoryEnabled(true);
+                return allocationBean;
+            }
+        } catch (LinkageError | UnsupportedOperationException | SecurityException e) {
+            // Not a HotSpot JVM
+        }
+
+        return null;
+    }
+
+    private static long getAllocatedBytes() {
+        return ALLOCATION_BEAN == null ? -1 : ALLOCATION_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static class ThreadState {
+        public String className = null;
+        public String method = null;
+        public int methodDepth = 0;
+        public final Deque<OpenPhase> openPhases = new ArrayDeque<>();
+
+        public void start(String name) {
+            openPhases.push(new OpenPhase(name, System.nanoTime(), getAllocatedBytes()));
+        }
+    }
+
+    private static class OpenPhase {
+        public final String name;
+        public final long startTime;
+        public final long startAllocatedBytes;
+        public long nodes = 0;
+        public long iterations = 0;
+
+        public OpenPhase(String name, long startTime, long startAllocatedBytes) {
+            this.name = name;
+            this.startTime = startTime;
+            this.startAllocatedBytes = startAllocatedBytes;
+        }
+    }
+
+    private static final class Key {
+        public final String className;
+        public final String method;
+        public final String phase;
+
+        public Key(String className, String method, String phase) {
+            this.className = className;
+            this.method = method;
+            this.phase = phase;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) obj;
+            return Objects.equals(className, other.className) &&
+                   Objects.equals(method, other.method) &&
+                   phase.equals(other.phase);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(className, method, phase);
+        }
+    }
+
+    private static class Entry {
+        public long count = 0;
+        public long time = 0;
+        public long allocatedBytes = 0;
+        public long nodes = 0;
+        public long iterations = 0;
+
+        public synchronized void add(long time, long allocatedBytes, long nodes, long iterations) {
+            count++;
+            this.time += time;
+            this.allocatedBytes = allocatedBytes == -1 || this.allocatedBytes == -1 ? -1 : this.allocatedBytes + allocatedBytes;
+            this.nodes += nodes;
+            this.iterations += iterations;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package uncompile.metrics;
+
+/**
+ * Receives events around each phase of the decompilation of a class, see
+ * {@link Metrics}. Events are sent on the thread doing the work, and several
+ * classes may be decompiled on different threads at once.
+ * <p>
+ * Phases nest: a transformation runs inside the phase of the code that ran it.
+ * If a phase throws an exception, it doesn't finish, and neither do the phases
+ * of the same method that it's nested in. The method and class it belongs to
+ * still finish.
+ */
+public interface MetricsListener {
+    MetricsListener NONE = new MetricsListener() {};
+
+    default void classStarted(String className) {}
+
+    default void classFinished(String className) {}
+
+    default void methodStarted(String className, String name, String descriptor) {}
+
+    default void methodFinished(String className, String name, String descriptor) {}
+
+    default void phaseStarted(String phase) {}
+
+    default void phaseFinished(String phase) {}
+
+    /**
+     * Reports the size of the input of the current phase, such as the number
+     * of blocks or control flow nodes.
+     */
+    default void nodeCount(int count) {}
+
+    /**
+     * Reports the number of iterations a fixed-point loop of the current phase needed.
+     */
+    default void iterations(int count) {}
+}
@@ -1,23 +1,39 @@
 package uncompile.transformation;
 
 import uncompile.ast.Class;
+import uncompile.metrics.Metrics;
+import uncompile.metrics.MetricsListener;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 public class AstTransformations {
     private static final Transformation[] TRANSFORMATIONS = {
-            new DebugPrintTransformation(),
             new RemoveUnusedLabelsTransformation(),
             new FixInnerClassesTransformation(),
-            new InlineAliasVariablesTransformation(),
+            new InlineSingleUseVariablesTransformation(),
             new RemoveUnusedAssignmentsTransformation(),
             new BringVariableDeclarationsCloserTransformation(),
             new FlipIfElseTransformation(),
             new MergeNestedIfsTransformation(),
             new AddImportsTransformation()
     };
+    private static final String[] TRANSFORMATION_NAMES = Metrics.getPhaseNames(TRANSFORMATIONS);
+
+    /**
+     * @return the transformations in the order {@link #run} applies them
+     */
+    public static List<Transformation> getTransformations() {
+        return Collections.unmodifiableList(Arrays.asList(TRANSFORMATIONS));
+    }
 
     public static void run(Class decompiled) {
-        for (Transformation transformation : TRANSFORMATIONS) {
-            transformation.run(decompiled);
+        MetricsListener metrics = Metrics.getListener();
+        for (int i = 0; i < TRANSFORMATIONS.length; i++) {
+            metrics.phaseStarted(TRANSFORMATION_NAMES[i]);
+            TRANSFORMATIONS[i].run(decompiled);
+            metrics.phaseFinished(TRANSFORMATION_NAMES[i]);
         }
     }
 }
@@ -3,10 +3,7 @@ package uncompile.transformation;
 import uncompile.ast.Class;
 import uncompile.ast.*;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 /**
  * - Moves variable declarations to right before their first usage
@@ -30,9 +27,9 @@ public class BringVariableDeclarationsCloserTransformation implements Transforma
     }
 
     private void run(Method method) {
-        // TODO: optimize getVariables by caching results
+        DefUseIndex index = method.getDefUseIndex();
         new AstVisitor() {
-            private Set<VariableDeclaration> removedDeclarations = new HashSet<>();
+            private Set<VariableDeclaration> removedDeclarations = new LinkedHashSet<>();
 
             @Override
             public void visit(Block block) {
@@ -41,6 +38,7 @@ public class BringVariableDeclarationsCloserTransformation implements Transforma
                 for (Statement statement : block) {
                     if (statement instanceof ExpressionStatement && ((ExpressionStatement) statement).expression instanceof VariableDeclaration) {
                         removedDeclarations.add((VariableDeclaration) ((ExpressionStatement) statement).expression);
+                        index.remove(statement);
                         continue;
                     }
 
@@ -48,12 +46,23 @@ public class BringVariableDeclarationsCloserTransformation implements Transforma
                 }
                 block.statements = newStatements;
 
+                // Find the statements of the block each declaration's variable is in
+                Map<Statement, Set<VariableDeclaration>> variablesByStatement = new HashMap<>();
+                for (VariableDeclaration variable : removedDeclarations) {
+                    for (AstNode reference : getReferences(index, variable)) {
+                        Statement statement = getStatementIn(index, reference, block);
+                        if (statement != null) {
+                            variablesByStatement.computeIfAbsent(statement, k -> new LinkedHashSet<>()).add(variable);
+                        }
+                    }
+                }
+
                 // Check which declarations can be moved to an inner block
                 Set<VariableDeclaration> variablesInInnerBlock = new HashSet<>();
                 Set<VariableDeclaration> movableToInner = new HashSet<>(removedDeclarations);
 
                 for (Statement statement : block) {
-                    for (VariableDeclaration variable : getVariables(statement)) {
+                    for (VariableDeclaration variable : variablesByStatement.getOrDefault(statement, Collections.emptySet())) {
                         if (!movableToInner.contains(variable)) {
                             continue;
                         }
@@ -70,13 +79,19 @@ public class BringVariableDeclarationsCloserTransformation implements Transforma
                             If ifExpr = (If) statement;
 
                             // If the if condition contains the variable, then the variable is not movable
-                            if (getVariables(ifExpr.condition).contains(variable)) {
+                            if (isInCondition(index, variable, ifExpr)) {
                                 movableToInner.remove(variable);
                                 continue;
                             }
 
                             innerBlocks = new Block[]{ifExpr.ifBlock, ifExpr.elseBlock};
                         } else if (statement instanceof WhileLoop) {
+                            // The condition is evaluated outside of the body
+                            if (isInCondition(index, variable, statement)) {
+                                movableToInner.remove(variable);
+                                continue;
+                            }
+
                             // This is safe to do assuming the input code is valid Java:
                             // If the variable was meant to be shared across loop iterations,
                             // then it must necessarily have been initialized outside of the
@@ -91,7 +106,7 @@ public class BringVariableDeclarationsCloserTransformation implements Transforma
                         }
 
                         for (Block innerBlock : innerBlocks) {
-                            if (innerBlock != null && getVariables(innerBlock).contains(variable)) {
+                            if (innerBlock != null && isInside(index, variable, innerBlock)) {
                                 if (variablesInInnerBlock.contains(variable)) {
                                     // Variable also in another inner block
                                     movableToInner.remove(variable);
@@ -107,15 +122,19 @@ public class BringVariableDeclarationsCloserTransformation implements Transforma
                 // Place unmovable variables right before their first usage and merge declarations with assignments
                 newStatements = new ArrayList<>();
                 for (Statement statement : block) {
-                    for (VariableDeclaration variable : getVariables(statement)) {
+                    for (VariableDeclaration variable : variablesByStatement.getOrDefault(statement, Collections.emptySet())) {
                         if (removedDeclarations.contains(variable) && !movableToInner.contains(variable)) {
                             if (statement instanceof ExpressionStatement &&
                                 ((ExpressionStatement) statement).expression instanceof Assignment &&
                                 ((Assignment) ((ExpressionStatement) statement).expression).left instanceof VariableReference &&
                                 ((VariableReference) ((Assignment) ((ExpressionStatement) statement).expression).left).declaration == variable) {
                                 ((Assignment) ((ExpressionStatement) statement).expression).left = variable;
+                                AstLinks.linkIndexedChildren(((ExpressionStatement) statement).expression);
+                                index.add(variable, statement);
                             } else {
-                                newStatements.add(new ExpressionStatement(variable));
+                                Statement declaration = new ExpressionStatement(variable);
+                                index.add(declaration, block);
+                                newStatements.add(declaration);
                             }
                             removedDeclarations.remove(variable);
                         }
@@ -125,6 +144,7 @@ public class BringVariableDeclarationsCloserTransformation implements Transforma
                 }
 
                 block.statements = newStatements;
+                AstLinks.linkIndexedChildren(block);
 
                 // Visiting subblocks must be done after removedDeclarations is updated
                 super.visit(block);
@@ -132,17 +152,42 @@ public class BringVariableDeclarationsCloserTransformation implements Transforma
         }.visit(method.body);
     }
 
-    private static Set<VariableDeclaration> getVariables(AstNode expression) {
-        Set<VariableDeclaration> variables = new HashSet<>();
+    private static List<AstNode> getReferences(DefUseIndex index, VariableDeclaration variable) {
+        List<AstNode> references = new ArrayList<>(index.getUses(variable));
+        references.addAll(index.getDefinitions(variable));
+        return references;
+    }
 
-        new AstVisitor() {
-            @Override
-            public void visit(VariableReference variableReference) {
-                super.visit(variableReference);
-                variables.add(variableReference.declaration);
+    /**
+     * @return the statement of a block that contains a node, or null if the block
+     *         doesn't contain the node
+     */
+    private static Statement getStatementIn(DefUseIndex index, AstNode node, Block block) {
+        for (AstNode current = node; current != null; ) {
+            Statement parent = index.getStatement(current);
+            if (parent == block) {
+                return (Statement) current;
+            }
+            current = parent;
+        }
+        return null;
+    }
+
+    private static boolean isInCondition(DefUseIndex index, VariableDeclaration variable, Statement statement) {
+        for (AstNode reference : getReferences(index, variable)) {
+            if (index.getStatement(reference) == statement) {
+                return true;
             }
-        }.visit(expression);
+        }
+        return false;
+    }
 
-        return variables;
+    private static boolean isInside(DefUseIndex index, VariableDeclaration variable, Block block) {
+        for (AstNode reference : getReferences(index, variable)) {
+            if (index.isInside(reference, block)) {
+                return true;
+            }
+        }
+        return false;
     }
 }
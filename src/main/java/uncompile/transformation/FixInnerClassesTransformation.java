@@ -29,19 +29,9 @@ public class FixInnerClassesTransformation implements Transformation {
         Map<String, ThisReference> outerThisFields = new HashMap<>(); // fully qualified field name -> this type
 
         new AstVisitor() {
-            private Class currentClass = null;
-
-            @Override
-            public void visit(Class clazz) {
-                Class oldClass = currentClass;
-                currentClass = clazz;
-                super.visit(clazz);
-                currentClass = oldClass;
-            }
-
             @Override
             public void visit(Method method) {
-                if (currentClass.outerClass == null) {
+                if (method.getEnclosing(Class.class).outerClass == null) {
                     return;
                 }
 
@@ -53,6 +43,7 @@ public class FixInnerClassesTransformation implements Transformation {
             }
 
             private void checkOuterThisInConstructor(Method method) {
+                Class currentClass = method.getEnclosing(Class.class);
                 if (method.name.equals("<init>") && !currentClass.isStatic) {
                     if (method.parameters.isEmpty()) {
                         throw new DecompilationNotPossibleException("inner class constructor doesn't have an outer this param");
@@ -86,6 +77,7 @@ public class FixInnerClassesTransformation implements Transformation {
 
                     ThisReference outerThisReference = outerThisParams.get(variable);
                     if (outerThisReference != null) {
+                        Class currentClass = assignment.getEnclosing(Class.class);
                         if (!(fieldReference.target instanceof ThisReference &&
                               ((ThisReference) fieldReference.target).owner.getFullName().equals(currentClass.getFullName()))) {
                             throw new DecompilationNotPossibleException("a field from another class is being set to an outer this param");
@@ -145,6 +137,7 @@ public class FixInnerClassesTransformation implements Transformation {
                     }
                 }
                 clazz.fields = newFields;
+                AstLinks.linkChildren(clazz);
             }
 
             @Override
@@ -153,6 +146,7 @@ public class FixInnerClassesTransformation implements Transformation {
                     !method.parameters.isEmpty() &&
                     outerThisParams.get(method.parameters.get(0)) != null) {
                     method.parameters.remove(0);
+                    AstLinks.linkChildren(method);
                 }
 
                 super.visit(method);
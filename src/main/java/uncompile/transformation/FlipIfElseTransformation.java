@@ -27,6 +27,7 @@ public class FlipIfElseTransformation implements Transformation {
                         ifExpr.ifBlock = ifExpr.elseBlock;
                         ifExpr.elseBlock = ifBlock;
                     }
+                    AstLinks.linkChildren(ifExpr);
                 }
             }
         }.visit(node);
@@ -44,6 +44,7 @@ public class GenerateConstructorCallsTransform implements Transformation {
                     if (lastConstructorCall[0] != null && !left.declaration.isSynthetic &&
                         right.declaration == ((VariableReference) lastConstructorCall[0].arguments.get(0)).declaration) {
                         lastConstructorCall[0].arguments.set(0, left);
+                        AstLinks.linkChildren(lastConstructorCall[0]);
                         substitutions.put(assignment, Optional.empty());
                         substitutions.put(right, Optional.of(left));
                     }
@@ -80,5 +81,6 @@ public class GenerateConstructorCallsTransform implements Transformation {
         for (int i = 1; i < lastConstructorCall.arguments.size(); i++) {
             constructorCall.arguments.add(lastConstructorCall.arguments.get(i));
         }
+        AstLinks.linkChildren(constructorCall);
     }
 }
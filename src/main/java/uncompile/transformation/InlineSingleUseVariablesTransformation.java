@@ -10,6 +10,15 @@ import java.util.*;
  * Inlines single-use variables that are used immediately after assignment.
  * Variables known to have been in the original code (if they were present
  * in the LVT) are not inlined.
+ * <p>
+ * Each block is processed once, keeping the statements on a stack. Before a
+ * statement is pushed, the assignments on top of the stack are inlined into
+ * it for as long as that's possible, so inlining an assignment also retries
+ * the one before it. Whether a variable can be inlined is decided from the
+ * list of variable references a statement evaluates before anything with side
+ * effects. These are found by walking each statement once, and the list of
+ * an inlined value is joined into the list of the statement it's inlined
+ * into. The replacements are then made in a single walk of the method.
  */
 public class InlineSingleUseVariablesTransformation implements Transformation {
     @Override
@@ -24,116 +33,203 @@ public class InlineSingleUseVariablesTransformation implements Transformation {
         }.visit(node);
     }
 
-    private void run(Method method) {
-        // Get single-use variables
-        Set<VariableDeclaration> variables = new HashSet<>();
-        Set<VariableDeclaration> variablesUsedTwice = new HashSet<>();
-        Set<VariableDeclaration> variablesAssignedOnce = new HashSet<>();
-        Set<VariableDeclaration> excludedVariables = new HashSet<>();
-
-        new AstVisitor() {
-            @Override
-            public void visit(VariableReference variableReference) {
-                super.visit(variableReference);
+    /**
+     * A variable reference that can be inlined into, in a doubly linked list
+     * of references ordered by evaluation order.
+     */
+    private static class SafeReference {
+        private final References list;
+        private SafeReference previous = null;
+        private SafeReference next = null;
+        private boolean removed = false;
 
-                VariableDeclaration variable = variableReference.declaration;
+        private SafeReference(References list) {
+            this.list = list;
+        }
+    }
 
-                if (!DecompilationSettings.INLINE_NON_SYNTHETICS && variable.isSynthetic) {
-                    excludedVariables.add(variable);
-                }
+    /**
+     * The references a statement evaluates before anything with side effects. Lists
+     * are merged when a value is inlined, and the list of a reference is found through
+     * {@link #find} (union-find with path compression and union by size).
+     */
+    private static class References {
+        private References parent = this;
+        private int size = 1;
+        private SafeReference first = null;
+        private SafeReference last = null;
+        private boolean hasSideEffects = false;
 
-                if (!variables.contains(variable)) {
-                    variables.add(variable);
-                } else {
-                    variablesUsedTwice.add(variable);
-                }
+        private References find() {
+            References root = this;
+            while (root.parent != root) {
+                root.parent = root.parent.parent;
+                root = root.parent;
             }
+            return root;
+        }
 
-            @Override
-            public void visit(Assignment assignment) {
-                if (assignment.left instanceof VariableReference) {
-                    VariableDeclaration variable = ((VariableReference) assignment.left).declaration;
-                    if (!variablesAssignedOnce.contains(variable)) {
-                        variablesAssignedOnce.add(variable);
-                    } else {
-                        variablesUsedTwice.add(variable);
-                    }
-                } else {
-                    visit(assignment.left);
-                }
-                visit(assignment.right);
+        private void add(SafeReference reference) {
+            reference.previous = last;
+            if (last != null) {
+                last.next = reference;
+            } else {
+                first = reference;
             }
-        }.visit((Statement) method.body);
+            last = reference;
+        }
+    }
 
-        variables.removeAll(variablesUsedTwice);
-        variables.removeAll(excludedVariables);
+    private void run(Method method) {
+        DefUseIndex index = method.getDefUseIndex();
 
-        while (inlineSingleUseVariables(method, variables)) {}
-    }
+        // Get single-use variables
+        Map<VariableDeclaration, VariableReference> uses = new HashMap<>();
+        for (VariableDeclaration variable : index.getVariables()) {
+            if (index.getUseCount(variable) == 1 &&
+                index.getDefinitionCount(variable) <= 1 &&
+                (DecompilationSettings.INLINE_NON_SYNTHETICS || !variable.isSynthetic)) {
+                uses.put(variable, index.getUses(variable).iterator().next());
+            }
+        }
+
+        if (uses.isEmpty()) {
+            return;
+        }
 
-    private boolean inlineSingleUseVariables(Method method, Set<VariableDeclaration> variables) {
         // Inline single-use variables used immediately after their first assignment
-        boolean[] changed = new boolean[1];
+        Map<VariableReference, SafeReference> safeReferences = new HashMap<>();
+        Map<Statement, References> statementReferences = new HashMap<>();
+        Map<VariableReference, Expression> substitutions = new HashMap<>();
+        Map<Statement, Block> changedStatements = new LinkedHashMap<>();
         new AstVisitor() {
             @Override
             public void visit(Block block) {
-                Assignment pendingAssignment = null;
-                VariableDeclaration toInline = null;
-                List<Statement> newExpressions = new ArrayList<>();
+                List<Statement> stack = new ArrayList<>();
                 for (Statement statement : block) {
-                    if (pendingAssignment != null) {
+                    References references = findSafeReferences(statement, safeReferences);
+                    statementReferences.put(statement, references);
 
-                        boolean inlined = inline(statement, toInline, pendingAssignment.right);
-                        changed[0] |= inlined;
-                        if (!inlined) {
-                            newExpressions.add(new ExpressionStatement(pendingAssignment));
+                    while (!stack.isEmpty()) {
+                        Statement top = stack.get(stack.size() - 1);
+                        Assignment assignment = getAssignment(top);
+                        if (assignment == null || !uses.containsKey(((VariableReference) assignment.left).declaration)) {
+                            break;
                         }
 
-                        pendingAssignment = null;
-                        toInline = null;
-                    }
+                        VariableReference use = uses.get(((VariableReference) assignment.left).declaration);
+                        SafeReference safeReference = safeReferences.get(use);
+                        if (safeReference == null || safeReference.removed || safeReference.list.find() != references.find()) {
+                            break;
+                        }
 
-                    if (statement instanceof ExpressionStatement && ((ExpressionStatement) statement).expression instanceof Assignment) {
-                        Assignment assignment = (Assignment) ((ExpressionStatement) statement).expression;
-                        if (assignment.left instanceof VariableReference) {
-                            VariableReference variable = (VariableReference) assignment.left;
-                            if (variables.contains(variable.declaration)) {
-                                pendingAssignment = assignment;
-                                toInline = variable.declaration;
-                            }
+                        stack.remove(stack.size() - 1);
+                        if (changedStatements.remove(top) == null) {
+                            index.remove(top);
+                        }
+                        if (!changedStatements.containsKey(statement)) {
+                            index.remove(statement);
+                            changedStatements.put(statement, block);
                         }
-                    }
 
-                    if (pendingAssignment == null) {
-                        newExpressions.add(statement);
+                        inline(safeReference, statementReferences.remove(top).find());
+                        substitutions.put(use, assignment.right);
                     }
+
+                    stack.add(statement);
                 }
 
-                block.statements = newExpressions;
+                block.statements = stack;
+                AstLinks.linkIndexedChildren(block);
 
                 super.visit(block);
             }
         }.visit(method.body);
 
-        return changed[0];
+        if (substitutions.isEmpty()) {
+            return;
+        }
+
+        new ReplacingAstVisitor() {
+            @Override
+            public void visit(VariableReference variableReference) {
+                Expression value = substitutions.get(variableReference);
+                if (value != null) {
+                    // The value can itself be a use that was inlined into
+                    while (value instanceof VariableReference && substitutions.containsKey(value)) {
+                        value = substitutions.get(value);
+                    }
+                    visit(value);
+                    replace(value);
+                }
+            }
+        }.visit(method.body);
+
+        for (Map.Entry<Statement, Block> entry : changedStatements.entrySet()) {
+            index.add(entry.getKey(), entry.getValue());
+        }
     }
 
     /**
-     * Inlines the value of an effectively final variable into an expression that can contain
-     * it at most once. Returns false if the expression does not contain the variable or inlining
-     * the variable cannot be done without changing the order subexpressions are evaluated in.
+     * @return the assignment to a variable a statement consists of, or null if it
+     *         isn't one
      */
-    private boolean inline(Statement statement, VariableDeclaration variable, Expression value) {
-        boolean[] changed = {false};
-        new ReplacingAstVisitor() {
-            private boolean canSafelyInline = true;
+    private static Assignment getAssignment(Statement statement) {
+        if (statement instanceof ExpressionStatement && ((ExpressionStatement) statement).expression instanceof Assignment) {
+            Assignment assignment = (Assignment) ((ExpressionStatement) statement).expression;
+            if (assignment.left instanceof VariableReference) {
+                return assignment;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the expression a statement evaluates first, or null if values can't be
+     *         inlined into the statement (because it runs some code more than once or
+     *         only conditionally)
+     */
+    private static Expression getEvaluatedExpression(Statement statement) {
+        Assignment assignment = getAssignment(statement);
+        if (assignment != null) {
+            return assignment.right;
+        } else if (statement instanceof ExpressionStatement) {
+            return ((ExpressionStatement) statement).expression;
+        } else if (statement instanceof If) {
+            return ((If) statement).condition;
+        } else if (statement instanceof Return) {
+            return ((Return) statement).value;
+        } else if (statement instanceof Throw) {
+            return ((Throw) statement).exception;
+        } else if (statement instanceof Switch) {
+            return ((Switch) statement).expression;
+        }
+        return null;
+    }
+
+    /**
+     * Finds the variable references a statement evaluates before any subexpression
+     * that could change the order subexpressions are evaluated in if a value was
+     * inlined after it.
+     */
+    private static References findSafeReferences(Statement statement, Map<VariableReference, SafeReference> safeReferences) {
+        References references = new References();
+        Expression expression = getEvaluatedExpression(statement);
+        if (expression == null) {
+            references.hasSideEffects = true;
+            return references;
+        }
 
+        new AstVisitor() {
             @Override
             public void visit(AstNode node) {
+                if (references.hasSideEffects) {
+                    return;
+                }
+
                 super.visit(node);
 
-                if (canSafelyInline &&
-                    !(node instanceof Cast ||
+                if (!(node instanceof Cast ||
                       node instanceof VariableReference ||
                       node instanceof BooleanLiteral ||
                       node instanceof CharLiteral ||
@@ -147,19 +243,68 @@ public class InlineSingleUseVariablesTransformation implements Transformation {
                       node instanceof SuperReference ||
                       node instanceof StringLiteral ||
                       node instanceof ParenthesizedExpression)) {
-                    canSafelyInline = false;
+                    references.hasSideEffects = true;
                 }
             }
 
             @Override
             public void visit(VariableReference variableReference) {
-                if (canSafelyInline && variableReference.declaration == variable) {
-                    replace(value);
-                    changed[0] = true;
-                }
+                SafeReference safeReference = new SafeReference(references);
+                references.add(safeReference);
+                safeReferences.put(variableReference, safeReference);
+            }
+        }.visit(expression);
+
+        return references;
+    }
+
+    /**
+     * Replaces a reference in a list by the references of the inlined value. If the
+     * value has side effects, the references after it can't be inlined into anymore.
+     */
+    private static void inline(SafeReference reference, References value) {
+        References list = reference.list.find();
+        SafeReference previous = reference.previous;
+        SafeReference next = reference.next;
+        reference.removed = true;
+
+        SafeReference first = value.first != null ? value.first : next;
+        SafeReference last = value.last != null ? value.last : previous;
+        if (previous != null) {
+            previous.next = first;
+        } else {
+            list.first = first;
+        }
+        if (next != null) {
+            next.previous = last;
+        } else {
+            list.last = last;
+        }
+        if (value.first != null) {
+            value.first.previous = previous;
+            value.last.next = next;
+        }
+
+        if (value.hasSideEffects) {
+            for (SafeReference current = last != null ? last.next : list.first; current != null; current = current.next) {
+                current.removed = true;
+            }
+            if (last != null) {
+                last.next = null;
+            } else {
+                list.first = null;
             }
-        }.visit(statement);
+            list.last = last;
+            list.hasSideEffects = true;
+        }
 
-        return changed[0];
+        // Union by size, keeping the merged list in the new root
+        References root = list.size >= value.size ? list : value;
+        References child = root == list ? value : list;
+        root.first = list.first;
+        root.last = list.last;
+        root.hasSideEffects = list.hasSideEffects;
+        root.size += child.size;
+        child.parent = root;
     }
 }
@@ -15,6 +15,7 @@ public class MergeNestedIfsTransformation implements Transformation {
                        ((If) ifExpr.ifBlock.statements.get(0)).elseBlock == null) {
                     ifExpr.condition = new BinaryOperation(BinaryOperator.AND, new ParenthesizedExpression(ifExpr.condition), new ParenthesizedExpression(((If) ifExpr.ifBlock.statements.get(0)).condition));
                     ifExpr.ifBlock = ((If) ifExpr.ifBlock.statements.get(0)).ifBlock;
+                    AstLinks.linkChildren(ifExpr);
                 }
             }
         }.visit(node);
@@ -19,44 +19,41 @@ public class RemoveUnusedAssignmentsTransformation implements Transformation {
     }
 
     private void run(Method method) {
-        // Find used variables
-        Set<VariableDeclaration> usedVariables = new HashSet<>();
-        new AstVisitor() {
-            @Override
-            public void visit(Assignment assignment) {
-                if (!(assignment.left instanceof VariableReference)) {
-                    visit(assignment.left);
-                } else if (hasSideEffectsButNotStandaloneExpression(assignment.right)) {
-                    usedVariables.add(((VariableReference) assignment.left).declaration);
-                }
-                visit(assignment.right);
+        DefUseIndex index = method.getDefUseIndex();
+
+        // Remove unused assignments and declarations
+        Map<Expression, Optional<Expression>> substitutions = new HashMap<>();
+        for (VariableDeclaration variable : index.getVariables()) {
+            if (isUsed(index, variable)) {
+                continue;
             }
 
-            @Override
-            public void visit(VariableReference variableReference) {
-                super.visit(variableReference);
-                usedVariables.add(variableReference.declaration);
+            for (Assignment assignment : index.getDefinitions(variable)) {
+                substitutions.put(assignment, hasSideEffects(assignment.right) ? Optional.of(assignment.right) : Optional.empty());
             }
-        }.visit(method.body);
 
-        // Remove unused assignments and declarations
-        Map<Expression, Optional<Expression>> substitutions = new HashMap<>();
-        new AstVisitor() {
-            @Override
-            public void visit(Assignment assignment) {
-                if (assignment.left instanceof VariableReference && !usedVariables.contains(((VariableReference) assignment.left).declaration)) {
-                    substitutions.put(assignment, hasSideEffects(assignment.right) ? Optional.of(assignment.right) : Optional.empty());
-                }
+            for (VariableDeclaration declaration : index.getDeclarations(variable)) {
+                substitutions.put(declaration, Optional.empty());
             }
+        }
 
-            @Override
-            public void visit(VariableDeclaration variableDeclaration) {
-                if (!usedVariables.contains(variableDeclaration)) {
-                    substitutions.put(variableDeclaration, Optional.empty());
-                }
+        if (!substitutions.isEmpty()) {
+            AstUtil.substitute(method.body, substitutions, index);
+        }
+    }
+
+    private boolean isUsed(DefUseIndex index, VariableDeclaration variable) {
+        if (index.getUseCount(variable) != 0) {
+            return true;
+        }
+
+        for (Assignment assignment : index.getDefinitions(variable)) {
+            if (hasSideEffectsButNotStandaloneExpression(assignment.right)) {
+                return true;
             }
-        }.visit(method.body);
-        AstUtil.substitute(method.body, substitutions);
+        }
+
+        return false;
     }
 
     // TODO: implement better removal for side-effect-less expressions
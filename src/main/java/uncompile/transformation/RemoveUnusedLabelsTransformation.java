@@ -13,6 +13,7 @@ public class RemoveUnusedLabelsTransformation implements Transformation {
         new AstVisitor() {
             private final Map<String, Statement> labeledStatements = new HashMap<>();
             private final Deque<Statement> loops = new ArrayDeque<>();
+            private final Deque<Statement> breakTargets = new ArrayDeque<>();
 
             @Override
             public void visit(LabeledStatement labeledStatement) {
@@ -30,20 +31,29 @@ public class RemoveUnusedLabelsTransformation implements Transformation {
             @Override
             public void visit(WhileLoop whileLoop) {
                 loops.push(whileLoop);
+                breakTargets.push(whileLoop);
                 super.visit(whileLoop);
+                breakTargets.pop();
                 loops.pop();
             }
 
+            @Override
+            public void visit(Switch switchStatement) {
+                breakTargets.push(switchStatement);
+                super.visit(switchStatement);
+                breakTargets.pop();
+            }
+
             @Override
             public void visit(Break breakExpr) {
-                if (Objects.equals(labeledStatements.get(breakExpr.label), loops.getFirst())) {
+                if (Objects.equals(labeledStatements.get(breakExpr.label), breakTargets.peek())) {
                     breakExpr.label = null;
                 }
             }
 
             @Override
             public void visit(Continue continueExpr) {
-                if (Objects.equals(labeledStatements.get(continueExpr.label), loops.getFirst())) {
+                if (Objects.equals(labeledStatements.get(continueExpr.label), loops.peek())) {
                     continueExpr.label = null;
                 }
             }
@@ -74,6 +84,6 @@ public class RemoveUnusedLabelsTransformation implements Transformation {
                     replace(labeledStatement.statement);
                 }
             }
-        };
+        }.visit(node);
     }
 }
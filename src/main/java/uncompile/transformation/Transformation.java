@@ -2,6 +2,11 @@ package uncompile.transformation;
 
 import uncompile.ast.AstNode;
 
+/**
+ * A transformation of the AST. Transformation instances are shared by all
+ * decompilation threads, so implementations must not keep any state outside
+ * of {@link #run}.
+ */
 public interface Transformation {
     void run(AstNode node);
 }
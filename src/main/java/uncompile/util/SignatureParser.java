@@ -0,0 +1,258 @@
+package uncompile.util;
+
+import uncompile.metadata.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parses descriptors and generic signatures (JVMS 4.7.9.1) in a single pass,
+ * creating canonical types in a {@link TypeUniverse}. A descriptor is a signature
+ * without generics, so both are read the same way.
+ * <p>
+ * Type variables are read as type parameters without bound or declaration scope,
+ * since signatures only refer to them by name. The first bound of a type parameter
+ * is its class bound if it has one, which is also its erasure, and the others are
+ * its additional bounds.
+ * <p>
+ * Use the caching methods of {@link TypeUniverse} rather than this class directly.
+ */
+public class SignatureParser {
+    private final String signature;
+    private final TypeUniverse types;
+    private int pos;
+
+    public SignatureParser(String signature, TypeUniverse types) {
+        this.signature = signature;
+        this.types = types;
+    }
+
+    public Type readFieldSignature() {
+        Type type = readType();
+        expectEnd();
+        return type;
+    }
+
+    public MethodSignature readMethodSignature() {
+        List<TypeParameterType> typeParameters = readTypeParameters();
+
+        expect('(');
+        List<Type> parameterTypes = new ArrayList<>();
+        while (peek() != ')') {
+            parameterTypes.add(readType());
+        }
+        pos++;
+
+        Type returnType = readType();
+
+        List<ReferenceType> exceptionTypes = Collections.emptyList();
+        while (pos < signature.length() && peek() == '^') {
+            pos++;
+            if (exceptionTypes.isEmpty()) {
+                exceptionTypes = new ArrayList<>();
+            }
+            exceptionTypes.add(readReferenceType());
+        }
+
+        expectEnd();
+        return new MethodSignature(typeParameters, unmodifiable(parameterTypes), returnType, exceptionTypes);
+    }
+
+    public ClassSignature readClassSignature() {
+        List<TypeParameterType> typeParameters = readTypeParameters();
+        ReferenceType superClass = readReferenceType();
+
+        List<ReferenceType> interfaces = new ArrayList<>();
+        while (pos < signature.length()) {
+            interfaces.add(readReferenceType());
+        }
+
+        return new ClassSignature(typeParameters, superClass, unmodifiable(interfaces));
+    }
+
+    private List<TypeParameterType> readTypeParameters() {
+        if (peek() != '<') {
+            return Collections.emptyList();
+        }
+        pos++;
+
+        List<TypeParameterType> typeParameters = new ArrayList<>();
+        while (peek() != '>') {
+            String name = readIdentifier();
+            expect(':');
+
+            // The class bound may be empty if there are interface bounds
+            ReferenceType bound = null;
+            if (peek() != ':' && peek() != '>') {
+                bound = readReferenceType();
+            }
+
+            List<ReferenceType> additionalBounds = new ArrayList<>();
+            while (peek() == ':') {
+                pos++;
+                ReferenceType interfaceBound = readReferenceType();
+                if (bound == null) {
+                    bound = interfaceBound;
+                } else {
+                    additionalBounds.add(interfaceBound);
+                }
+            }
+
+            typeParameters.add(types.canonicalize(new TypeParameterType(name, bound, unmodifiable(additionalBounds), null)));
+        }
+        pos++;
+
+        return unmodifiable(typeParameters);
+    }
+
+    private Type readType() {
+        switch (signature.charAt(pos++)) {
+            case 'Z': return PrimitiveType.BOOLEAN;
+            case 'B': return PrimitiveType.BYTE;
+            case 'S': return PrimitiveType.SHORT;
+            case 'I': return PrimitiveType.INT;
+            case 'J': return PrimitiveType.LONG;
+            case 'F': return PrimitiveType.FLOAT;
+            case 'D': return PrimitiveType.DOUBLE;
+            case 'C': return PrimitiveType.CHAR;
+            case 'V': return PrimitiveType.VOID;
+
+            default: {
+                pos--;
+                return readReferenceType();
+            }
+        }
+    }
+
+    private ReferenceType readReferenceType() {
+        switch (signature.charAt(pos++)) {
+            case 'L': {
+                return readClassType();
+            }
+
+            case 'T': {
+                String name = readIdentifier();
+                expect(';');
+                return types.canonicalize(new TypeParameterType(name, null, null));
+            }
+
+            case '[': {
+                return types.getArrayType(readType());
+            }
+
+            default: {
+                throw badSignature();
+            }
+        }
+    }
+
+    private ReferenceType readClassType() {
+        // The package and outer class name are read in one go, inner classes
+        // of parameterized classes are separated by '.'
+        String internalName = readIdentifier();
+        ReferenceType type = types.getClassType(internalName);
+
+        while (true) {
+            char c = signature.charAt(pos++);
+            if (c == ';') {
+                return type;
+            }
+
+            if (c == '<') {
+                List<Type> typeArguments = readTypeArguments();
+                ReferenceType ownerType = type != type.getRawType() ? ((ParameterizedType) type).ownerType : null;
+                type = types.canonicalize(new ParameterizedType(type.getRawType(), ownerType, typeArguments));
+            } else if (c == '.') {
+                internalName = internalName + "$" + readIdentifier();
+                ClassType innerType = types.getClassType(internalName);
+
+                // The owner is only kept if it's needed for its type arguments
+                if (type instanceof ParameterizedType) {
+                    type = types.canonicalize(new ParameterizedType(innerType, type, Collections.emptyList()));
+                } else {
+                    type = innerType;
+                }
+            } else {
+                throw badSignature();
+            }
+        }
+    }
+
+    private List<Type> readTypeArguments() {
+        List<Type> typeArguments = new ArrayList<>();
+        while (true) {
+            char c = signature.charAt(pos++);
+            switch (c) {
+                case '>': {
+                    return unmodifiable(typeArguments);
+                }
+
+                case '*': {
+                    typeArguments.add(WildcardType.UNBOUNDED);
+                    break;
+                }
+
+                case '+': {
+                    typeArguments.add(types.canonicalize(new WildcardType(readReferenceType(), null)));
+                    break;
+                }
+
+                case '-': {
+                    typeArguments.add(types.canonicalize(new WildcardType(null, readReferenceType())));
+                    break;
+                }
+
+                default: {
+                    pos--;
+                    typeArguments.add(readReferenceType());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads an identifier or internal name, which can't contain any of the
+     * characters that delimit them in signatures.
+     */
+    private String readIdentifier() {
+        int start = pos;
+        while (pos < signature.length()) {
+            char c = signature.charAt(pos);
+            if (c == ';' || c == '<' || c == '>' || c == '.' || c == ':') {
+                return signature.substring(start, pos);
+            }
+            pos++;
+        }
+
+        throw badSignature();
+    }
+
+    private char peek() {
+        if (pos >= signature.length()) {
+            throw badSignature();
+        }
+        return signature.charAt(pos);
+    }
+
+    private void expect(char c) {
+        if (peek() != c) {
+            throw badSignature();
+        }
+        pos++;
+    }
+
+    private void expectEnd() {
+        if (pos != signature.length()) {
+            throw badSignature();
+        }
+    }
+
+    private IllegalStateException badSignature() {
+        return new IllegalStateException("Bad signature at " + pos + ": " + signature);
+    }
+
+    private static <T> List<T> unmodifiable(List<T> list) {
+        return list.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(list);
+    }
+}
@@ -0,0 +1,72 @@
+package uncompile.util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Graph traversals that keep their state in an explicit stack rather than on the
+ * call stack, so that graphs of any depth (such as the control flow graphs of
+ * generated methods with tens of thousands of blocks) can be traversed at the
+ * default thread stack size.
+ */
+public final class Traversal {
+    private Traversal() {}
+
+    /**
+     * Traverses a graph depth-first, visiting nodes in the same order as the
+     * obvious recursive implementation would.
+     *
+     * @param root        the node to start at, which is always visited
+     * @param children    gets the children of a node, in the order to visit them
+     * @param enter       called for each edge from a visited node to a child once the
+     *                    traversal gets to it, returns whether to visit the child. This
+     *                    is where visited nodes are marked and skipped.
+     * @param preVisitor  called when a node is visited, before its children, or null
+     * @param postVisitor called after all children of a node have been visited, or null
+     */
+    public static <T> void depthFirst(T root,
+                                      Function<? super T, ? extends Iterable<? extends T>> children,
+                                      BiPredicate<? super T, ? super T> enter,
+                                      Consumer<? super T> preVisitor,
+                                      Consumer<? super T> postVisitor) {
+        Deque<Frame<T>> stack = new ArrayDeque<>();
+        stack.push(visit(root, children, preVisitor));
+
+        while (!stack.isEmpty()) {
+            Frame<T> frame = stack.peek();
+            if (frame.children.hasNext()) {
+                T child = frame.children.next();
+                if (enter.test(frame.node, child)) {
+                    stack.push(visit(child, children, preVisitor));
+                }
+            } else {
+                stack.pop();
+                if (postVisitor != null) {
+                    postVisitor.accept(frame.node);
+                }
+            }
+        }
+    }
+
+    private static <T> Frame<T> visit(T node, Function<? super T, ? extends Iterable<? extends T>> children, Consumer<? super T> preVisitor) {
+        if (preVisitor != null) {
+            preVisitor.accept(node);
+        }
+
+        return new Frame<>(node, children.apply(node).iterator());
+    }
+
+    private static class Frame<T> {
+        public final T node;
+        public final Iterator<? extends T> children;
+
+        public Frame(T node, Iterator<? extends T> children) {
+            this.node = node;
+            this.children = children;
+        }
+    }
+}